@@ -1,16 +1,23 @@
 package com.yam.yuimagesearchmcpserver.tools;
 
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.http.HttpUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 @Service
@@ -22,6 +29,16 @@ public class ImageSearchTool {
     // Pexels 常规搜索接口（请以文档为准）
     private static final String API_URL = "https://api.pexels.com/v1/search";
 
+    // 最多尝试次数（包括第一次）
+    private static final int MAX_ATTEMPTS = 3;
+
+    // 复用连接的 HTTP 客户端
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
     @Tool(description = "search image from web")
     public String searchImage(@ToolParam(description = "Search query keyword") String query) {
         try {
@@ -37,21 +54,17 @@ public class ImageSearchTool {
      * @param query
      * @return
      */
-    public List<String> searchMediumImages(String query) {
-        // 设置请求头（包含API密钥）
-        Map<String, String> headers = new HashMap<>();
-        headers.put("Authorization", API_KEY);
-
-        // 设置请求参数（仅包含query，可根据文档补充page、per_page等参数）
-        Map<String, Object> params = new HashMap<>();
-        params.put("query", query);
+    public List<String> searchMediumImages(String query) throws IOException {
+        // 设置请求头（包含API密钥）和请求参数（仅包含query，可根据文档补充page、per_page等参数）
+        HttpRequest request = HttpRequest.newBuilder(
+                        URI.create(API_URL + "?query=" + URLEncoder.encode(query, StandardCharsets.UTF_8)))
+                .header("Authorization", API_KEY)
+                .timeout(Duration.ofSeconds(20))
+                .GET()
+                .build();
 
         // 发送 GET 请求
-        String response = HttpUtil.createGet(API_URL)
-                .addHeaders(headers)
-                .form(params)
-                .execute()
-                .body();
+        String response = send(request);
 
         // 解析响应JSON（假设响应结构包含"photos"数组，每个元素包含"medium"字段）
         return JSONUtil.parseObj(response)
@@ -63,4 +76,45 @@ public class ImageSearchTool {
                 .filter(StrUtil::isNotBlank)
                 .collect(Collectors.toList());
     }
+
+    /**
+     * 发送请求，网络异常和 429/5xx 响应按指数退避（随机抖动）重试
+     */
+    private static String send(HttpRequest request) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            HttpResponse<String> response;
+            try {
+                response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                backoff(attempt);
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while searching images");
+            }
+            int status = response.statusCode();
+            if (status / 100 == 2) {
+                return response.body();
+            }
+            if (attempt >= MAX_ATTEMPTS || (status != 429 && status / 100 != 5)) {
+                throw new IOException("HTTP " + status + " from " + request.uri());
+            }
+            backoff(attempt);
+        }
+    }
+
+    /**
+     * 第 attempt 次失败后随机等待 [0, 200ms * 2^(attempt-1)]
+     */
+    private static void backoff(int attempt) throws InterruptedIOException {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong((200L << (attempt - 1)) + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
 }
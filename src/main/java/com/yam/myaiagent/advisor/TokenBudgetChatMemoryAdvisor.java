@@ -0,0 +1,321 @@
+package com.yam.myaiagent.advisor;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAroundAdvisorChain;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.MessageAggregator;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.ToIntFunction;
+
+/**
+ * 按 Token 预算选择历史消息的对话记忆 Advisor
+ * <p>
+ * 与 MessageChatMemoryAdvisor 按固定条数取历史不同，这里从最新的消息往前累加 Token 数，
+ * 只把预算内的消息原样放进 Prompt；超出预算的较早消息合并成一份滚动摘要放进系统提示词。
+ * <p>
+ * 摘要不在模型调用前生成：每轮回复保存后，移出窗口且尚未摘要的消息累计到 SUMMARY_BATCH_MESSAGES 条时，
+ * 才在后台线程把这批消息与上一版摘要合并，不会重复总结整段历史，也不阻塞对话。
+ * 摘要追上之前，这些消息（最多 SUMMARY_BATCH_MESSAGES 条）仍原样留在窗口中，上下文不会丢失。
+ * <p>
+ * 摘要的边界是消息在会话中的位置：每个会话记录经本 Advisor 写入的消息数，以及已经合并进摘要的消息数，
+ * 内容重复的短消息（例如多次回复"好的"）也不会被错认成边界。会话首次出现（或状态已过期）时，
+ * 从当次读到的历史开始计数。
+ * <p>
+ * CHAT_MEMORY_RETRIEVE_SIZE_KEY 在这里表示每次最多从记忆中读取的消息数，
+ * 窗口最多占用其中 retrieveSize - SLIDE_MARGIN 条，保证移出窗口的消息在被摘要前仍能读到。
+ */
+@Slf4j
+public class TokenBudgetChatMemoryAdvisor extends AbstractChatMemoryAdvisor<ChatMemory> {
+
+    // 默认历史消息的 Token 预算
+    private static final int DEFAULT_HISTORY_TOKEN_BUDGET = 4000;
+    // 默认每次从记忆中读取的消息数（与分层记忆热层的容量一致，避免每轮都读磁盘）
+    private static final int DEFAULT_RETRIEVE_SIZE = 20;
+    // 默认摘要的最大字数
+    private static final int DEFAULT_SUMMARY_MAX_LENGTH = 500;
+    // 每条消息除正文外的固定开销（角色、分隔符等）
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+    // 移出窗口的消息累计到多少条才合并一次摘要（两轮对话）
+    private static final int SUMMARY_BATCH_MESSAGES = 4;
+    // 读取的消息数与窗口条数上限之间的余量：容纳待摘要的一批消息，以及摘要进行中新增的一轮对话
+    private static final int SLIDE_MARGIN = 8;
+    // 会话状态缓存最多保留的会话数
+    private static final long MAX_CACHED_CONVERSATIONS = 10_000;
+    // 会话状态缓存的空闲过期时间
+    private static final Duration STATE_EXPIRE_AFTER_ACCESS = Duration.ofMinutes(30);
+
+    // 生成摘要的线程池，每次摘要一个虚拟线程
+    private static final ExecutorService SUMMARY_EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("chat-summary-", 0).factory());
+
+    private static final String SUMMARY_PARAM = "conversation_summary";
+
+    private static final String SUMMARY_SYSTEM_PROMPT = """
+            你是一个对话摘要助手。请把"已有摘要"和"新增对话"合并成一份新的摘要，
+            保留用户的背景信息、已经讨论过的问题和结论、尚未解决的问题，
+            不要编造对话中没有的内容，不超过 %d 字，只输出摘要正文。
+            """;
+
+    private final ChatModel summaryModel;
+
+    // 文本 -> Token 数
+    private final ToIntFunction<String> tokenCounter;
+
+    private final int historyTokenBudget;
+
+    private final int summaryMaxLength;
+
+    private final Executor summaryExecutor;
+
+    // 会话 ID -> 会话状态
+    private final Cache<String, ConversationState> states;
+
+    /**
+     * 某个会话的消息位置和滚动摘要，读写时锁住该对象
+     */
+    private static class ConversationState {
+        // 经本 Advisor 写入的消息数，即下一条消息的位置
+        private long messageCount;
+        // 已经合并进摘要的消息数，位置小于它的消息都在摘要中
+        private long summarizedCount;
+        // 摘要内容
+        private String summary;
+        // 是否有摘要正在生成
+        private boolean summarizing;
+
+        private ConversationState(long messageCount) {
+            this.messageCount = messageCount;
+        }
+    }
+
+    public TokenBudgetChatMemoryAdvisor(ChatMemory chatMemory, ChatModel summaryModel) {
+        this(chatMemory, summaryModel, new JTokkitTokenCountEstimator()::estimate, DEFAULT_HISTORY_TOKEN_BUDGET,
+                DEFAULT_RETRIEVE_SIZE, DEFAULT_SUMMARY_MAX_LENGTH, SUMMARY_EXECUTOR);
+    }
+
+    public TokenBudgetChatMemoryAdvisor(ChatMemory chatMemory, ChatModel summaryModel,
+                                        ToIntFunction<String> tokenCounter, int historyTokenBudget,
+                                        int retrieveSize, int summaryMaxLength, Executor summaryExecutor) {
+        super(chatMemory, DEFAULT_CHAT_MEMORY_CONVERSATION_ID, retrieveSize, true);
+        this.summaryModel = summaryModel;
+        this.tokenCounter = tokenCounter;
+        this.historyTokenBudget = historyTokenBudget;
+        this.summaryMaxLength = summaryMaxLength;
+        this.summaryExecutor = summaryExecutor;
+        this.states = Caffeine.newBuilder()
+                .maximumSize(MAX_CACHED_CONVERSATIONS)
+                .expireAfterAccess(STATE_EXPIRE_AFTER_ACCESS)
+                .build();
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest advisedRequest, CallAroundAdvisorChain chain) {
+        advisedRequest = this.before(advisedRequest);
+
+        AdvisedResponse advisedResponse = chain.nextAroundCall(advisedRequest);
+
+        this.observeAfter(advisedResponse);
+
+        return advisedResponse;
+    }
+
+    @Override
+    public Flux<AdvisedResponse> aroundStream(AdvisedRequest advisedRequest, StreamAroundAdvisorChain chain) {
+        // 读取记忆是阻塞操作，交给父类切换到有界弹性线程池执行
+        Flux<AdvisedResponse> advisedResponses = this.doNextWithProtectFromBlockingBefore(advisedRequest, chain,
+                this::before);
+
+        return new MessageAggregator().aggregateAdvisedResponse(advisedResponses, this::observeAfter);
+    }
+
+    private AdvisedRequest before(AdvisedRequest request) {
+        String conversationId = this.doGetConversationId(request.adviseContext());
+        int retrieveSize = this.doGetChatMemoryRetrieveSize(request.adviseContext());
+
+        // 1、从最新的消息往前，选出预算内的窗口
+        List<Message> history = this.getChatMemoryStore().get(conversationId, retrieveSize);
+        int windowStart = selectWindowStart(history, maxWindowMessages(retrieveSize));
+
+        // 2、尚未合并进摘要的消息仍留在窗口中，窗口之前的消息由摘要代替
+        ConversationState state = states.get(conversationId, id -> new ConversationState(history.size()));
+        String summary;
+        synchronized (state) {
+            int pendingStart = pendingStart(state, history.size(), windowStart);
+            windowStart = Math.min(windowStart, Math.max(pendingStart, windowStart - SUMMARY_BATCH_MESSAGES));
+            summary = state.summary;
+        }
+        List<Message> window = history.subList(windowStart, history.size());
+
+        List<Message> advisedMessages = new ArrayList<>(request.messages());
+        advisedMessages.addAll(window);
+
+        AdvisedRequest.Builder builder = AdvisedRequest.from(request).messages(advisedMessages);
+        if (summary != null) {
+            Map<String, Object> advisedSystemParams = new HashMap<>(request.systemParams());
+            advisedSystemParams.put(SUMMARY_PARAM, summary);
+            String systemText = Objects.requireNonNullElse(request.systemText(), "");
+            builder.systemText(systemText + """
+
+
+                    以下是本次会话较早内容的摘要，回答时可作为背景参考：
+                    {%s}
+                    """.formatted(SUMMARY_PARAM))
+                    .systemParams(advisedSystemParams);
+        }
+
+        // 3、保存本轮用户消息
+        append(conversationId, List.of(new UserMessage(request.userText(), request.media())));
+
+        return builder.build();
+    }
+
+    private void observeAfter(AdvisedResponse advisedResponse) {
+        List<Message> assistantMessages = advisedResponse.response()
+                .getResults()
+                .stream()
+                .map(Generation::getOutput)
+                .map(Message.class::cast)
+                .toList();
+
+        String conversationId = this.doGetConversationId(advisedResponse.adviseContext());
+        append(conversationId, assistantMessages);
+        scheduleSummary(conversationId, this.doGetChatMemoryRetrieveSize(advisedResponse.adviseContext()));
+    }
+
+    /**
+     * 保存消息并推进该会话的消息位置
+     */
+    private void append(String conversationId, List<Message> messages) {
+        this.getChatMemoryStore().add(conversationId, messages);
+        ConversationState state = states.getIfPresent(conversationId);
+        if (state != null) {
+            synchronized (state) {
+                state.messageCount += messages.size();
+            }
+        }
+    }
+
+    /**
+     * 从最新的消息往前累加 Token 数，返回预算内窗口的起始下标
+     */
+    int selectWindowStart(List<Message> history, int maxWindowMessages) {
+        int usedTokens = 0;
+        int start = history.size();
+        while (start > 0 && history.size() - start < maxWindowMessages) {
+            int tokens = estimateTokens(history.get(start - 1));
+            if (usedTokens + tokens > historyTokenBudget) {
+                break;
+            }
+            usedTokens += tokens;
+            start--;
+        }
+        return start;
+    }
+
+    /**
+     * 移出窗口且尚未摘要的消息累计到 SUMMARY_BATCH_MESSAGES 条时，在后台把它们合并进滚动摘要；
+     * 同一会话同时只有一个摘要在生成，期间移出窗口的消息留给下一次
+     */
+    private void scheduleSummary(String conversationId, int retrieveSize) {
+        ConversationState state = states.getIfPresent(conversationId);
+        if (state == null) {
+            return;
+        }
+        List<Message> history = this.getChatMemoryStore().get(conversationId, retrieveSize);
+        int windowStart = selectWindowStart(history, maxWindowMessages(retrieveSize));
+        List<Message> newlyDropped;
+        String previousText;
+        long boundary;
+        synchronized (state) {
+            int pendingStart = pendingStart(state, history.size(), windowStart);
+            if (state.summarizing || windowStart - pendingStart < SUMMARY_BATCH_MESSAGES) {
+                return;
+            }
+            newlyDropped = List.copyOf(history.subList(pendingStart, windowStart));
+            previousText = state.summary;
+            boundary = state.messageCount - history.size() + windowStart;
+            state.summarizing = true;
+        }
+        try {
+            summaryExecutor.execute(() -> summarize(conversationId, state, previousText, newlyDropped, boundary));
+        } catch (RejectedExecutionException e) {
+            log.warn("Failed to schedule summary of conversation {}", conversationId, e);
+            synchronized (state) {
+                state.summarizing = false;
+            }
+        }
+    }
+
+    private void summarize(String conversationId, ConversationState state, String previousText,
+                           List<Message> newlyDropped, long boundary) {
+        String text = null;
+        try {
+            text = callSummaryModel(previousText, newlyDropped);
+        } catch (Exception e) {
+            // 摘要失败不影响对话，沿用上一版摘要，这批消息在下一轮回复后重试
+            log.warn("Failed to summarize conversation {}", conversationId, e);
+        }
+        synchronized (state) {
+            if (text != null) {
+                state.summary = text;
+                state.summarizedCount = boundary;
+            }
+            state.summarizing = false;
+        }
+    }
+
+    /**
+     * 历史中第一条尚未合并进摘要的消息的下标，不超过 windowStart（调用方持有 state 的锁）
+     *
+     * @param historySize 读到的最近消息数，最后一条的位置是 messageCount - 1
+     */
+    private static int pendingStart(ConversationState state, int historySize, int windowStart) {
+        long firstPosition = state.messageCount - historySize;
+        return (int) Math.min(windowStart, Math.max(0, state.summarizedCount - firstPosition));
+    }
+
+    private static int maxWindowMessages(int retrieveSize) {
+        return Math.max(1, retrieveSize - SLIDE_MARGIN);
+    }
+
+    private String callSummaryModel(String previousText, List<Message> newlyDropped) {
+        StringBuilder content = new StringBuilder();
+        content.append("已有摘要：\n").append(previousText != null ? previousText : "无").append("\n\n新增对话：\n");
+        for (Message message : newlyDropped) {
+            content.append(message.getMessageType().getValue()).append(": ").append(message.getText()).append('\n');
+        }
+        Prompt prompt = new Prompt(List.of(
+                new SystemMessage(SUMMARY_SYSTEM_PROMPT.formatted(summaryMaxLength)),
+                new UserMessage(content.toString())));
+        return summaryModel.call(prompt).getResult().getOutput().getText();
+    }
+
+    private int estimateTokens(Message message) {
+        String text = message.getText();
+        return MESSAGE_OVERHEAD_TOKENS + (text == null ? 0 : tokenCounter.applyAsInt(text));
+    }
+}
@@ -0,0 +1,17 @@
+package com.yam.myaiagent.agent;
+
+import com.yam.myaiagent.constant.FileConstant;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 智能体运行检查点配置
+ */
+@Configuration
+public class AgentCheckpointConfig {
+
+    @Bean
+    public AgentCheckpointStore agentCheckpointStore() {
+        return new AgentCheckpointStore(FileConstant.FILE_SAVE_DIR + "/agent-runs");
+    }
+}
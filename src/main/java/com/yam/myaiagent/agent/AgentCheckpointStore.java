@@ -0,0 +1,320 @@
+package com.yam.myaiagent.agent;
+
+import com.yam.myaiagent.agent.model.AgentCheckpoint;
+import com.yam.myaiagent.agent.model.AgentState;
+import com.yam.myaiagent.chatmemory.MessageSerializer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * 智能体运行检查点的持久化存储
+ * <p>
+ * 每个运行对应一个追加写的日志文件（runId.ckpt），每完成一步追加一条检查点记录，
+ * 格式为：[4 字节长度][检查点][4 字节长度]，检查点中的消息使用 Kryo 序列化。
+ * 读取时只需要最后一条完整记录：通过尾部长度字段直接定位，进程崩溃导致的半条记录会被截断丢弃。
+ * 文件超过 maxLogBytes 时只保留最后一条记录重写文件。
+ * <p>
+ * 运行完成后检查点随即删除；出错或被取消的运行保留检查点以便恢复，超过 retention 没有更新的日志视为过期，
+ * 读取时忽略，并在保存检查点时顺带清理（每个清理间隔最多扫描一次目录）。
+ * 同一进程内正在执行的运行会被登记，避免同一个运行被并发恢复。
+ */
+@Slf4j
+public class AgentCheckpointStore {
+
+    private static final String LOG_SUFFIX = ".ckpt";
+    // 默认单个运行日志的最大字节数，超过后压缩
+    private static final long DEFAULT_MAX_LOG_BYTES = 8 * 1024 * 1024;
+    // 默认检查点保留时间，超过后不能再恢复
+    private static final Duration DEFAULT_RETENTION = Duration.ofDays(1);
+    // 两次清理过期日志的最小间隔
+    private static final long PURGE_INTERVAL_MILLIS = Duration.ofMinutes(10).toMillis();
+    // 记录头 + 记录尾的长度字段
+    private static final int FRAME_OVERHEAD = Integer.BYTES * 2;
+    // 分段锁数量
+    private static final int LOCK_STRIPES = 64;
+    // 运行 ID 只允许字母、数字、下划线和短横线，避免路径穿越
+    private static final Pattern RUN_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private static final MessageSerializer serializer = new MessageSerializer();
+
+    private final File baseDir;
+
+    private final long maxLogBytes;
+
+    private final Duration retention;
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    // 正在执行的运行 ID
+    private final Set<String> activeRuns = ConcurrentHashMap.newKeySet();
+
+    // 上次清理过期日志的时间
+    private final AtomicLong lastPurge = new AtomicLong();
+
+    public AgentCheckpointStore(String dir) {
+        this(dir, DEFAULT_MAX_LOG_BYTES);
+    }
+
+    public AgentCheckpointStore(String dir, long maxLogBytes) {
+        this(dir, maxLogBytes, DEFAULT_RETENTION);
+    }
+
+    public AgentCheckpointStore(String dir, long maxLogBytes, Duration retention) {
+        this.baseDir = new File(dir);
+        this.maxLogBytes = maxLogBytes;
+        this.retention = retention;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        if (!baseDir.exists()) {
+            baseDir.mkdirs();
+        }
+    }
+
+    /**
+     * 追加一条检查点
+     */
+    public void save(AgentCheckpoint checkpoint) {
+        File logFile = getLogFile(checkpoint.runId());
+        ReentrantLock lock = getLock(checkpoint.runId());
+        lock.lock();
+        try {
+            byte[] frame = encode(checkpoint);
+            try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(frame);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            if (logFile.length() > maxLogBytes) {
+                compact(logFile, frame);
+            }
+        } catch (IOException e) {
+            // 检查点写入失败不影响本次运行，只是无法从这一步恢复
+            log.error("Failed to save checkpoint of run {} at step {}", checkpoint.runId(),
+                    checkpoint.currentStep(), e);
+        } finally {
+            lock.unlock();
+        }
+        long now = System.currentTimeMillis();
+        long last = lastPurge.get();
+        if (now - last >= PURGE_INTERVAL_MILLIS && lastPurge.compareAndSet(last, now)) {
+            purgeExpired();
+        }
+    }
+
+    /**
+     * 读取某次运行最新的检查点
+     */
+    public Optional<AgentCheckpoint> loadLatest(String runId) {
+        File logFile = getLogFile(runId);
+        ReentrantLock lock = getLock(runId);
+        lock.lock();
+        try {
+            if (!logFile.exists() || isExpired(logFile)) {
+                return Optional.empty();
+            }
+            try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                byte[] payload = readLastPayload(channel);
+                return payload == null ? Optional.empty() : Optional.of(decode(runId, payload));
+            }
+        } catch (IOException e) {
+            log.error("Failed to load checkpoint of run {}", runId, e);
+            return Optional.empty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除某次运行的所有检查点
+     */
+    public void delete(String runId) {
+        ReentrantLock lock = getLock(runId);
+        lock.lock();
+        try {
+            getLogFile(runId).delete();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 登记一次开始执行的运行
+     *
+     * @return 运行已经在执行时返回 false
+     */
+    public boolean acquire(String runId) {
+        return activeRuns.add(runId);
+    }
+
+    /**
+     * 运行结束（完成、出错或中断）后取消登记
+     */
+    public void release(String runId) {
+        activeRuns.remove(runId);
+    }
+
+    /**
+     * 删除过期的日志，正在执行的运行除外
+     *
+     * @return 删除的日志数量
+     */
+    public int purgeExpired() {
+        File[] logFiles = baseDir.listFiles((dir, fileName) -> fileName.endsWith(LOG_SUFFIX));
+        if (logFiles == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (File logFile : logFiles) {
+            String runId = logFile.getName().substring(0, logFile.getName().length() - LOG_SUFFIX.length());
+            if (!RUN_ID_PATTERN.matcher(runId).matches() || activeRuns.contains(runId)) {
+                continue;
+            }
+            ReentrantLock lock = getLock(runId);
+            lock.lock();
+            try {
+                if (isExpired(logFile) && logFile.delete()) {
+                    removed++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (removed > 0) {
+            log.info("Removed {} expired checkpoint logs from {}", removed, baseDir);
+        }
+        return removed;
+    }
+
+    private boolean isExpired(File logFile) {
+        return logFile.lastModified() < System.currentTimeMillis() - retention.toMillis();
+    }
+
+    /**
+     * 读取最后一条完整记录；尾部不完整时向前扫描找到最后一条完整记录，并截断其后的数据
+     */
+    private byte[] readLastPayload(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size >= FRAME_OVERHEAD) {
+            int length = readInt(channel, size - Integer.BYTES);
+            long start = size - FRAME_OVERHEAD - length;
+            if (length >= 0 && start >= 0 && readInt(channel, start) == length) {
+                return readBytes(channel, start + Integer.BYTES, length);
+            }
+        }
+        // 尾部损坏：从头扫描
+        long position = 0;
+        long lastStart = -1;
+        int lastLength = 0;
+        while (position + FRAME_OVERHEAD <= size) {
+            int length = readInt(channel, position);
+            long end = position + FRAME_OVERHEAD + length;
+            if (length < 0 || end > size || readInt(channel, end - Integer.BYTES) != length) {
+                break;
+            }
+            lastStart = position;
+            lastLength = length;
+            position = end;
+        }
+        log.warn("Truncating torn checkpoint log tail at {} (size {})", position, size);
+        channel.truncate(position);
+        return lastStart < 0 ? null : readBytes(channel, lastStart + Integer.BYTES, lastLength);
+    }
+
+    /**
+     * 只保留最后一条记录重写日志
+     */
+    private void compact(File logFile, byte[] lastFrame) throws IOException {
+        Path tmp = new File(baseDir, logFile.getName() + ".tmp").toPath();
+        Files.write(tmp, lastFrame);
+        Files.move(tmp, logFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static byte[] encode(AgentCheckpoint checkpoint) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.writeInt(checkpoint.currentStep());
+            out.writeUTF(checkpoint.state().name());
+            out.writeLong(checkpoint.timestamp());
+            out.writeInt(checkpoint.messageList().size());
+            for (Message message : checkpoint.messageList()) {
+                byte[] bytes = serializer.serialize(message);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        int length = payload.size();
+        return ByteBuffer.allocate(length + FRAME_OVERHEAD)
+                .putInt(length)
+                .put(payload.toByteArray())
+                .putInt(length)
+                .array();
+    }
+
+    private static AgentCheckpoint decode(String runId, byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int currentStep = in.readInt();
+            AgentState state = AgentState.valueOf(in.readUTF());
+            long timestamp = in.readLong();
+            int count = in.readInt();
+            List<Message> messageList = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                messageList.add(serializer.deserialize(bytes));
+            }
+            return new AgentCheckpoint(runId, currentStep, state, messageList, timestamp);
+        }
+    }
+
+    private static int readInt(FileChannel channel, long position) throws IOException {
+        return ByteBuffer.wrap(readBytes(channel, position, Integer.BYTES)).getInt();
+    }
+
+    private static byte[] readBytes(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of checkpoint log");
+            }
+        }
+        return buffer.array();
+    }
+
+    private File getLogFile(String runId) {
+        if (runId == null || !RUN_ID_PATTERN.matcher(runId).matches()) {
+            throw new IllegalArgumentException("Invalid run id: " + runId);
+        }
+        return new File(baseDir, runId + LOG_SUFFIX);
+    }
+
+    private ReentrantLock getLock(String runId) {
+        return locks[(runId.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+}
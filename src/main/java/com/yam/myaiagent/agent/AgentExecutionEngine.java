@@ -0,0 +1,111 @@
+package com.yam.myaiagent.agent;
+
+import com.yam.myaiagent.agent.model.AgentEngineStats;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 智能体执行引擎
+ * <p>
+ * 智能体的每一步都在阻塞等待大模型和工具的网络 IO，放在 ForkJoin 公共池里执行会占满公共池，
+ * 影响所有使用公共池的代码。这里每个任务运行在独立命名的虚拟线程上，阻塞时不占用平台线程。
+ * <p>
+ * 准入控制：同时执行的任务数不超过 maxConcurrentRuns，超出的任务排队等待；
+ * 排队数超过 maxQueuedRuns 时直接拒绝新任务，避免请求无限堆积。
+ */
+@Slf4j
+public class AgentExecutionEngine {
+
+    // 默认最多同时执行的任务数
+    private static final int DEFAULT_MAX_CONCURRENT_RUNS = 256;
+    // 默认最多排队等待的任务数
+    private static final int DEFAULT_MAX_QUEUED_RUNS = 1024;
+
+    private static final AgentExecutionEngine SHARED = new AgentExecutionEngine(DEFAULT_MAX_CONCURRENT_RUNS,
+            DEFAULT_MAX_QUEUED_RUNS);
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-run-", 0).factory());
+
+    private final Semaphore runPermits;
+
+    private final int maxConcurrentRuns;
+
+    private final int maxQueuedRuns;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+
+    public AgentExecutionEngine(int maxConcurrentRuns, int maxQueuedRuns) {
+        this.maxConcurrentRuns = maxConcurrentRuns;
+        this.maxQueuedRuns = maxQueuedRuns;
+        this.runPermits = new Semaphore(maxConcurrentRuns, true);
+    }
+
+    /**
+     * 所有智能体共享的执行引擎
+     */
+    public static AgentExecutionEngine shared() {
+        return SHARED;
+    }
+
+    /**
+     * 提交一个智能体任务
+     *
+     * @param task 任务
+     * @throws RejectedExecutionException 排队的任务数已达上限
+     */
+    public void submit(Runnable task) {
+        if (queued.incrementAndGet() > maxQueuedRuns) {
+            queued.decrementAndGet();
+            rejected.increment();
+            throw new RejectedExecutionException("Agent execution queue is full: " + maxQueuedRuns);
+        }
+        submitted.increment();
+        long submittedAt = System.nanoTime();
+        executor.execute(() -> {
+            try {
+                runPermits.acquire();
+            } catch (InterruptedException e) {
+                queued.decrementAndGet();
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queued.decrementAndGet();
+            running.incrementAndGet();
+            queueWaitNanos.add(System.nanoTime() - submittedAt);
+            try {
+                task.run();
+                completed.increment();
+            } catch (Throwable e) {
+                failed.increment();
+                log.error("Agent run failed", e);
+            } finally {
+                running.decrementAndGet();
+                runPermits.release();
+            }
+        });
+    }
+
+    /**
+     * 获取执行中、排队中的任务数等统计信息
+     */
+    public AgentEngineStats getStats() {
+        long started = completed.sum() + failed.sum() + running.get();
+        double avgQueueWaitMillis = started == 0 ? 0 : queueWaitNanos.sum() / 1_000_000.0 / started;
+        return new AgentEngineStats(running.get(), queued.get(), maxConcurrentRuns, maxQueuedRuns, submitted.sum(),
+                completed.sum(), failed.sum(), rejected.sum(), avgQueueWaitMillis);
+    }
+}
@@ -1,8 +1,13 @@
 package com.yam.myaiagent.agent;
 
+import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
+import com.yam.myaiagent.agent.model.AgentCheckpoint;
 import com.yam.myaiagent.agent.model.AgentState;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.Message;
@@ -10,20 +15,28 @@ import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 /**
  * 抽象基础代理类，用于管理代理状态和执行流程。
  * <p>
  * 提供状态转换、内存管理和基于步骤的执行循环的基础功能。
  * 子类必须实现step方法。
+ * <p>
+ * 字段分为两类：名称、提示词、大模型客户端等配置在创建后不再变化，可以被多个会话共享；
+ * 状态、步骤、消息上下文等运行状态属于单次运行。通过 {@link #newSession()} 可以基于一个配置好的代理
+ * 创建新的会话，只共享配置、不重新构建客户端，每次运行使用独立的会话。
  */
 @Data
 @Slf4j
 public abstract class BaseAgent {
 
+    // ==================== 配置（会话间共享） ====================
+
     // 核心属性
     private String name;
 
@@ -31,19 +44,69 @@ public abstract class BaseAgent {
     private String systemPrompt;
     private String nextStepPrompt;
 
-    // 代理状态
-    private AgentState state = AgentState.IDLE;
-
-    // 执行步骤控制
-    private int currentStep = 0;
+    // 最大步骤数
     private int maxSteps = 10;
 
     // LLM 大模型
     private ChatClient chatClient;
 
+    // 流式运行使用的执行引擎
+    private AgentExecutionEngine executionEngine = AgentExecutionEngine.shared();
+
+    // 运行检查点存储，为 null 时不保存检查点，运行中断后无法恢复
+    private AgentCheckpointStore checkpointStore;
+
+    // ==================== 运行状态（每个会话独立） ====================
+
+    // 运行 ID，用于保存检查点和恢复运行
+    private String runId = IdUtil.fastSimpleUUID();
+
+    // 代理状态
+    private AgentState state = AgentState.IDLE;
+
+    // 当前步骤
+    private int currentStep = 0;
+
     // Memory 记忆（需要自主维护会话上下文）
     private List<Message> messageList = new ArrayList<>();
 
+    // 流式运行时接收模型逐个输出的文本片段，非流式运行时为 null
+    private Consumer<String> tokenListener;
+
+    // 运行是否已被取消（客户端断开连接、超时、出错）
+    @Setter(AccessLevel.NONE)
+    private volatile boolean cancelled;
+
+    // 正在执行本次运行的线程，取消时中断它，打断阻塞中的大模型和工具网络调用
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Thread runThread;
+
+    protected BaseAgent() {
+    }
+
+    /**
+     * 基于已有代理创建新会话：共享配置，运行状态重新初始化
+     *
+     * @param template 配置好的代理
+     */
+    protected BaseAgent(BaseAgent template) {
+        this.name = template.name;
+        this.systemPrompt = template.systemPrompt;
+        this.nextStepPrompt = template.nextStepPrompt;
+        this.maxSteps = template.maxSteps;
+        this.chatClient = template.chatClient;
+        this.executionEngine = template.executionEngine;
+        this.checkpointStore = template.checkpointStore;
+    }
+
+    /**
+     * 创建一个共享当前配置的新会话
+     *
+     * @return 处于 IDLE 状态的新会话
+     */
+    public abstract BaseAgent newSession();
+
     /**
      * 运行代理
      *
@@ -62,11 +125,68 @@ public abstract class BaseAgent {
         this.state = AgentState.RUNNING;
         // 记录消息上下文
         messageList.add(new UserMessage(userPrompt));
+        saveCheckpoint();
+        // 最后登记运行，之后由执行循环负责结束运行
+        acquireRun();
+        return runSync();
+    }
+
+    /**
+     * 从最近的检查点恢复一次中断的运行，继续执行剩余的步骤
+     *
+     * @param runId 运行 ID
+     * @return 执行结果
+     */
+    public String resume(String runId) {
+        if (this.state != AgentState.IDLE) {
+            throw new RuntimeException("Cannot resume agent from state: " + this.state);
+        }
+        restoreCheckpoint(runId);
+        return runSync();
+    }
+
+    /**
+     * 同步执行，返回所有步骤的结果
+     */
+    private String runSync() {
+        try {
+            List<String> results = executeSteps(result -> {
+            });
+            // 只有取消会让执行循环正常返回 ERROR 状态
+            if (state == AgentState.ERROR) {
+                results.add("Cancelled at step " + currentStep);
+            }
+            return String.join("\n", results);
+        } catch (Exception e) {
+            log.error("error executing agent", e);
+            return "执行错误" + e.getMessage();
+        }
+    }
+
+    /**
+     * 每一步完成并保存检查点后的回调
+     */
+    @FunctionalInterface
+    private interface StepListener {
+        void stepCompleted(String result) throws IOException;
+    }
+
+    /**
+     * 执行循环，从 currentStep 之后的步骤开始，同步运行和流式运行共用
+     * <p>
+     * 被取消时状态为 ERROR 并正常返回；步骤或回调抛出异常时状态为 ERROR 并向外抛出。
+     * 无论如何结束都会结束本次运行并清理资源。
+     *
+     * @param listener 每一步的结果回调
+     * @return 各步骤的结果，达到最大步骤时最后一条为终止信息
+     */
+    private List<String> executeSteps(StepListener listener) throws IOException {
         // 保存结果列表
         List<String> results = new ArrayList<>();
+        bindRunThread(Thread.currentThread());
         try {
             // 执行循环
-            for (int i = 0; i < maxSteps && state != AgentState.FINISHED; i++) {
+            for (int i = currentStep; i < maxSteps && state != AgentState.FINISHED && !cancelled; i++) {
                 int stepNumber = i + 1;
                 currentStep = stepNumber;
                 log.info("Executing step {}/{}", stepNumber, maxSteps);
@@ -74,18 +194,27 @@ public abstract class BaseAgent {
                 String stepResult = step();
                 String result = "Step " + stepNumber + ": " + stepResult;
                 results.add(result);
+                saveCheckpoint();
+                listener.stepCompleted(result);
+            }
+            if (cancelled) {
+                state = AgentState.ERROR;
+                log.info("Agent run cancelled at step {}/{}", currentStep, maxSteps);
+                return results;
             }
             // 检查是否超出步骤限制
             if (currentStep >= maxSteps) {
                 state = AgentState.FINISHED;
                 results.add("Terminated: Reached max steps (" + maxSteps + ")");
+                saveCheckpoint();
             }
-            return String.join("\n", results);
+            return results;
         } catch (Exception e) {
             state = AgentState.ERROR;
-            log.error("error executing agent", e);
-            return "执行错误" + e.getMessage();
+            throw e;
         } finally {
+            unbindRunThread();
+            endRun();
             // 3、清理资源
             this.cleanup();
         }
@@ -98,84 +227,242 @@ public abstract class BaseAgent {
      * @return 执行结果
      */
     public SseEmitter runStream(String userPrompt) {
-        // 创建一个超时时间较长的 SseEmitter
-        SseEmitter sseEmitter = new SseEmitter(300000L); // 5 分钟超时
-        // 使用线程异步处理，避免阻塞主线程
-        CompletableFuture.runAsync(() -> {
+        return startStream(sseEmitter -> {
             // 1、基础校验
-            try {
-                if (this.state != AgentState.IDLE) {
-                    sseEmitter.send("错误：无法从状态运行代理：" + this.state);
-                    sseEmitter.complete();
-                    return;
-                }
-                if (StrUtil.isBlank(userPrompt)) {
-                    sseEmitter.send("错误：不能使用空提示词运行代理");
-                    sseEmitter.complete();
-                    return;
-                }
-            } catch (Exception e) {
-                sseEmitter.completeWithError(e);
+            if (this.state != AgentState.IDLE) {
+                sseEmitter.send("错误：无法从状态运行代理：" + this.state);
+                return false;
+            }
+            if (StrUtil.isBlank(userPrompt)) {
+                sseEmitter.send("错误：不能使用空提示词运行代理");
+                return false;
             }
             // 2、执行，更改状态
             this.state = AgentState.RUNNING;
             // 记录消息上下文
             messageList.add(new UserMessage(userPrompt));
-            // 保存结果列表
-            List<String> results = new ArrayList<>();
+            saveCheckpoint();
+            // 最后登记运行，登记之后不会再抛出异常，之后由执行过程负责结束运行
+            acquireRun();
+            return true;
+        });
+    }
+
+    /**
+     * 从最近的检查点恢复一次中断的运行（流式输出）
+     *
+     * @param runId 运行 ID
+     * @return 执行结果
+     */
+    public SseEmitter resumeStream(String runId) {
+        return startStream(sseEmitter -> {
+            if (this.state != AgentState.IDLE) {
+                sseEmitter.send("错误：无法从状态恢复代理：" + this.state);
+                return false;
+            }
             try {
-                // 执行循环
-                for (int i = 0; i < maxSteps && state != AgentState.FINISHED; i++) {
-                    int stepNumber = i + 1;
-                    currentStep = stepNumber;
-                    log.info("Executing step {}/{}", stepNumber, maxSteps);
-                    // 单步执行
-                    String stepResult = step();
-                    String result = "Step " + stepNumber + ": " + stepResult;
-                    results.add(result);
-                    // 输出当前每一步的结果到 SSE
-                    sseEmitter.send(result);
-                }
-                // 检查是否超出步骤限制
-                if (currentStep >= maxSteps) {
-                    state = AgentState.FINISHED;
-                    results.add("Terminated: Reached max steps (" + maxSteps + ")");
-                    sseEmitter.send("执行结束：达到最大步骤（" + maxSteps + "）");
-                }
-                // 正常完成
-                sseEmitter.complete();
-            } catch (Exception e) {
-                state = AgentState.ERROR;
-                log.error("error executing agent", e);
-                try {
-                    sseEmitter.send("执行错误：" + e.getMessage());
-                    sseEmitter.complete();
-                } catch (IOException ex) {
-                    sseEmitter.completeWithError(ex);
-                }
-            } finally {
-                // 3、清理资源
-                this.cleanup();
+                restoreCheckpoint(runId);
+            } catch (RuntimeException e) {
+                sseEmitter.send("错误：" + e.getMessage());
+                return false;
             }
+            return true;
         });
+    }
+
+    /**
+     * 流式运行的准备过程，返回 false 表示无法运行（已向客户端发送错误信息）
+     */
+    @FunctionalInterface
+    private interface StreamStarter {
+        boolean start(SseEmitter sseEmitter) throws IOException;
+    }
 
+    private SseEmitter startStream(StreamStarter starter) {
+        // 创建一个超时时间较长的 SseEmitter
+        SseEmitter sseEmitter = new SseEmitter(300000L); // 5 分钟超时
         // 设置超时回调
         sseEmitter.onTimeout(() -> {
+            this.cancel();
             this.state = AgentState.ERROR;
             this.cleanup();
             log.warn("SSE connection timeout");
         });
-        // 设置完成回调
+        // 设置错误回调（包括客户端断开连接）
+        sseEmitter.onError(e -> {
+            this.cancel();
+            log.warn("SSE connection error: {}", e.getMessage());
+        });
+        // 设置完成回调，客户端断开连接时运行可能尚未结束，需要取消
         sseEmitter.onCompletion(() -> {
             if (this.state == AgentState.RUNNING) {
-                this.state = AgentState.FINISHED;
+                this.cancel();
             }
             this.cleanup();
             log.info("SSE connection completed");
         });
+        // 交给执行引擎在虚拟线程上异步处理，避免阻塞主线程
+        try {
+            executionEngine.submit(() -> runStreamInternal(starter, sseEmitter));
+        } catch (RejectedExecutionException e) {
+            log.warn("Agent execution rejected: {}", e.getMessage());
+            try {
+                sseEmitter.send("错误：当前执行中的任务过多，请稍后再试");
+                sseEmitter.complete();
+            } catch (IOException ex) {
+                sseEmitter.completeWithError(ex);
+            }
+        }
         return sseEmitter;
     }
 
+    /**
+     * 流式运行的执行过程，在执行引擎的线程中运行
+     */
+    private void runStreamInternal(StreamStarter starter, SseEmitter sseEmitter) {
+        try {
+            if (!starter.start(sseEmitter)) {
+                sseEmitter.complete();
+                return;
+            }
+        } catch (Exception e) {
+            sseEmitter.completeWithError(e);
+            return;
+        }
+        try {
+            // 告知客户端运行 ID，连接中断后可以据此恢复运行
+            sseEmitter.send(SseEmitter.event().name("run").data(runId));
+        } catch (Exception e) {
+            endRun();
+            sseEmitter.completeWithError(e);
+            return;
+        }
+        // 模型输出的文本片段以 token 事件实时推送，每一步的结果仍以默认事件推送
+        this.tokenListener = token -> {
+            try {
+                sseEmitter.send(SseEmitter.event().name("token").data(token));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            // 输出当前每一步的结果到 SSE
+            executeSteps(sseEmitter::send);
+            // 已取消时连接已经不可用，直接结束
+            if (state == AgentState.ERROR) {
+                return;
+            }
+            if (currentStep >= maxSteps) {
+                sseEmitter.send("执行结束：达到最大步骤（" + maxSteps + "）");
+            }
+            // 正常完成
+            sseEmitter.complete();
+        } catch (Exception e) {
+            if (cancelled) {
+                log.info("Agent run cancelled at step {}/{}", currentStep, maxSteps);
+                return;
+            }
+            log.error("error executing agent", e);
+            try {
+                sseEmitter.send("执行错误：" + e.getMessage());
+                sseEmitter.complete();
+            } catch (IOException ex) {
+                sseEmitter.completeWithError(ex);
+            }
+        }
+    }
+
+    /**
+     * 保存当前运行状态的检查点
+     * <p>
+     * 每完成一步保存一次，步骤执行到一半中断时，恢复后会重新执行这一步
+     */
+    protected void saveCheckpoint() {
+        if (checkpointStore != null) {
+            checkpointStore.save(new AgentCheckpoint(runId, currentStep, state, List.copyOf(messageList),
+                    System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * 登记本次运行正在执行
+     */
+    private void acquireRun() {
+        if (checkpointStore != null) {
+            checkpointStore.acquire(runId);
+        }
+    }
+
+    /**
+     * 运行结束：完成的运行不再需要恢复，删除检查点；出错或被取消的运行保留检查点，过期后由存储清理
+     */
+    private void endRun() {
+        if (checkpointStore == null) {
+            return;
+        }
+        if (state == AgentState.FINISHED) {
+            checkpointStore.delete(runId);
+        }
+        checkpointStore.release(runId);
+    }
+
+    /**
+     * 从检查点恢复运行状态，同一个运行仍在执行时拒绝恢复
+     */
+    private void restoreCheckpoint(String runId) {
+        if (checkpointStore == null) {
+            throw new IllegalStateException("Checkpoints are not enabled for agent " + name);
+        }
+        if (!checkpointStore.acquire(runId)) {
+            throw new IllegalStateException("Run " + runId + " is still running");
+        }
+        AgentCheckpoint checkpoint;
+        try {
+            checkpoint = checkpointStore.loadLatest(runId)
+                    .orElseThrow(() -> new IllegalArgumentException("No checkpoint found for run " + runId));
+            if (checkpoint.state() == AgentState.FINISHED) {
+                throw new IllegalStateException("Run " + runId + " has already finished");
+            }
+        } catch (RuntimeException e) {
+            checkpointStore.release(runId);
+            throw e;
+        }
+        log.info("Resuming run {} from step {}/{}", runId, checkpoint.currentStep(), maxSteps);
+        this.runId = runId;
+        this.currentStep = checkpoint.currentStep();
+        this.messageList = new ArrayList<>(checkpoint.messageList());
+        this.state = AgentState.RUNNING;
+    }
+
+    /**
+     * 取消本次运行
+     * <p>
+     * 协作式取消：循环在每一步之前、思考和行动之间检查取消标记；
+     * 同时中断运行线程，正在阻塞的大模型调用和工具调用（虚拟线程上的网络 IO 被中断时会关闭连接）会立即返回。
+     */
+    public void cancel() {
+        this.cancelled = true;
+        synchronized (this) {
+            if (runThread != null) {
+                runThread.interrupt();
+            }
+        }
+    }
+
+    private synchronized void bindRunThread(Thread thread) {
+        this.runThread = thread;
+        // 启动前已经取消
+        if (cancelled) {
+            thread.interrupt();
+        }
+    }
+
+    private synchronized void unbindRunThread() {
+        this.runThread = null;
+        // 清除中断标记，避免影响执行线程后续的任务
+        Thread.interrupted();
+    }
+
     /**
      * 定义单个步骤
      *
@@ -0,0 +1,174 @@
+package com.yam.myaiagent.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * 智能体的上下文窗口管理
+ * <p>
+ * 工具调用会把网页、搜索结果等原始内容整段放进消息上下文，步骤越多 Prompt 越大。这里分两个阶段控制上下文大小：
+ * <ol>
+ *     <li>工具返回时：单个工具结果超过 maxToolResponseTokens 时截断；配置了压缩客户端时改为让模型结合任务提取有用信息</li>
+ *     <li>调用模型前：整个上下文超过 maxContextTokens 时，从最早的工具结果开始清空内容（保留最近 keepRecentToolResults 个），
+ *     只清空内容、不删除消息，保证助手的工具调用和工具结果仍能一一对应</li>
+ * </ol>
+ */
+@Slf4j
+public class ContextWindowManager {
+
+    // 默认上下文的 Token 上限
+    private static final int DEFAULT_MAX_CONTEXT_TOKENS = 16000;
+    // 默认单个工具结果的 Token 上限
+    private static final int DEFAULT_MAX_TOOL_RESPONSE_TOKENS = 2000;
+    // 默认始终保留完整内容的最近工具结果数
+    private static final int DEFAULT_KEEP_RECENT_TOOL_RESULTS = 2;
+    // 交给压缩模型的原始内容最多是单个工具结果上限的多少倍
+    private static final int COMPRESSION_INPUT_FACTOR = 8;
+
+    static final String EVICTED_PLACEHOLDER = "[较早的工具结果已省略，如仍需要请重新调用工具]";
+
+    private static final String COMPRESSION_SYSTEM_PROMPT = """
+            你是一个信息提取助手。下面是工具 %s 的返回结果，请结合用户任务提取其中有用的信息，
+            去掉导航、广告、脚本等无关内容，保留关键数据和链接，不超过 %d 字，只输出提取结果。
+            """;
+
+    // 文本 -> Token 数
+    private final ToIntFunction<String> tokenCounter;
+
+    private final int maxContextTokens;
+
+    private final int maxToolResponseTokens;
+
+    private final int keepRecentToolResults;
+
+    // 压缩工具结果使用的客户端，为 null 时只截断不压缩
+    private final ChatClient compressionClient;
+
+    public ContextWindowManager() {
+        this(null);
+    }
+
+    public ContextWindowManager(ChatClient compressionClient) {
+        this(new JTokkitTokenCountEstimator()::estimate, DEFAULT_MAX_CONTEXT_TOKENS, DEFAULT_MAX_TOOL_RESPONSE_TOKENS,
+                DEFAULT_KEEP_RECENT_TOOL_RESULTS, compressionClient);
+    }
+
+    public ContextWindowManager(ToIntFunction<String> tokenCounter, int maxContextTokens, int maxToolResponseTokens,
+                                int keepRecentToolResults, ChatClient compressionClient) {
+        this.tokenCounter = tokenCounter;
+        this.maxContextTokens = maxContextTokens;
+        this.maxToolResponseTokens = maxToolResponseTokens;
+        this.keepRecentToolResults = keepRecentToolResults;
+        this.compressionClient = compressionClient;
+    }
+
+    /**
+     * 限制工具结果的大小（截断或压缩）
+     *
+     * @param message 工具返回的消息
+     * @param task    用户任务，压缩时用于判断哪些信息有用
+     * @return 限制大小后的消息，没有超出上限时返回原消息
+     */
+    public ToolResponseMessage limitToolResponses(ToolResponseMessage message, String task) {
+        boolean changed = false;
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+        for (ToolResponseMessage.ToolResponse response : message.getResponses()) {
+            String data = response.responseData();
+            int tokens = countTokens(data);
+            if (tokens > maxToolResponseTokens) {
+                data = compressionClient != null
+                        ? compress(response.name(), data, tokens, task)
+                        : truncate(data, tokens, maxToolResponseTokens);
+                log.info("工具 {} 的结果过长（约 {} Token），已{}", response.name(), tokens,
+                        compressionClient != null ? "压缩" : "截断");
+                changed = true;
+            }
+            responses.add(new ToolResponseMessage.ToolResponse(response.id(), response.name(), data));
+        }
+        return changed ? new ToolResponseMessage(responses, message.getMetadata()) : message;
+    }
+
+    /**
+     * 调用模型前，把上下文控制在 Token 上限内（原地修改消息列表）
+     *
+     * @param messages 消息上下文
+     */
+    public void fit(List<Message> messages) {
+        int totalTokens = 0;
+        List<Integer> toolResponseIndexes = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            totalTokens += countTokens(messages.get(i));
+            if (messages.get(i) instanceof ToolResponseMessage) {
+                toolResponseIndexes.add(i);
+            }
+        }
+        // 从最早的工具结果开始清空，直到上下文回到上限内
+        int evictable = toolResponseIndexes.size() - keepRecentToolResults;
+        for (int k = 0; k < evictable && totalTokens > maxContextTokens; k++) {
+            int index = toolResponseIndexes.get(k);
+            ToolResponseMessage message = (ToolResponseMessage) messages.get(index);
+            ToolResponseMessage evicted = evict(message);
+            totalTokens -= countTokens(message) - countTokens(evicted);
+            messages.set(index, evicted);
+        }
+        if (totalTokens > maxContextTokens) {
+            log.warn("上下文仍超出上限：约 {} Token，上限 {} Token", totalTokens, maxContextTokens);
+        }
+    }
+
+    private ToolResponseMessage evict(ToolResponseMessage message) {
+        List<ToolResponseMessage.ToolResponse> responses = message.getResponses().stream()
+                .map(response -> new ToolResponseMessage.ToolResponse(response.id(), response.name(),
+                        EVICTED_PLACEHOLDER))
+                .toList();
+        return new ToolResponseMessage(responses, message.getMetadata());
+    }
+
+    private String compress(String toolName, String data, int tokens, String task) {
+        String input = truncate(data, tokens, maxToolResponseTokens * COMPRESSION_INPUT_FACTOR);
+        try {
+            return compressionClient.prompt()
+                    .system(COMPRESSION_SYSTEM_PROMPT.formatted(toolName, maxToolResponseTokens))
+                    .user("用户任务：" + task + "\n\n工具返回结果：\n" + input)
+                    .call()
+                    .content();
+        } catch (Exception e) {
+            // 压缩失败时退回截断
+            log.warn("压缩工具 {} 的结果失败：{}", toolName, e.getMessage());
+            return truncate(data, tokens, maxToolResponseTokens);
+        }
+    }
+
+    /**
+     * 按 Token 比例估算截断位置，保留开头部分
+     */
+    private static String truncate(String data, int tokens, int maxTokens) {
+        if (tokens <= maxTokens) {
+            return data;
+        }
+        int keepChars = (int) ((long) data.length() * maxTokens / tokens);
+        return data.substring(0, keepChars) + "\n...[内容过长已截断，原始长度 " + data.length() + " 字符]";
+    }
+
+    private int countTokens(Message message) {
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            int tokens = 0;
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                tokens += countTokens(response.responseData());
+            }
+            return tokens;
+        }
+        return countTokens(message.getText());
+    }
+
+    private int countTokens(String text) {
+        return text == null || text.isEmpty() ? 0 : tokenCounter.applyAsInt(text);
+    }
+}
@@ -0,0 +1,149 @@
+package com.yam.myaiagent.agent;
+
+import cn.hutool.crypto.SecureUtil;
+import com.yam.myaiagent.tools.ToolArguments;
+import lombok.Getter;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 思考-行动循环的重复与停滞检测
+ * <p>
+ * 大模型经常用相同的参数反复调用同一个工具，或者连续几步拿不到任何新信息，每一步都是一次完整的大模型调用。
+ * 这里记录单次运行中的两类信号：
+ * <ul>
+ *     <li>重复：工具名 + 规范化参数的指纹，同一组调用出现 repeatThreshold 次即判定为重复</li>
+ *     <li>停滞：工具结果的摘要，连续 stallThreshold 步返回的结果都已经见过即判定为停滞</li>
+ * </ul>
+ * 第一次检测到时先纠正（提醒大模型换一种做法或结束任务），纠正 maxCorrections 次后仍然发生则提前结束运行。
+ * 检测器保存运行状态，每个会话使用独立的实例。
+ */
+public class LoopDetector {
+
+    /**
+     * 检测结果
+     */
+    public enum Verdict {
+        // 正常，继续执行
+        CONTINUE,
+        // 注入纠正提示后继续执行
+        CORRECT,
+        // 提前结束运行
+        STOP
+    }
+
+    // 默认同一组工具调用出现几次判定为重复
+    private static final int DEFAULT_REPEAT_THRESHOLD = 2;
+    // 默认连续几步没有新信息判定为停滞
+    private static final int DEFAULT_STALL_THRESHOLD = 2;
+    // 默认纠正几次后提前结束
+    private static final int DEFAULT_MAX_CORRECTIONS = 1;
+
+    private final int repeatThreshold;
+
+    private final int stallThreshold;
+
+    private final int maxCorrections;
+
+    // 工具调用指纹 -> 出现次数
+    private final Map<String, Integer> callCounts = new HashMap<>();
+
+    // 见过的工具结果摘要
+    private final Set<String> seenResults = new HashSet<>();
+
+    // 连续没有新信息的步数
+    private int stalledSteps;
+
+    // 已经纠正的次数
+    @Getter
+    private int corrections;
+
+    // 最近一次检测到问题的原因
+    @Getter
+    private String reason;
+
+    public LoopDetector() {
+        this(DEFAULT_REPEAT_THRESHOLD, DEFAULT_STALL_THRESHOLD, DEFAULT_MAX_CORRECTIONS);
+    }
+
+    public LoopDetector(int repeatThreshold, int stallThreshold, int maxCorrections) {
+        this.repeatThreshold = repeatThreshold;
+        this.stallThreshold = stallThreshold;
+        this.maxCorrections = maxCorrections;
+    }
+
+    /**
+     * 创建配置相同、状态为空的检测器，供新会话使用
+     */
+    public LoopDetector newSession() {
+        return new LoopDetector(repeatThreshold, stallThreshold, maxCorrections);
+    }
+
+    /**
+     * 执行工具之前记录本步的工具调用
+     *
+     * @param assistantMessage 包含工具调用的助手消息
+     */
+    public Verdict recordToolCalls(AssistantMessage assistantMessage) {
+        // 同一步内的多个调用作为一组，顺序无关
+        String fingerprint = fingerprint(assistantMessage.getToolCalls());
+        int count = callCounts.merge(fingerprint, 1, Integer::sum);
+        if (count < repeatThreshold) {
+            return Verdict.CONTINUE;
+        }
+        reason = "已经第 " + count + " 次使用相同的参数调用 " + assistantMessage.getToolCalls().stream()
+                .map(AssistantMessage.ToolCall::name)
+                .distinct()
+                .collect(Collectors.joining("、"));
+        return escalate();
+    }
+
+    /**
+     * 执行工具之后记录本步的工具结果
+     *
+     * @param toolResponseMessage 工具结果
+     */
+    public Verdict recordToolResults(ToolResponseMessage toolResponseMessage) {
+        boolean newInformation = false;
+        for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+            String digest = SecureUtil.md5(response.name() + "\n" + response.responseData());
+            newInformation |= seenResults.add(digest);
+        }
+        if (newInformation) {
+            stalledSteps = 0;
+            return Verdict.CONTINUE;
+        }
+        stalledSteps++;
+        if (stalledSteps < stallThreshold) {
+            return Verdict.CONTINUE;
+        }
+        stalledSteps = 0;
+        reason = "连续 " + stallThreshold + " 步的工具结果没有任何新信息";
+        return escalate();
+    }
+
+    /**
+     * 纠正次数用完之前返回 CORRECT，之后返回 STOP
+     */
+    private Verdict escalate() {
+        if (corrections < maxCorrections) {
+            corrections++;
+            return Verdict.CORRECT;
+        }
+        return Verdict.STOP;
+    }
+
+    private static String fingerprint(List<AssistantMessage.ToolCall> toolCalls) {
+        return toolCalls.stream()
+                .map(toolCall -> toolCall.name() + ":" + ToolArguments.normalize(toolCall.arguments()))
+                .sorted()
+                .collect(Collectors.joining("\n"));
+    }
+}
@@ -0,0 +1,400 @@
+package com.yam.myaiagent.agent;
+
+import cn.hutool.core.util.StrUtil;
+import com.yam.myaiagent.agent.model.SubTask;
+import com.yam.myaiagent.agent.model.TaskPlan;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 多智能体规划-执行编排器
+ * <p>
+ * 单个 ReAct 循环只能一步一步串行推进，这里把一次任务分成三个阶段：
+ * <ol>
+ *     <li>规划：由大模型把任务拆分成若干子任务，子任务之间的依赖关系构成有向无环图</li>
+ *     <li>执行：每个子任务由一个独立的工具调用代理会话执行，依赖都完成后立即开始，互不依赖的分支并行执行；
+ *     每个执行代理只拿到自己的子任务和所依赖子任务的结果（截断后），上下文相互隔离且有上限</li>
+ *     <li>合并：由大模型把所有子任务的结果整合成最终答案</li>
+ * </ol>
+ * 编排器保存单次运行的状态，每次运行创建一个新实例。
+ */
+@Slf4j
+public class MultiAgentOrchestrator {
+
+    // 执行子任务的线程池，每个子任务一个虚拟线程
+    private static final ExecutorService WORKER_EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("agent-worker-", 0).factory());
+
+    // 默认同时执行的子任务数
+    private static final int DEFAULT_MAX_PARALLEL_WORKERS = 4;
+    // 默认每个执行代理的最大步骤数
+    private static final int DEFAULT_WORKER_MAX_STEPS = 5;
+    // 默认最多拆分的子任务数
+    private static final int DEFAULT_MAX_SUB_TASKS = 8;
+    // 默认每个子任务结果传递给下游（依赖它的子任务、合并）的最大字符数，单个子任务的最终答案不截断
+    private static final int DEFAULT_MAX_RESULT_LENGTH = 2000;
+
+    private static final String PLAN_SYSTEM_PROMPT = """
+            You are a planning agent. Break the user's task into a small number of concrete sub-tasks
+            (at most %d) that can each be completed independently by an assistant with web search,
+            web scraping, file and document tools.
+            Give every sub-task a short unique id. List in dependsOn the ids of the sub-tasks whose results
+            it needs; sub-tasks without dependencies will run in parallel, so only add a dependency when the
+            result is really required. Do not create cycles. A simple task may be a single sub-task.
+            """;
+
+    private static final String WORKER_PROMPT_TEMPLATE = """
+            You are working on one part of a larger task.
+            Overall task: %s
+            Your sub-task: %s
+            %s
+            Focus only on your sub-task, then give a concise, self-contained answer and call the terminate tool.
+            """;
+
+    private static final String MERGE_SYSTEM_PROMPT = """
+            You combine the results of several sub-tasks into one complete, well-organized answer
+            to the user's original task. Resolve overlaps and contradictions, and do not mention the sub-tasks.
+            """;
+
+    // 执行子任务的代理模板，每个子任务基于它创建新会话
+    private final ToolCallAgent workerTemplate;
+
+    // 规划与合并使用的大模型客户端
+    private final ChatClient chatClient;
+
+    private final int workerMaxSteps;
+
+    private final int maxSubTasks;
+
+    private final int maxResultLength;
+
+    // 限制同时执行的子任务数
+    private final Semaphore workerPermits;
+
+    // 正在执行的子任务代理，取消时一并取消
+    private final Set<BaseAgent> activeWorkers = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean cancelled;
+
+    public MultiAgentOrchestrator(ToolCallAgent workerTemplate) {
+        this(workerTemplate, workerTemplate.getChatClient(), DEFAULT_MAX_PARALLEL_WORKERS, DEFAULT_WORKER_MAX_STEPS,
+                DEFAULT_MAX_SUB_TASKS, DEFAULT_MAX_RESULT_LENGTH);
+    }
+
+    public MultiAgentOrchestrator(ToolCallAgent workerTemplate, ChatClient chatClient, int maxParallelWorkers,
+                                  int workerMaxSteps, int maxSubTasks, int maxResultLength) {
+        this.workerTemplate = workerTemplate;
+        this.chatClient = chatClient;
+        this.workerMaxSteps = workerMaxSteps;
+        this.maxSubTasks = maxSubTasks;
+        this.maxResultLength = maxResultLength;
+        this.workerPermits = new Semaphore(maxParallelWorkers);
+    }
+
+    /**
+     * 规划、并行执行并合并结果
+     *
+     * @param task 用户任务
+     * @return 最终答案
+     */
+    public String execute(String task) {
+        return execute(task, progress -> {
+        });
+    }
+
+    /**
+     * 规划、并行执行并合并结果
+     *
+     * @param task             用户任务
+     * @param progressListener 接收执行进度（计划、每个子任务的结果）
+     * @return 最终答案
+     */
+    public String execute(String task, Consumer<String> progressListener) {
+        if (StrUtil.isBlank(task)) {
+            throw new RuntimeException("Cannot run agent with empty user prompt");
+        }
+        TaskPlan plan = plan(task);
+        progressListener.accept("计划：\n" + describe(plan));
+        Map<String, String> results = executePlan(task, plan, progressListener);
+        if (cancelled) {
+            return "运行已取消";
+        }
+        // 只有一个子任务时，它的完整结果就是最终答案
+        if (results.size() == 1) {
+            return results.values().iterator().next();
+        }
+        return merge(task, plan, results);
+    }
+
+    /**
+     * 规划、并行执行并合并结果（流式输出）
+     * <p>
+     * 计划和每个子任务的结果以默认事件推送，合并后的最终答案以 answer 事件推送
+     *
+     * @param task 用户任务
+     * @return 执行结果
+     */
+    public SseEmitter executeStream(String task) {
+        SseEmitter sseEmitter = new SseEmitter(300000L); // 5 分钟超时
+        sseEmitter.onTimeout(() -> {
+            this.cancel();
+            log.warn("SSE connection timeout");
+        });
+        sseEmitter.onError(e -> {
+            this.cancel();
+            log.warn("SSE connection error: {}", e.getMessage());
+        });
+        sseEmitter.onCompletion(this::cancel);
+        try {
+            workerTemplate.getExecutionEngine().submit(() -> {
+                try {
+                    String answer = execute(task, progress -> send(sseEmitter, progress));
+                    if (!cancelled) {
+                        sseEmitter.send(SseEmitter.event().name("answer").data(answer));
+                        sseEmitter.complete();
+                    }
+                } catch (Exception e) {
+                    if (cancelled) {
+                        return;
+                    }
+                    log.error("error executing plan", e);
+                    try {
+                        sseEmitter.send("执行错误：" + e.getMessage());
+                        sseEmitter.complete();
+                    } catch (IOException ex) {
+                        sseEmitter.completeWithError(ex);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Agent execution rejected: {}", e.getMessage());
+            send(sseEmitter, "错误：当前执行中的任务过多，请稍后再试");
+            sseEmitter.complete();
+        }
+        return sseEmitter;
+    }
+
+    /**
+     * 取消本次运行，正在执行的子任务代理会被取消，尚未开始的子任务不再执行
+     */
+    public void cancel() {
+        this.cancelled = true;
+        activeWorkers.forEach(BaseAgent::cancel);
+    }
+
+    /**
+     * 让大模型生成任务计划，计划无效时退化为单个子任务
+     */
+    TaskPlan plan(String task) {
+        try {
+            TaskPlan plan = chatClient.prompt()
+                    .system(PLAN_SYSTEM_PROMPT.formatted(maxSubTasks))
+                    .user(task)
+                    .call()
+                    .entity(TaskPlan.class);
+            return normalize(plan, task, maxSubTasks);
+        } catch (Exception e) {
+            log.warn("Failed to plan task, running it as a single sub-task: {}", e.getMessage());
+            return singleTask(task);
+        }
+    }
+
+    /**
+     * 校验并整理计划：去掉重复和超出数量的子任务、忽略不存在的依赖，按拓扑顺序排列。
+     * 计划为空或存在环时退化为单个子任务。
+     */
+    static TaskPlan normalize(TaskPlan plan, String task, int maxSubTasks) {
+        if (plan == null || plan.tasks() == null || plan.tasks().isEmpty()) {
+            return singleTask(task);
+        }
+        Map<String, SubTask> byId = new LinkedHashMap<>();
+        for (SubTask subTask : plan.tasks()) {
+            if (byId.size() >= maxSubTasks) {
+                break;
+            }
+            if (subTask == null || StrUtil.isBlank(subTask.id()) || StrUtil.isBlank(subTask.description())) {
+                continue;
+            }
+            byId.putIfAbsent(subTask.id(), subTask);
+        }
+        if (byId.isEmpty()) {
+            return singleTask(task);
+        }
+        Map<String, List<String>> dependencies = new LinkedHashMap<>();
+        byId.forEach((id, subTask) -> dependencies.put(id, subTask.dependsOn() == null ? List.of()
+                : subTask.dependsOn().stream()
+                .filter(dependency -> byId.containsKey(dependency) && !dependency.equals(id))
+                .distinct()
+                .toList()));
+        // Kahn 拓扑排序，同时检测环
+        Map<String, Integer> inDegree = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        dependencies.forEach((id, dependsOn) -> {
+            inDegree.put(id, dependsOn.size());
+            dependsOn.forEach(dependency -> dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(id));
+        });
+        Deque<String> ready = new ArrayDeque<>();
+        dependencies.keySet().stream().filter(id -> inDegree.get(id) == 0).forEach(ready::add);
+        List<SubTask> ordered = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            String id = ready.poll();
+            ordered.add(new SubTask(id, byId.get(id).description(), dependencies.get(id)));
+            for (String dependent : dependents.getOrDefault(id, List.of())) {
+                if (inDegree.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (ordered.size() < byId.size()) {
+            log.warn("Task plan contains a dependency cycle, running the task as a single sub-task");
+            return singleTask(task);
+        }
+        return new TaskPlan(ordered);
+    }
+
+    /**
+     * 按依赖关系执行计划：子任务在依赖全部完成后立即开始，互不依赖的子任务并行执行
+     *
+     * @return 子任务 ID 到完整结果的映射，按计划顺序排列
+     */
+    private Map<String, String> executePlan(String task, TaskPlan plan, Consumer<String> progressListener) {
+        Map<String, CompletableFuture<String>> futures = new LinkedHashMap<>();
+        // 计划已按拓扑顺序排列，依赖的 future 一定已经创建
+        for (SubTask subTask : plan.tasks()) {
+            CompletableFuture<?>[] dependencyFutures = subTask.dependsOn().stream()
+                    .map(futures::get)
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture<String> future = CompletableFuture.allOf(dependencyFutures)
+                    .thenApplyAsync(ignored -> {
+                        Map<String, String> dependencyResults = new LinkedHashMap<>();
+                        subTask.dependsOn().forEach(dependency -> dependencyResults.put(dependency,
+                                truncate(futures.get(dependency).join())));
+                        String result = runWorker(task, subTask, dependencyResults);
+                        progressListener.accept("子任务 " + subTask.id() + " 完成：" + truncate(result));
+                        return result;
+                    }, WORKER_EXECUTOR);
+            futures.put(subTask.id(), future);
+        }
+        Map<String, String> results = new LinkedHashMap<>();
+        futures.forEach((id, future) -> results.put(id, future.join()));
+        return results;
+    }
+
+    /**
+     * 在新的代理会话中执行一个子任务
+     */
+    private String runWorker(String task, SubTask subTask, Map<String, String> dependencyResults) {
+        if (cancelled) {
+            return "运行已取消";
+        }
+        try {
+            workerPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "运行已取消";
+        }
+        ToolCallAgent worker = workerTemplate.newSession();
+        worker.setMaxSteps(workerMaxSteps);
+        // 不保存子任务的检查点
+        worker.setCheckpointStore(null);
+        activeWorkers.add(worker);
+        try {
+            // 加入后再检查一次，避免错过取消
+            if (cancelled) {
+                return "运行已取消";
+            }
+            String context = dependencyResults.isEmpty() ? "" : dependencyResults.entrySet().stream()
+                    .map(entry -> "Result of sub-task " + entry.getKey() + ":\n" + entry.getValue())
+                    .collect(Collectors.joining("\n\n", "Results you can build on:\n", "\n"));
+            log.info("Running sub-task {} on {}", subTask.id(), Thread.currentThread());
+            String output = worker.run(WORKER_PROMPT_TEMPLATE.formatted(task, subTask.description(), context));
+            return finalAnswer(worker, output);
+        } catch (Exception e) {
+            log.error("Sub-task {} failed", subTask.id(), e);
+            return "子任务执行失败：" + e.getMessage();
+        } finally {
+            activeWorkers.remove(worker);
+            workerPermits.release();
+        }
+    }
+
+    /**
+     * 子任务的答案：代理最后一次不调用工具时的回复，没有时使用每一步的执行结果
+     */
+    private static String finalAnswer(BaseAgent worker, String output) {
+        List<Message> messageList = worker.getMessageList();
+        for (int i = messageList.size() - 1; i >= 0; i--) {
+            if (messageList.get(i) instanceof AssistantMessage assistantMessage
+                    && !assistantMessage.hasToolCalls() && StrUtil.isNotBlank(assistantMessage.getText())) {
+                return assistantMessage.getText();
+            }
+        }
+        return output;
+    }
+
+    /**
+     * 让大模型合并所有子任务的结果，失败时直接拼接结果
+     */
+    private String merge(String task, TaskPlan plan, Map<String, String> results) {
+        String combined = plan.tasks().stream()
+                .map(subTask -> "## " + subTask.description() + "\n" + truncate(results.get(subTask.id())))
+                .collect(Collectors.joining("\n\n"));
+        try {
+            return chatClient.prompt()
+                    .system(MERGE_SYSTEM_PROMPT)
+                    .user("Original task: " + task + "\n\nSub-task results:\n\n" + combined)
+                    .call()
+                    .content();
+        } catch (Exception e) {
+            log.error("Failed to merge sub-task results", e);
+            return combined;
+        }
+    }
+
+    /**
+     * 截断传递给下游的子任务结果
+     */
+    private String truncate(String result) {
+        return StrUtil.maxLength(result, maxResultLength);
+    }
+
+    private static TaskPlan singleTask(String task) {
+        return new TaskPlan(List.of(new SubTask("1", task, List.of())));
+    }
+
+    private static String describe(TaskPlan plan) {
+        return plan.tasks().stream()
+                .map(subTask -> subTask.id() + ". " + subTask.description()
+                        + (subTask.dependsOn().isEmpty() ? "" : "（依赖：" + String.join(", ", subTask.dependsOn()) + "）"))
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static void send(SseEmitter sseEmitter, String data) {
+        try {
+            sseEmitter.send(data);
+        } catch (IOException e) {
+            log.warn("Failed to send progress: {}", e.getMessage());
+        }
+    }
+}
@@ -10,6 +10,7 @@ import com.yam.myaiagent.advisor.MyLoggerAdvisor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
@@ -18,7 +19,9 @@ import org.springframework.stereotype.Component;
 @Component
 public class MyManus extends ToolCallAgent {
 
-    public MyManus(ToolCallback[] allTools, ChatModel dashscopeChatModel) {
+    // 还有一个创建新会话用的私有构造器，需要指明 Spring 使用哪一个
+    @Autowired
+    public MyManus(ToolCallback[] allTools, ChatModel dashscopeChatModel, AgentCheckpointStore checkpointStore) {
         super(allTools);
         this.setName("MyManus");
         String SYSTEM_PROMPT = """
@@ -39,5 +42,19 @@ public class MyManus extends ToolCallAgent {
                 .defaultAdvisors(new MyLoggerAdvisor())
                 .build();
         this.setChatClient(chatClient);
+        // 每一步保存检查点，运行中断后可以通过运行 ID 恢复
+        this.setCheckpointStore(checkpointStore);
+    }
+
+    private MyManus(MyManus template) {
+        super(template);
+    }
+
+    /**
+     * 创建新的会话，复用已构建好的客户端、工具和提示词
+     */
+    @Override
+    public MyManus newSession() {
+        return new MyManus(this);
     }
 }
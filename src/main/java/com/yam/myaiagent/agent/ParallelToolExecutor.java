@@ -0,0 +1,143 @@
+package com.yam.myaiagent.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 并行执行工具调用
+ * <p>
+ * 模型在一次回复中返回多个工具调用时，ToolCallingManager 会逐个串行执行，总耗时是各工具耗时之和。
+ * 这里把每个工具调用放到虚拟线程上并发执行，同时执行的数量不超过 maxParallelism，
+ * 每个工具调用有独立的超时时间（从真正开始执行时计时）。
+ * 无论完成先后，返回的 ToolResponseMessage 中的结果都按模型给出的工具调用顺序排列。
+ * <p>
+ * 工具抛出异常、超时或找不到工具时，不会中断其他工具，而是把错误信息作为该工具的结果返回给模型。
+ */
+@Slf4j
+public class ParallelToolExecutor {
+
+    // 默认最多同时执行的工具调用数
+    private static final int DEFAULT_MAX_PARALLELISM = 4;
+    // 默认单个工具调用的超时时间
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(60);
+
+    // 所有工具调用共享的虚拟线程执行器，阻塞的网络 IO 不会占用平台线程
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    // 工具名称 -> 工具
+    private final Map<String, ToolCallback> toolCallbacks = new HashMap<>();
+
+    private final int maxParallelism;
+
+    private final Duration defaultTimeout;
+
+    // 工具名称 -> 该工具的超时时间（未配置的使用默认值）
+    private final Map<String, Duration> toolTimeouts;
+
+    public ParallelToolExecutor(ToolCallback[] availableTools) {
+        this(availableTools, DEFAULT_MAX_PARALLELISM, DEFAULT_TIMEOUT, Map.of());
+    }
+
+    public ParallelToolExecutor(ToolCallback[] availableTools, int maxParallelism, Duration defaultTimeout,
+                                Map<String, Duration> toolTimeouts) {
+        for (ToolCallback toolCallback : availableTools) {
+            this.toolCallbacks.put(toolCallback.getToolDefinition().name(), toolCallback);
+        }
+        this.maxParallelism = Math.max(1, maxParallelism);
+        this.defaultTimeout = defaultTimeout;
+        this.toolTimeouts = Map.copyOf(toolTimeouts);
+    }
+
+    /**
+     * 执行助手消息中的所有工具调用
+     *
+     * @param messageList      当前的消息上下文
+     * @param assistantMessage 包含工具调用的助手消息
+     * @return 执行结果，conversationHistory 为原上下文 + 助手消息 + 工具结果消息
+     */
+    public ToolExecutionResult execute(List<Message> messageList, AssistantMessage assistantMessage) {
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        ToolResponseMessage.ToolResponse[] responses = new ToolResponseMessage.ToolResponse[toolCalls.size()];
+        Semaphore permits = new Semaphore(maxParallelism);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < toolCalls.size(); i++) {
+            int index = i;
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            futures.add(EXECUTOR.submit(() -> {
+                permits.acquireUninterruptibly();
+                try {
+                    // 按下标写入，保证结果顺序与工具调用顺序一致
+                    responses[index] = new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(),
+                            call(toolCall));
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new IllegalStateException("Interrupted while executing tool calls", e);
+            } catch (ExecutionException e) {
+                // call 内部已处理所有异常，这里不会发生
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        List<Message> conversationHistory = new ArrayList<>(messageList);
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(Arrays.asList(responses), Map.of()));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .build();
+    }
+
+    /**
+     * 在独立的虚拟线程中执行单个工具调用并等待结果，超时后中断该线程
+     */
+    private String call(AssistantMessage.ToolCall toolCall) {
+        ToolCallback toolCallback = toolCallbacks.get(toolCall.name());
+        if (toolCallback == null) {
+            return "错误：找不到工具 " + toolCall.name();
+        }
+        Duration timeout = toolTimeouts.getOrDefault(toolCall.name(), defaultTimeout);
+        long start = System.nanoTime();
+        Future<String> future = EXECUTOR.submit(() -> toolCallback.call(toolCall.arguments()));
+        try {
+            String result = future.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            log.info("工具 {} 执行完成，耗时 {} ms", toolCall.name(), (System.nanoTime() - start) / 1_000_000);
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("工具 {} 执行超时（{} ms）", toolCall.name(), timeout.toMillis());
+            return "工具调用超时（" + timeout.toMillis() + " 毫秒）";
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return "工具调用被中断";
+        } catch (ExecutionException e) {
+            log.error("工具 {} 执行失败", toolCall.name(), e.getCause());
+            return "工具调用失败：" + e.getCause().getMessage();
+        }
+    }
+}
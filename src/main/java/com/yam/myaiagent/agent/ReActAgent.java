@@ -13,6 +13,13 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public abstract class ReActAgent extends BaseAgent {
 
+    protected ReActAgent() {
+    }
+
+    protected ReActAgent(ReActAgent template) {
+        super(template);
+    }
+
     /**
      * 处理当前状态并决定下一步行动
      *
@@ -40,6 +47,10 @@ public abstract class ReActAgent extends BaseAgent {
             if (!shouldAct) {
                 return "思考完成 - 无需行动";
             }
+            // 思考期间运行已被取消，不再执行工具
+            if (isCancelled()) {
+                return "运行已取消";
+            }
             // 再行动
             return act();
         } catch (Exception e) {
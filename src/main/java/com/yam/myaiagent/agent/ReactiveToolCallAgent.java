@@ -0,0 +1,129 @@
+package com.yam.myaiagent.agent;
+
+import cn.hutool.core.util.StrUtil;
+import com.yam.myaiagent.agent.model.AgentState;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于 Reactor 的工具调用代理
+ * <p>
+ * 与 {@link BaseAgent#runStream} 在线程中同步循环并推送 SseEmitter 不同，这里把整个思考-行动循环组装成一个 Flux：
+ * <ul>
+ *     <li>思考：通过 ChatClient 流式调用大模型，文本片段作为 token 事件直接发给下游，全部片段到齐后再拼装工具调用</li>
+ *     <li>行动：工具本身是阻塞调用，放到虚拟线程调度器上执行，不占用响应式线程</li>
+ *     <li>背压：步骤之间通过 concatMap 串行，下游消费不过来时不会提前开始下一步，文本片段也按下游请求量拉取</li>
+ *     <li>取消：客户端断开连接时订阅被取消，正在进行的大模型请求随之中止，执行中的工具线程会被中断</li>
+ * </ul>
+ * 配置（客户端、工具、提示词）与传入的代理共享，运行状态独立。
+ */
+@EqualsAndHashCode(callSuper = true)
+@Slf4j
+public class ReactiveToolCallAgent extends ToolCallAgent {
+
+    // 执行工具调用的调度器，每个任务一个虚拟线程，取消时中断线程
+    private static final Scheduler TOOL_SCHEDULER = Schedulers.fromExecutorService(
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("agent-tool-", 0).factory()),
+            "agent-tool");
+
+    public ReactiveToolCallAgent(ToolCallAgent template) {
+        super(template);
+    }
+
+    @Override
+    public ReactiveToolCallAgent newSession() {
+        return new ReactiveToolCallAgent(this);
+    }
+
+    /**
+     * 运行代理（响应式流）
+     *
+     * @param userPrompt 用户提示词
+     * @return 事件流：token 事件为模型输出的文本片段，默认事件为每一步的结果
+     */
+    public Flux<ServerSentEvent<String>> runReactive(String userPrompt) {
+        return Flux.defer(() -> {
+                    // 1、基础校验
+                    if (getState() != AgentState.IDLE) {
+                        return Flux.just(message("错误：无法从状态运行代理：" + getState()));
+                    }
+                    if (StrUtil.isBlank(userPrompt)) {
+                        return Flux.just(message("错误：不能使用空提示词运行代理"));
+                    }
+                    // 2、执行，更改状态
+                    setState(AgentState.RUNNING);
+                    getMessageList().add(new UserMessage(userPrompt));
+                    return Flux.range(1, getMaxSteps())
+                            .concatMap(this::reactiveStep)
+                            // 检查是否超出步骤限制
+                            .concatWith(Flux.defer(() -> {
+                                if (getState() == AgentState.FINISHED) {
+                                    return Flux.empty();
+                                }
+                                setState(AgentState.FINISHED);
+                                return Flux.just(message("执行结束：达到最大步骤（" + getMaxSteps() + "）"));
+                            }));
+                })
+                .doOnCancel(() -> {
+                    log.info("{} 的运行已被取消（客户端断开连接）", getName());
+                    setState(AgentState.ERROR);
+                })
+                .doOnError(e -> {
+                    log.error("error executing agent", e);
+                    setState(AgentState.ERROR);
+                })
+                .doFinally(signalType -> {
+                    // 3、清理资源
+                    if (signalType != SignalType.ON_COMPLETE) {
+                        log.info("{} 的运行以 {} 结束", getName(), signalType);
+                    }
+                    cleanup();
+                });
+    }
+
+    /**
+     * 单个步骤：流式思考，需要时在虚拟线程上执行工具
+     */
+    private Flux<ServerSentEvent<String>> reactiveStep(int stepNumber) {
+        return Flux.defer(() -> {
+            // 上一步已经调用了终止工具
+            if (getState() == AgentState.FINISHED) {
+                return Flux.<ServerSentEvent<String>>empty();
+            }
+            setCurrentStep(stepNumber);
+            log.info("Executing step {}/{}", stepNumber, getMaxSteps());
+            StreamingResponseAssembler assembler = new StreamingResponseAssembler();
+            AtomicBoolean thinkFailed = new AtomicBoolean();
+            // 思考失败时与同步版本一致：记录错误，本步不再行动
+            Flux<ServerSentEvent<String>> tokens = Flux.defer(() -> prepareThinkRequest().stream().chatResponse())
+                    .map(assembler::accept)
+                    .filter(token -> !token.isEmpty())
+                    .map(token -> ServerSentEvent.<String>builder().event("token").data(token).build())
+                    .onErrorResume(e -> {
+                        handleThinkError(e);
+                        thinkFailed.set(true);
+                        return Flux.empty();
+                    });
+            Mono<String> outcome = Mono.defer(() ->
+                    !thinkFailed.get() && handleThinkResponse(assembler.toChatResponse())
+                            ? Mono.fromCallable(this::act).subscribeOn(TOOL_SCHEDULER)
+                            : Mono.just("思考完成 - 无需行动"));
+            return tokens.concatWith(outcome.map(result -> message("Step " + stepNumber + ": " + result)))
+                    .onErrorResume(e -> Flux.just(message("Step " + stepNumber + ": 步骤执行失败：" + e.getMessage())));
+        });
+    }
+
+    private static ServerSentEvent<String> message(String data) {
+        return ServerSentEvent.<String>builder().data(data).build();
+    }
+}
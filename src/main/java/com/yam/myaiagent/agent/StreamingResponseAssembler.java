@@ -0,0 +1,105 @@
+package com.yam.myaiagent.agent;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把流式返回的 ChatResponse 片段拼装成完整的响应
+ * <p>
+ * 文本按片段顺序拼接；工具调用的参数可能被拆分到多个片段中：
+ * 带有新 ID 的片段开始一个新的工具调用，没有 ID 或 ID 相同的片段继续补全上一个工具调用的名称和参数。
+ * 非线程安全，每次流式调用使用一个新实例。
+ */
+public class StreamingResponseAssembler {
+
+    private final StringBuilder text = new StringBuilder();
+
+    private final List<ToolCallBuilder> toolCalls = new ArrayList<>();
+
+    private ChatResponseMetadata metadata;
+
+    /**
+     * 正在拼装的工具调用
+     */
+    private static class ToolCallBuilder {
+        private final String id;
+        private String type;
+        private String name;
+        private final StringBuilder arguments = new StringBuilder();
+
+        private ToolCallBuilder(String id) {
+            this.id = id;
+        }
+
+        private AssistantMessage.ToolCall build() {
+            return new AssistantMessage.ToolCall(id, StrUtil.blankToDefault(type, "function"), name,
+                    arguments.toString());
+        }
+    }
+
+    /**
+     * 合并一个片段
+     *
+     * @param chunk 流式响应片段
+     * @return 该片段新增的文本，没有文本时返回空字符串
+     */
+    public String accept(ChatResponse chunk) {
+        if (chunk.getMetadata() != null) {
+            metadata = chunk.getMetadata();
+        }
+        StringBuilder delta = new StringBuilder();
+        for (Generation generation : chunk.getResults()) {
+            AssistantMessage output = generation.getOutput();
+            if (output == null) {
+                continue;
+            }
+            if (StrUtil.isNotEmpty(output.getText())) {
+                delta.append(output.getText());
+            }
+            for (AssistantMessage.ToolCall toolCall : output.getToolCalls()) {
+                mergeToolCall(toolCall);
+            }
+        }
+        text.append(delta);
+        return delta.toString();
+    }
+
+    /**
+     * 拼装完整的响应
+     */
+    public ChatResponse toChatResponse() {
+        List<AssistantMessage.ToolCall> assembledToolCalls = toolCalls.stream()
+                .map(ToolCallBuilder::build)
+                .toList();
+        AssistantMessage assistantMessage = new AssistantMessage(text.toString(), Map.of(), assembledToolCalls);
+        return metadata != null
+                ? new ChatResponse(List.of(new Generation(assistantMessage)), metadata)
+                : new ChatResponse(List.of(new Generation(assistantMessage)));
+    }
+
+    private void mergeToolCall(AssistantMessage.ToolCall toolCall) {
+        ToolCallBuilder current = toolCalls.isEmpty() ? null : toolCalls.get(toolCalls.size() - 1);
+        boolean startsNew = current == null
+                || (StrUtil.isNotBlank(toolCall.id()) && !toolCall.id().equals(current.id));
+        if (startsNew) {
+            current = new ToolCallBuilder(toolCall.id());
+            toolCalls.add(current);
+        }
+        if (StrUtil.isBlank(current.type) && StrUtil.isNotBlank(toolCall.type())) {
+            current.type = toolCall.type();
+        }
+        if (StrUtil.isBlank(current.name) && StrUtil.isNotBlank(toolCall.name())) {
+            current.name = toolCall.name();
+        }
+        if (toolCall.arguments() != null) {
+            current.arguments.append(toolCall.arguments());
+        }
+    }
+}
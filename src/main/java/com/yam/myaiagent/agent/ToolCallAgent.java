@@ -7,6 +7,7 @@ import com.yam.myaiagent.agent.model.AgentState;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.ToolResponseMessage;
@@ -18,7 +19,9 @@ import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
 import org.springframework.ai.tool.ToolCallback;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -32,25 +35,61 @@ public class ToolCallAgent extends ReActAgent {
     // 可用的工具
     private final ToolCallback[] availableTools;
 
-    // 保存工具调用信息的响应结果（要调用那些工具）
+    // 保存工具调用信息的响应结果（要调用那些工具），属于运行状态
     private ChatResponse toolCallChatResponse;
 
     // 工具调用管理者
     private final ToolCallingManager toolCallingManager;
 
+    // 并行执行工具调用，为 null 时使用 toolCallingManager 串行执行
+    private ParallelToolExecutor parallelToolExecutor;
+
     // 禁用 Spring AI 内置的工具调用机制，自己维护选项和消息上下文
     private final ChatOptions chatOptions;
 
+    // 上下文窗口管理（截断过长的工具结果、清空较早的工具结果），为 null 时不控制上下文大小
+    private ContextWindowManager contextWindowManager = new ContextWindowManager();
+
+    // 重复调用与停滞检测，属于运行状态，新会话使用配置相同的新实例；为 null 时不检测
+    private LoopDetector loopDetector = new LoopDetector();
+
+    // 检测到重复或停滞时注入的纠正提示
+    private static final String CORRECTION_PROMPT = """
+            Loop detected: %s.
+            Do not repeat tool calls you have already made; their results are already in the conversation.
+            Either try a different approach that can produce new information, or, if you can already answer,
+            give the final answer and call the `terminate` tool.
+            """;
+
     public ToolCallAgent(ToolCallback[] availableTools) {
         super();
         this.availableTools = availableTools;
         this.toolCallingManager = ToolCallingManager.builder().build();
+        this.parallelToolExecutor = new ParallelToolExecutor(availableTools);
         // 禁用 Spring AI 内置的工具调用机制，自己维护选项和消息上下文
         this.chatOptions = DashScopeChatOptions.builder()
                 .withProxyToolCalls(true)
                 .build();
     }
 
+    /**
+     * 基于已有代理创建新会话，共享工具、选项和工具执行器
+     */
+    protected ToolCallAgent(ToolCallAgent template) {
+        super(template);
+        this.availableTools = template.availableTools;
+        this.toolCallingManager = template.toolCallingManager;
+        this.chatOptions = template.chatOptions;
+        this.contextWindowManager = template.contextWindowManager;
+        this.parallelToolExecutor = template.parallelToolExecutor;
+        this.loopDetector = template.loopDetector == null ? null : template.loopDetector.newSession();
+    }
+
+    @Override
+    public ToolCallAgent newSession() {
+        return new ToolCallAgent(this);
+    }
+
     /**
      * 处理当前状态并决定下一步行动
      *
@@ -58,51 +97,79 @@ public class ToolCallAgent extends ReActAgent {
      */
     @Override
     public boolean think() {
+        try {
+            ChatClient.ChatClientRequestSpec requestSpec = prepareThinkRequest();
+            // 流式运行时边生成边推送文本，同时拼装工具调用；否则一次性获取完整响应
+            ChatResponse chatResponse = getTokenListener() != null
+                    ? streamChatResponse(requestSpec)
+                    : requestSpec.call().chatResponse();
+            return handleThinkResponse(chatResponse);
+        } catch (Exception e) {
+            handleThinkError(e);
+            return false;
+        }
+    }
+
+    /**
+     * 拼接提示词、控制上下文大小，构造本轮思考的大模型请求
+     */
+    protected ChatClient.ChatClientRequestSpec prepareThinkRequest() {
         // 1、校验提示词，拼接用户提示词
         if (StrUtil.isNotBlank(getNextStepPrompt())) {
             UserMessage userMessage = new UserMessage(getNextStepPrompt());
             getMessageList().add(userMessage);
         }
-        // 2、调用 AI 大模型，获取工具调用结果
+        // 2、构造调用 AI 大模型的请求
         List<Message> messageList = getMessageList();
+        if (contextWindowManager != null) {
+            contextWindowManager.fit(messageList);
+        }
         Prompt prompt = new Prompt(messageList, this.chatOptions);
-        try {
-            ChatResponse chatResponse = getChatClient().prompt(prompt)
-                    .system(getSystemPrompt())
-                    .tools(availableTools)
-                    .call()
-                    .chatResponse();
-            // 记录响应，用于等下 Act
-            this.toolCallChatResponse = chatResponse;
-            // 3、解析工具调用结果，获取要调用的工具
-            // 助手消息
-            AssistantMessage assistantMessage = chatResponse.getResult().getOutput();
-            // 获取要调用的工具列表
-            List<AssistantMessage.ToolCall> toolCallList = assistantMessage.getToolCalls();
-            // 输出提示信息
-            String result = assistantMessage.getText();
-            log.info(getName() + "的思考：" + result);
-            log.info(getName() + "选择了 " + toolCallList.size() + " 个工具来使用");
-            String toolCallInfo = toolCallList.stream()
-                    .map(toolCall -> String.format("工具名称：%s，参数：%s", toolCall.name(), toolCall.arguments()))
-                    .collect(Collectors.joining("\n"));
-            log.info(toolCallInfo);
-            // 如果不需要调用工具，返回 false
-            if (toolCallList.isEmpty()) {
-                // 只有不调用工具时，才需要手动记录助手消息
-                getMessageList().add(assistantMessage);
-                return false;
-            } else {
-                // 需要调用工具时，无需记录助手消息，因为调用工具时会自动记录
-                return true;
-            }
-        } catch (Exception e) {
-            log.error(getName() + "的思考过程遇到了问题：" + e.getMessage());
-            getMessageList().add(new AssistantMessage("处理时遇到了错误：" + e.getMessage()));
+        return getChatClient().prompt(prompt)
+                .system(getSystemPrompt())
+                .tools(availableTools);
+    }
+
+    /**
+     * 处理大模型的完整响应
+     *
+     * @return 是否需要调用工具
+     */
+    protected boolean handleThinkResponse(ChatResponse chatResponse) {
+        // 记录响应，用于等下 Act
+        this.toolCallChatResponse = chatResponse;
+        // 3、解析工具调用结果，获取要调用的工具
+        // 助手消息
+        AssistantMessage assistantMessage = chatResponse.getResult().getOutput();
+        // 获取要调用的工具列表
+        List<AssistantMessage.ToolCall> toolCallList = assistantMessage.getToolCalls();
+        // 输出提示信息
+        String result = assistantMessage.getText();
+        log.info(getName() + "的思考：" + result);
+        log.info(getName() + "选择了 " + toolCallList.size() + " 个工具来使用");
+        String toolCallInfo = toolCallList.stream()
+                .map(toolCall -> String.format("工具名称：%s，参数：%s", toolCall.name(), toolCall.arguments()))
+                .collect(Collectors.joining("\n"));
+        log.info(toolCallInfo);
+        // 如果不需要调用工具，返回 false
+        if (toolCallList.isEmpty()) {
+            // 只有不调用工具时，才需要手动记录助手消息
+            getMessageList().add(assistantMessage);
             return false;
+        } else {
+            // 需要调用工具时，无需记录助手消息，因为调用工具时会自动记录
+            return true;
         }
     }
 
+    /**
+     * 处理思考过程中的异常，把错误记录到消息上下文
+     */
+    protected void handleThinkError(Throwable e) {
+        log.error(getName() + "的思考过程遇到了问题：" + e.getMessage());
+        getMessageList().add(new AssistantMessage("处理时遇到了错误：" + e.getMessage()));
+    }
+
     /**
      * 执行工具调用并处理结果
      *
@@ -113,18 +180,47 @@ public class ToolCallAgent extends ReActAgent {
         if (!toolCallChatResponse.hasToolCalls()) {
             return "没有工具需要调用";
         }
+        AssistantMessage assistantMessage = toolCallChatResponse.getResult().getOutput();
+        // 执行之前检查是否在用相同的参数重复调用
+        LoopDetector.Verdict callVerdict = loopDetector == null ? LoopDetector.Verdict.CONTINUE
+                : loopDetector.recordToolCalls(assistantMessage);
+        if (callVerdict == LoopDetector.Verdict.STOP) {
+            return stopEarly();
+        }
+        if (callVerdict == LoopDetector.Verdict.CORRECT) {
+            // 重复的调用不再执行，结果已经在上下文中
+            return skipRepeatedCalls(assistantMessage);
+        }
         // 调用工具
-        Prompt prompt = new Prompt(getMessageList(), this.chatOptions);
-        ToolExecutionResult toolExecutionResult = toolCallingManager.executeToolCalls(prompt, toolCallChatResponse);
+        ToolExecutionResult toolExecutionResult;
+        if (parallelToolExecutor != null) {
+            toolExecutionResult = parallelToolExecutor.execute(getMessageList(), assistantMessage);
+        } else {
+            Prompt prompt = new Prompt(getMessageList(), this.chatOptions);
+            toolExecutionResult = toolCallingManager.executeToolCalls(prompt, toolCallChatResponse);
+        }
         // 记录消息上下文，conversationHistory 已经包含了助手消息和工具调用返回的结果
-        setMessageList(toolExecutionResult.conversationHistory());
-        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) CollUtil.getLast(toolExecutionResult.conversationHistory());
+        List<Message> conversationHistory = new ArrayList<>(toolExecutionResult.conversationHistory());
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) CollUtil.getLast(conversationHistory);
+        // 检查工具结果是否带来了新信息
+        LoopDetector.Verdict resultVerdict = loopDetector == null ? LoopDetector.Verdict.CONTINUE
+                : loopDetector.recordToolResults(toolResponseMessage);
+        // 过长的工具结果在进入上下文前先截断或压缩
+        if (contextWindowManager != null) {
+            toolResponseMessage = contextWindowManager.limitToolResponses(toolResponseMessage, getTask());
+        }
+        conversationHistory.set(conversationHistory.size() - 1, toolResponseMessage);
+        setMessageList(conversationHistory);
         // 判断是否调用了终止工具
         boolean terminateToolCalled = toolResponseMessage.getResponses().stream()
                 .anyMatch(response -> response.name().equals("doTerminate"));
         if (terminateToolCalled) {
             // 任务结束，更改状态
             setState(AgentState.FINISHED);
+        } else if (resultVerdict == LoopDetector.Verdict.STOP) {
+            return stopEarly();
+        } else if (resultVerdict == LoopDetector.Verdict.CORRECT) {
+            getMessageList().add(new UserMessage(CORRECTION_PROMPT.formatted(loopDetector.getReason())));
         }
         
 //        // 获取工具执行结果
@@ -157,4 +253,58 @@ public class ToolCallAgent extends ReActAgent {
         log.info(results);
         return results;
     }
+
+    /**
+     * 跳过重复的工具调用：用提示代替工具结果，保证助手消息的每个工具调用都有对应的结果，再注入纠正提示
+     */
+    private String skipRepeatedCalls(AssistantMessage assistantMessage) {
+        String reason = loopDetector.getReason();
+        log.info("{} 检测到重复调用，跳过执行：{}", getName(), reason);
+        List<ToolResponseMessage.ToolResponse> responses = assistantMessage.getToolCalls().stream()
+                .map(toolCall -> new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(),
+                        "Skipped: identical call already made, see the earlier result."))
+                .toList();
+        getMessageList().add(assistantMessage);
+        getMessageList().add(new ToolResponseMessage(responses, Map.of()));
+        getMessageList().add(new UserMessage(CORRECTION_PROMPT.formatted(reason)));
+        return "检测到重复调用，已跳过：" + reason;
+    }
+
+    /**
+     * 纠正后仍然重复或停滞，提前结束运行
+     */
+    private String stopEarly() {
+        String reason = loopDetector.getReason();
+        log.info("{} 纠正后仍然{}，提前结束", getName(), reason);
+        setState(AgentState.FINISHED);
+        return "提前结束：" + reason;
+    }
+
+    /**
+     * 以流式方式调用大模型，把每个文本片段交给 tokenListener，返回拼装好的完整响应
+     */
+    private ChatResponse streamChatResponse(ChatClient.ChatClientRequestSpec requestSpec) {
+        StreamingResponseAssembler assembler = new StreamingResponseAssembler();
+        requestSpec.stream()
+                .chatResponse()
+                .doOnNext(chunk -> {
+                    String token = assembler.accept(chunk);
+                    if (!token.isEmpty()) {
+                        getTokenListener().accept(token);
+                    }
+                })
+                .blockLast();
+        return assembler.toChatResponse();
+    }
+
+    /**
+     * 获取用户最初提出的任务
+     */
+    private String getTask() {
+        return getMessageList().stream()
+                .filter(message -> message instanceof UserMessage)
+                .map(Message::getText)
+                .findFirst()
+                .orElse("");
+    }
 }
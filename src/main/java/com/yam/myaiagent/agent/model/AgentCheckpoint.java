@@ -0,0 +1,18 @@
+package com.yam.myaiagent.agent.model;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 智能体运行的检查点，记录某一步执行完成后的运行状态
+ *
+ * @param runId       运行 ID
+ * @param currentStep 已完成的步骤数
+ * @param state       代理状态
+ * @param messageList 消息上下文
+ * @param timestamp   保存时间（毫秒）
+ */
+public record AgentCheckpoint(String runId, int currentStep, AgentState state, List<Message> messageList,
+                              long timestamp) {
+}
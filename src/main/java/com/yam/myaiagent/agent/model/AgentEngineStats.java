@@ -0,0 +1,18 @@
+package com.yam.myaiagent.agent.model;
+
+/**
+ * 智能体执行引擎统计信息
+ *
+ * @param running             正在执行的任务数
+ * @param queued              等待执行的任务数（队列深度）
+ * @param maxConcurrentRuns   最多同时执行的任务数
+ * @param maxQueuedRuns       最多等待执行的任务数
+ * @param submitted           累计接收的任务数
+ * @param completed           累计正常结束的任务数
+ * @param failed              累计异常结束的任务数
+ * @param rejected            累计因队列已满被拒绝的任务数
+ * @param avgQueueWaitMillis  任务从提交到开始执行的平均等待时间（毫秒）
+ */
+public record AgentEngineStats(int running, int queued, int maxConcurrentRuns, int maxQueuedRuns, long submitted,
+                               long completed, long failed, long rejected, double avgQueueWaitMillis) {
+}
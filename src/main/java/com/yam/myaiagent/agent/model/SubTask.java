@@ -0,0 +1,13 @@
+package com.yam.myaiagent.agent.model;
+
+import java.util.List;
+
+/**
+ * 任务计划中的子任务
+ *
+ * @param id          子任务 ID，在同一个计划内唯一
+ * @param description 子任务描述，交给执行代理的具体目标
+ * @param dependsOn   依赖的子任务 ID，这些子任务完成后才能开始执行
+ */
+public record SubTask(String id, String description, List<String> dependsOn) {
+}
@@ -0,0 +1,11 @@
+package com.yam.myaiagent.agent.model;
+
+import java.util.List;
+
+/**
+ * 规划代理生成的任务计划，子任务之间的依赖关系构成一个有向无环图
+ *
+ * @param tasks 子任务列表
+ */
+public record TaskPlan(List<SubTask> tasks) {
+}
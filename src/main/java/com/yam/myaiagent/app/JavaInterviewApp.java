@@ -1,15 +1,17 @@
 package com.yam.myaiagent.app;
 
 import com.yam.myaiagent.advisor.MyLoggerAdvisor;
+import com.yam.myaiagent.advisor.TokenBudgetChatMemoryAdvisor;
+import com.yam.myaiagent.chatmemory.ChatMemoryStats;
+import com.yam.myaiagent.chatmemory.TieredChatMemory;
+import com.yam.myaiagent.constant.FileConstant;
 import com.yam.myaiagent.rag.QueryRewriter;
+import com.yam.myaiagent.tools.ToolResultCache;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.client.advisor.api.Advisor;
-import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.InMemoryChatMemory;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.tool.ToolCallback;
@@ -18,10 +20,10 @@ import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 
+import java.time.Duration;
 import java.util.List;
 
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
-import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_RETRIEVE_SIZE_KEY;
 
 /**
  * Java面试大师应用
@@ -35,6 +37,13 @@ import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvis
 public class JavaInterviewApp {
 
     private final ChatClient chatClient;
+
+    private final TieredChatMemory chatMemory;
+
+    // 每个会话在磁盘上最多保留的最近消息条数
+    private static final int CHAT_MEMORY_RETAIN_MESSAGES = 200;
+    // 会话超过这段时间没有新消息后从磁盘删除
+    private static final Duration CHAT_MEMORY_IDLE_RETENTION = Duration.ofDays(30);
     
     // 系统全局提示词 - Java面试专家
     private static final String SYSTEM_PROMPT = """
@@ -72,18 +81,30 @@ public class JavaInterviewApp {
      * @param dashscopeChatModel 阿里云大模型
      */
     public JavaInterviewApp(ChatModel dashscopeChatModel) {
-        // 初始化基于内存的对话记忆
-        ChatMemory chatMemory = new InMemoryChatMemory();
+        // 初始化分层对话记忆（活跃会话的最近消息在内存中，消息持久化到本地文件）
+        // 会话 ID 由客户端决定，限制磁盘占用：每个会话只保留最近的消息，长期不活跃的会话整体删除
+        chatMemory = new TieredChatMemory(FileConstant.FILE_SAVE_DIR + "/chat-memory/java-interview-app",
+                CHAT_MEMORY_RETAIN_MESSAGES, CHAT_MEMORY_IDLE_RETENTION);
         chatClient = ChatClient.builder(dashscopeChatModel)
                 .defaultSystem(SYSTEM_PROMPT)
                 .defaultAdvisors(
-                        new MessageChatMemoryAdvisor(chatMemory),
+                        // 按 Token 预算选取历史消息，较早的对话合并为滚动摘要
+                        new TokenBudgetChatMemoryAdvisor(chatMemory, dashscopeChatModel),
                         // 自定义日志 Advisor
                         new MyLoggerAdvisor()
                 )
                 .build();
     }
 
+    /**
+     * 获取对话记忆的命中、淘汰等统计信息
+     *
+     * @return
+     */
+    public ChatMemoryStats getChatMemoryStats() {
+        return chatMemory.getStats();
+    }
+
     /**
      * Java面试基础对话（支持多轮对话记忆）
      *
@@ -95,8 +116,7 @@ public class JavaInterviewApp {
         ChatResponse chatResponse = chatClient
                 .prompt()
                 .user(message)
-                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
-                        .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
+                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId))
                 .call()
                 .chatResponse();
         String content = chatResponse.getResult().getOutput().getText();
@@ -127,8 +147,7 @@ public class JavaInterviewApp {
         return chatClient
                 .prompt()
                 .user(message)
-                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
-                        .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
+                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId))
                 .stream()
                 .content();
     }
@@ -150,8 +169,7 @@ public class JavaInterviewApp {
                         请确保评估客观公正，建议具有可操作性。
                         """)
                 .user(message)
-                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
-                        .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
+                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId))
                 .call()
                 .entity(JavaInterviewReport.class);
         log.info("生成Java面试报告: {}", report);
@@ -184,8 +202,7 @@ public class JavaInterviewApp {
                         如果是面试相关问题，请同时给出面试技巧。
                         """)
                 .user(rewrittenMessage)
-                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
-                        .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
+                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId))
                 .advisors(new MyLoggerAdvisor())
                 // 应用RAG检索增强
                 .advisors(new QuestionAnswerAdvisor(pgVectorVectorStore))
@@ -222,8 +239,7 @@ public class JavaInterviewApp {
                         请根据需要合理使用工具，提供更好的面试辅导体验。
                         """)
                 .user(message)
-                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
-                        .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
+                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId))
                 .advisors(new MyLoggerAdvisor())
                 .tools(allTools)
                 .call()
@@ -237,6 +253,10 @@ public class JavaInterviewApp {
     @Resource
     private ToolCallbackProvider toolCallbackProvider;
 
+    // MCP 工具的结果缓存，调用时包装 MCP 客户端提供的工具
+    @Resource
+    private ToolResultCache toolResultCache;
+
     /**
      * Java面试功能（调用MCP服务）
      *
@@ -257,10 +277,9 @@ public class JavaInterviewApp {
                         请充分利用这些资源，为面试者提供最新、最准确的技术指导。
                         """)
                 .user(message)
-                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
-                        .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
+                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId))
                 .advisors(new MyLoggerAdvisor())
-                .tools(toolCallbackProvider)
+                .tools(toolResultCache.decorate(toolCallbackProvider))
                 .call()
                 .chatResponse();
         String content = chatResponse.getResult().getOutput().getText();
@@ -2,15 +2,17 @@ package com.yam.myaiagent.app;
 
 
 import com.yam.myaiagent.advisor.MyLoggerAdvisor;
+import com.yam.myaiagent.chatmemory.ChatMemoryStats;
+import com.yam.myaiagent.chatmemory.TieredChatMemory;
+import com.yam.myaiagent.constant.FileConstant;
 import com.yam.myaiagent.rag.QueryRewriter;
+import com.yam.myaiagent.tools.ToolResultCache;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.client.advisor.api.Advisor;
-import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.InMemoryChatMemory;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.tool.ToolCallback;
@@ -19,6 +21,7 @@ import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 
+import java.time.Duration;
 import java.util.List;
 
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
@@ -29,6 +32,13 @@ import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvis
 public class LoveApp {
 
     private final ChatClient chatClient;
+
+    private final TieredChatMemory chatMemory;
+
+    // 每个会话在磁盘上最多保留的最近消息条数
+    private static final int CHAT_MEMORY_RETAIN_MESSAGES = 200;
+    // 会话超过这段时间没有新消息后从磁盘删除
+    private static final Duration CHAT_MEMORY_IDLE_RETENTION = Duration.ofDays(30);
     // 系统全局提示词
     private static final String SYSTEM_PROMPT = "扮演深耕恋爱心理领域的专家。开场向用户表明身份，告知用户可倾诉恋爱难题。" +
             "围绕单身、恋爱、已婚三种状态提问：单身状态询问社交圈拓展及追求心仪对象的困扰；" +
@@ -42,11 +52,10 @@ public class LoveApp {
      * @param dashscopeChatModel
      */
     public LoveApp(ChatModel dashscopeChatModel) {
-//        // 初始化基于文件的对话记忆
-//        String fileDir = System.getProperty("user.dir") + "/tmp/chat-memory";
-//        ChatMemory chatMemory = new FileBasedChatMemory(fileDir);
-        // 初始化基于内存的对话记忆
-        ChatMemory chatMemory = new InMemoryChatMemory();
+        // 初始化分层对话记忆（活跃会话的最近消息在内存中，消息持久化到本地文件）
+        // 会话 ID 由客户端决定，限制磁盘占用：每个会话只保留最近的消息，长期不活跃的会话整体删除
+        chatMemory = new TieredChatMemory(FileConstant.FILE_SAVE_DIR + "/chat-memory/love-app",
+                CHAT_MEMORY_RETAIN_MESSAGES, CHAT_MEMORY_IDLE_RETENTION);
         chatClient = ChatClient.builder(dashscopeChatModel)
                 .defaultSystem(SYSTEM_PROMPT_NORMAL)
                 .defaultAdvisors(
@@ -59,6 +68,15 @@ public class LoveApp {
                 .build();
     }
 
+    /**
+     * 获取对话记忆的命中、淘汰等统计信息
+     *
+     * @return
+     */
+    public ChatMemoryStats getChatMemoryStats() {
+        return chatMemory.getStats();
+    }
+
     /**
      * AI 基础对话（支持多轮对话记忆）
      *
@@ -206,6 +224,10 @@ public class LoveApp {
     @Resource
     private ToolCallbackProvider toolCallbackProvider;
 
+    // MCP 工具的结果缓存，调用时包装 MCP 客户端提供的工具
+    @Resource
+    private ToolResultCache toolResultCache;
+
     /**
      * AI 恋爱报告功能（调用 MCP 服务）
      *
@@ -221,7 +243,7 @@ public class LoveApp {
                         .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
                 // 开启日志，便于观察效果
                 .advisors(new MyLoggerAdvisor())
-                .tools(toolCallbackProvider)
+                .tools(toolResultCache.decorate(toolCallbackProvider))
                 .call()
                 .chatResponse();
         String content = chatResponse.getResult().getOutput().getText();
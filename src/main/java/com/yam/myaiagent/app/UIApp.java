@@ -2,15 +2,17 @@ package com.yam.myaiagent.app;
 
 
 import com.yam.myaiagent.advisor.MyLoggerAdvisor;
+import com.yam.myaiagent.chatmemory.ChatMemoryStats;
+import com.yam.myaiagent.chatmemory.TieredChatMemory;
+import com.yam.myaiagent.constant.FileConstant;
 import com.yam.myaiagent.rag.QueryRewriter;
+import com.yam.myaiagent.tools.ToolResultCache;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.client.advisor.api.Advisor;
-import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.InMemoryChatMemory;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.tool.ToolCallback;
@@ -19,6 +21,7 @@ import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 
+import java.time.Duration;
 import java.util.List;
 
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
@@ -29,6 +32,13 @@ import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvis
 public class UIApp {
 
     private final ChatClient chatClient;
+
+    private final TieredChatMemory chatMemory;
+
+    // 每个会话在磁盘上最多保留的最近消息条数
+    private static final int CHAT_MEMORY_RETAIN_MESSAGES = 200;
+    // 会话超过这段时间没有新消息后从磁盘删除
+    private static final Duration CHAT_MEMORY_IDLE_RETENTION = Duration.ofDays(30);
     // 系统全局提示词
     private static final String SYSTEM_PROMPT = "我希望你扮演一名用户体验 / 界面（UX/UI）开发人员。" +
             "我会提供有关应用程序、网站或其他数字产品设计的一些细节，而你的工作是想出富有创意的方法来改善其用户体验。" +
@@ -41,11 +51,10 @@ public class UIApp {
      * @param dashscopeChatModel
      */
     public UIApp(ChatModel dashscopeChatModel) {
-//        // 初始化基于文件的对话记忆
-//        String fileDir = System.getProperty("user.dir") + "/tmp/chat-memory";
-//        ChatMemory chatMemory = new FileBasedChatMemory(fileDir);
-        // 初始化基于内存的对话记忆
-        ChatMemory chatMemory = new InMemoryChatMemory();
+        // 初始化分层对话记忆（活跃会话的最近消息在内存中，消息持久化到本地文件）
+        // 会话 ID 由客户端决定，限制磁盘占用：每个会话只保留最近的消息，长期不活跃的会话整体删除
+        chatMemory = new TieredChatMemory(FileConstant.FILE_SAVE_DIR + "/chat-memory/ui-app",
+                CHAT_MEMORY_RETAIN_MESSAGES, CHAT_MEMORY_IDLE_RETENTION);
         chatClient = ChatClient.builder(dashscopeChatModel)
                 .defaultSystem(SYSTEM_PROMPT)
                 .defaultAdvisors(
@@ -58,6 +67,15 @@ public class UIApp {
                 .build();
     }
 
+    /**
+     * 获取对话记忆的命中、淘汰等统计信息
+     *
+     * @return
+     */
+    public ChatMemoryStats getChatMemoryStats() {
+        return chatMemory.getStats();
+    }
+
     /**
      * AI 基础对话（支持多轮对话记忆）
      *
@@ -204,6 +222,10 @@ public class UIApp {
     @Resource
     private ToolCallbackProvider toolCallbackProvider;
 
+    // MCP 工具的结果缓存，调用时包装 MCP 客户端提供的工具
+    @Resource
+    private ToolResultCache toolResultCache;
+
     /**
      * UI 设计报告功能（调用 MCP 服务）
      *
@@ -219,7 +241,7 @@ public class UIApp {
                         .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
                 // 开启日志，便于观察效果
                 .advisors(new MyLoggerAdvisor())
-                .tools(toolCallbackProvider)
+                .tools(toolResultCache.decorate(toolCallbackProvider))
                 .call()
                 .chatResponse();
         String content = chatResponse.getResult().getOutput().getText();
@@ -0,0 +1,91 @@
+package com.yam.myaiagent.chatmemory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 有界的内存对话记忆，用于替代无限增长的 InMemoryChatMemory
+ * <p>
+ * 基于 Caffeine（W-TinyLFU 淘汰策略）保存会话：
+ * 会话数量超过上限时淘汰访问频率低的会话，长时间未访问的会话自动过期，
+ * 单个会话只保留最近 maxMessagesPerConversation 条消息。
+ */
+public class BoundedInMemoryChatMemory implements ChatMemory {
+
+    // 默认最多保留的会话数
+    private static final long DEFAULT_MAX_CONVERSATIONS = 10_000;
+    // 默认单个会话最多保留的消息数
+    private static final int DEFAULT_MAX_MESSAGES_PER_CONVERSATION = 100;
+    // 默认会话空闲过期时间
+    private static final Duration DEFAULT_EXPIRE_AFTER_ACCESS = Duration.ofHours(2);
+
+    private final Cache<String, Deque<Message>> conversations;
+
+    private final int maxMessagesPerConversation;
+
+    public BoundedInMemoryChatMemory() {
+        this(DEFAULT_MAX_CONVERSATIONS, DEFAULT_MAX_MESSAGES_PER_CONVERSATION, DEFAULT_EXPIRE_AFTER_ACCESS);
+    }
+
+    public BoundedInMemoryChatMemory(long maxConversations, int maxMessagesPerConversation, Duration expireAfterAccess) {
+        this.maxMessagesPerConversation = maxMessagesPerConversation;
+        this.conversations = Caffeine.newBuilder()
+                .maximumSize(maxConversations)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        // 写入不计入命中率统计，命中率只反映读取
+        // 在 compute 中追加：取出会话和追加之间会话不会被淘汰，否则消息会追加到已经淘汰的队列上而丢失
+        conversations.asMap().compute(conversationId, (id, existing) -> {
+            Deque<Message> conversation = existing != null ? existing : new ArrayDeque<>();
+            synchronized (conversation) {
+                conversation.addAll(messages);
+                while (conversation.size() > maxMessagesPerConversation) {
+                    conversation.pollFirst();
+                }
+            }
+            return conversation;
+        });
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        Deque<Message> conversation = conversations.getIfPresent(conversationId);
+        if (conversation == null || lastN <= 0) {
+            return List.of();
+        }
+        synchronized (conversation) {
+            List<Message> all = new ArrayList<>(conversation);
+            return all.subList(Math.max(0, all.size() - lastN), all.size());
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        conversations.invalidate(conversationId);
+    }
+
+    /**
+     * 获取命中、未命中、淘汰等统计信息
+     */
+    public ChatMemoryStats getStats() {
+        // 先执行挂起的淘汰维护，保证统计值是最新的
+        conversations.cleanUp();
+        CacheStats stats = conversations.stats();
+        return new ChatMemoryStats(conversations.estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.hitRate(), stats.evictionCount());
+    }
+}
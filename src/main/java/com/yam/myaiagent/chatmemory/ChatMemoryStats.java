@@ -0,0 +1,13 @@
+package com.yam.myaiagent.chatmemory;
+
+/**
+ * 会话记忆统计信息
+ *
+ * @param conversations 当前在内存中的会话数（估算值）
+ * @param hitCount      读取命中次数
+ * @param missCount     读取未命中次数
+ * @param hitRate       命中率
+ * @param evictionCount 因容量或过期被淘汰的会话数
+ */
+public record ChatMemoryStats(long conversations, long hitCount, long missCount, double hitRate, long evictionCount) {
+}
@@ -0,0 +1,427 @@
+package com.yam.myaiagent.chatmemory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 单个会话的追加写日志（分段存储 + 定期压缩）
+ * <p>
+ * 每个会话对应一个目录，目录下按序号存放若干段文件（00000001.log ...）。
+ * 每条消息是一条记录，格式为：[4 字节长度][Kryo 序列化的 Message][4 字节长度]。
+ * <p>
+ * 每个段文件配有一个偏移量索引文件（00000001.idx），第 i 个 8 字节是第 i 条记录在段文件中的起始位置。
+ * 读取最近 N 条消息时，通过内存映射的索引直接定位到第 N 条记录，一次读出这 N 条记录并只反序列化它们，
+ * 耗时与会话总长度无关。
+ * <p>
+ * 配置了 retainMessages 时，段数量超过 maxSegments 会触发压缩：最近 retainMessages 条消息合并为一个基准段
+ * （00000009.base.log），更早的消息被丢弃。基准段先完整写入并落盘，再原子地改名生效；
+ * 读取时忽略序号小于最新基准段的段文件，因此删除旧段之前崩溃也不会读到重复的历史，旧段在下次写入时删除。
+ */
+@Slf4j
+class ConversationLog {
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    // 压缩生成的基准段，序号更小的段都已合并进来
+    private static final String BASE_MARKER = ".base";
+
+    // 记录头 + 记录尾的长度字段
+    private static final int FRAME_OVERHEAD = Integer.BYTES * 2;
+
+    private final File dir;
+    private final MessageSerializer serializer;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final int retainMessages;
+
+    /**
+     * 编码后的一批记录
+     *
+     * @param bytes   记录字节
+     * @param offsets 每条记录相对 bytes 起点的偏移量
+     */
+    private record Frames(byte[] bytes, long[] offsets) {
+    }
+
+    /**
+     * 顺序扫描段文件的结果
+     *
+     * @param offsets  每条完整记录的起始位置
+     * @param validEnd 最后一条完整记录的结束位置，之后是写了一半的尾部
+     */
+    private record Scan(long[] offsets, long validEnd) {
+    }
+
+    /**
+     * @param retainMessages 压缩时保留的最近消息条数，小于等于 0 时不压缩、保留全部历史
+     */
+    ConversationLog(File dir, MessageSerializer serializer, long segmentBytes, int maxSegments, int retainMessages) {
+        this.dir = dir;
+        this.serializer = serializer;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.retainMessages = retainMessages;
+    }
+
+    boolean exists() {
+        return listSegments().length > 0;
+    }
+
+    /**
+     * 最近一次写入的时间，没有段文件时返回 0
+     */
+    long lastModified() {
+        long lastModified = 0;
+        for (File segment : allSegments()) {
+            lastModified = Math.max(lastModified, segment.lastModified());
+        }
+        return lastModified;
+    }
+
+    /**
+     * 追加消息，只写入新消息，开销与历史长度无关
+     * 调用方需保证同一会话的写操作互斥
+     */
+    void append(List<Message> messages) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        deleteObsoleteSegments();
+        recover();
+        Frames frames = encode(messages);
+        File segment = activeSegment();
+        if (segment.length() > 0 && segment.length() + frames.bytes().length > segmentBytes) {
+            segment = segmentFile(segmentSeq(segment) + 1);
+        }
+        long base;
+        try (FileChannel channel = FileChannel.open(segment.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            base = channel.size();
+            writeFully(channel, ByteBuffer.wrap(frames.bytes()));
+            // 一批消息只做一次落盘
+            channel.force(false);
+        }
+        // 索引在数据之后写入，崩溃导致索引落后于数据时，读取时扫描段文件，下次写入前修复
+        appendIndex(indexFile(segment), base, frames.offsets());
+        if (retainMessages > 0 && listSegments().length > maxSegments) {
+            compact();
+        }
+    }
+
+    /**
+     * 修复当前段：索引与段文件不一致（写入中途崩溃）时截断写了一半的尾部并重建索引
+     * 调用方需持有该会话的写锁，读取不会修改文件
+     */
+    void recover() throws IOException {
+        File segment = activeSegment();
+        if (segment.exists() && !isIndexValid(segment, indexFile(segment), segment.length())) {
+            rebuildIndex(segment, indexFile(segment));
+        }
+    }
+
+    /**
+     * 读取最近 lastN 条消息（按时间正序返回）
+     */
+    List<Message> readLast(int lastN) throws IOException {
+        List<List<Message>> chunks = new ArrayList<>();
+        int remaining = lastN;
+        File[] segments = listSegments();
+        for (int i = segments.length - 1; i >= 0 && remaining > 0; i--) {
+            List<Message> chunk = readSegmentTail(segments[i], remaining);
+            chunks.add(chunk);
+            remaining -= chunk.size();
+        }
+        List<Message> result = new ArrayList<>(lastN - remaining);
+        for (int i = chunks.size() - 1; i >= 0; i--) {
+            result.addAll(chunks.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 删除该会话的全部段文件和索引文件
+     */
+    void delete() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * 压缩：只保留最近 retainMessages 条消息（未配置时保留全部），合并为一个新的基准段后删除旧段
+     */
+    void compact() throws IOException {
+        File[] segments = listSegments();
+        if (segments.length == 0) {
+            return;
+        }
+        List<Message> retained = readLast(retainMessages > 0 ? retainMessages : Integer.MAX_VALUE);
+        Frames frames = encode(retained);
+        File target = new File(dir, String.format("%08d%s%s",
+                segmentSeq(segments[segments.length - 1]) + 1, BASE_MARKER, SEGMENT_SUFFIX));
+        File tmp = new File(dir, target.getName() + ".tmp");
+        // 基准段落盘后再改名生效，改名之后旧段即被读取忽略
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, ByteBuffer.wrap(frames.bytes()));
+            channel.force(false);
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        appendIndex(indexFile(target), 0, frames.offsets());
+        deleteObsoleteSegments();
+        log.info("Compacted conversation log {}: {} segments -> 1, retained {} messages",
+                dir.getName(), segments.length, retained.size());
+    }
+
+    /**
+     * 读取一个段文件中最后 limit 条记录
+     */
+    private List<Message> readSegmentTail(File segment, int limit) throws IOException {
+        long[] offsets = readIndexTail(segment, limit);
+        if (offsets.length == 0) {
+            return List.of();
+        }
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+            long segmentSize = channel.size();
+            // 1、通过索引定位后，一次读出需要的全部记录
+            long start = offsets[0];
+            ByteBuffer buffer = ByteBuffer.allocate((int) (segmentSize - start));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    throw corrupted(segment, start + buffer.position());
+                }
+            }
+            buffer.flip();
+            // 2、只反序列化这些记录
+            List<Message> messages = new ArrayList<>(offsets.length);
+            for (long offset : offsets) {
+                buffer.position((int) (offset - start));
+                int length = buffer.getInt();
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                if (buffer.getInt() != length) {
+                    throw corrupted(segment, offset);
+                }
+                messages.add(serializer.deserialize(payload));
+            }
+            return messages;
+        }
+    }
+
+    /**
+     * 通过内存映射读取索引中最后 limit 条记录的偏移量；索引与段文件不一致时扫描段文件，
+     * 只读不修复（读取只持有读锁），修复在下次写入前进行
+     */
+    private long[] readIndexTail(File segment, int limit) throws IOException {
+        File index = indexFile(segment);
+        if (!isIndexValid(segment, index, segment.length())) {
+            long[] offsets = scan(segment).offsets();
+            return Arrays.copyOfRange(offsets, Math.max(0, offsets.length - limit), offsets.length);
+        }
+        try (FileChannel channel = FileChannel.open(index.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return new long[0];
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            LongBuffer entries = mapped.asLongBuffer();
+            int count = entries.limit();
+            int n = Math.min(limit, count);
+            long[] offsets = new long[n];
+            entries.position(count - n);
+            entries.get(offsets);
+            return offsets;
+        }
+    }
+
+    /**
+     * 索引有效的条件：最后一条索引指向的记录恰好结束于段文件末尾
+     */
+    private boolean isIndexValid(File segment, File index, long segmentSize) throws IOException {
+        long indexSize = index.exists() ? index.length() : 0;
+        if (indexSize % Long.BYTES != 0) {
+            return false;
+        }
+        if (indexSize == 0) {
+            return segmentSize == 0;
+        }
+        try (FileChannel indexChannel = FileChannel.open(index.toPath(), StandardOpenOption.READ);
+             FileChannel segmentChannel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer last = ByteBuffer.allocate(Long.BYTES);
+            indexChannel.read(last, indexSize - Long.BYTES);
+            long lastOffset = last.flip().getLong();
+            if (lastOffset + FRAME_OVERHEAD > segmentSize) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            segmentChannel.read(header, lastOffset);
+            int length = header.flip().getInt();
+            return lastOffset + FRAME_OVERHEAD + length == segmentSize;
+        }
+    }
+
+    /**
+     * 顺序扫描段文件重建索引，遇到不完整的尾部记录时截断（需持有写锁）
+     */
+    private void rebuildIndex(File segment, File index) throws IOException {
+        Scan scan = scan(segment);
+        if (scan.validEnd() < segment.length()) {
+            log.warn("Truncating torn tail of conversation log segment {} at offset {}", segment, scan.validEnd());
+            try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(scan.validEnd());
+            }
+        }
+        // 先写临时文件再原子替换，读线程不会看到写了一半的索引
+        File tmp = new File(dir, index.getName() + "." + Thread.currentThread().threadId() + ".tmp");
+        tmp.delete();
+        appendIndex(tmp, 0, scan.offsets());
+        Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 顺序扫描段文件，找出所有完整的记录，不修改文件
+     */
+    private Scan scan(File segment) throws IOException {
+        List<Long> offsets = new ArrayList<>();
+        long validEnd = 0;
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+            while (validEnd + FRAME_OVERHEAD <= size) {
+                lengthBuffer.clear();
+                channel.read(lengthBuffer, validEnd);
+                int length = lengthBuffer.flip().getInt();
+                long end = validEnd + FRAME_OVERHEAD + length;
+                if (length < 0 || end > size) {
+                    break;
+                }
+                lengthBuffer.clear();
+                channel.read(lengthBuffer, end - Integer.BYTES);
+                if (lengthBuffer.flip().getInt() != length) {
+                    break;
+                }
+                offsets.add(validEnd);
+                validEnd = end;
+            }
+        }
+        return new Scan(offsets.stream().mapToLong(Long::longValue).toArray(), validEnd);
+    }
+
+    private void appendIndex(File index, long base, long[] offsets) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(offsets.length * Long.BYTES);
+        for (long offset : offsets) {
+            buffer.putLong(base + offset);
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(index.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            writeFully(channel, buffer);
+        }
+    }
+
+    private Frames encode(List<Message> messages) {
+        List<byte[]> payloads = new ArrayList<>(messages.size());
+        int total = 0;
+        for (Message message : messages) {
+            byte[] payload = serializer.serialize(message);
+            payloads.add(payload);
+            total += payload.length + FRAME_OVERHEAD;
+        }
+        // 长度字段统一使用大端序
+        ByteBuffer frames = ByteBuffer.allocate(total);
+        long[] offsets = new long[payloads.size()];
+        for (int i = 0; i < payloads.size(); i++) {
+            byte[] payload = payloads.get(i);
+            offsets[i] = frames.position();
+            frames.putInt(payload.length).put(payload).putInt(payload.length);
+        }
+        return new Frames(frames.array(), offsets);
+    }
+
+    private void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private IOException corrupted(File segment, long pos) {
+        return new IOException("Corrupted conversation log segment " + segment + " at offset " + pos);
+    }
+
+    private File activeSegment() {
+        File[] segments = listSegments();
+        return segments.length == 0 ? segmentFile(1) : segments[segments.length - 1];
+    }
+
+    /**
+     * 有效的段文件：从最新的基准段开始
+     */
+    private File[] listSegments() {
+        File[] segments = allSegments();
+        for (int i = segments.length - 1; i > 0; i--) {
+            if (isBase(segments[i])) {
+                return Arrays.copyOfRange(segments, i, segments.length);
+            }
+        }
+        return segments;
+    }
+
+    private File[] allSegments() {
+        File[] segments = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    /**
+     * 删除已被基准段取代的段文件和索引（需持有写锁）：压缩后正常删除，或者压缩在删除旧段前中断时补删
+     */
+    private void deleteObsoleteSegments() {
+        File[] segments = allSegments();
+        File[] live = listSegments();
+        for (int i = 0; i < segments.length - live.length; i++) {
+            segments[i].delete();
+            indexFile(segments[i]).delete();
+        }
+    }
+
+    private boolean isBase(File segment) {
+        return segment.getName().endsWith(BASE_MARKER + SEGMENT_SUFFIX);
+    }
+
+    private File segmentFile(long seq) {
+        return new File(dir, String.format("%08d%s", seq, SEGMENT_SUFFIX));
+    }
+
+    private File indexFile(File segment) {
+        String name = segment.getName();
+        return new File(dir, name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private long segmentSeq(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+}
@@ -1,36 +1,127 @@
 package com.yam.myaiagent.chatmemory;
 
-import com.esotericsoftware.kryo.Kryo;
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.Output;
-import org.objenesis.strategy.StdInstantiatorStrategy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 
 /**
  * 基于文件持久化的对话记忆
+ * <p>
+ * 每个会话使用追加写的分段日志保存（见 {@link ConversationLog}），
+ * add 只写入新增消息，get 通过偏移量索引直接定位并只反序列化最近 N 条消息。
+ * <p>
+ * 并发控制：按会话 ID 哈希到固定数量的分段读写锁上，同一会话的读写互斥、不同会话基本互不影响。
+ * 同一会话短时间内的多次 add 会先合并到待写批次中，由第一个拿到锁的线程一次性写入并落盘（组提交），
+ * 其他线程只需等待该批次完成。批次写入后、通知等待的线程之前调用 {@link AppendListener}，
+ * 上层缓存可以据此按写入顺序更新，不需要在 add 外面再加锁（否则会把组提交退化为逐条写入）。
+ * <p>
+ * 磁盘占用：默认保留每个会话的全部历史，也不删除会话。面向公开接口、会话 ID 由客户端决定时，
+ * 应当配置 retainMessages（限制单个会话的大小）和 idleRetention（超过这段时间没有新消息的会话整体删除，
+ * 写入时每 10 分钟最多检查一次），否则磁盘占用随会话数无限增长。
  */
+@Slf4j
 public class FileBasedChatMemory implements ChatMemory {
 
+    // 单个段文件的最大字节数，超过后滚动到新段
+    private static final long DEFAULT_SEGMENT_BYTES = 1024 * 1024;
+    // 段数量超过该值时触发压缩
+    private static final int DEFAULT_MAX_SEGMENTS = 8;
+    // 默认不压缩，保留会话的全部历史
+    private static final int DEFAULT_RETAIN_MESSAGES = 0;
+    // 分段锁数量
+    private static final int LOCK_STRIPES = 64;
+    // 清理过期会话的最小间隔
+    private static final long PURGE_INTERVAL_MILLIS = Duration.ofMinutes(10).toMillis();
+
     private final String BASE_DIR;
-    private static final Kryo kryo = new Kryo();
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final int retainMessages;
+    // 会话超过这段时间没有新消息后删除，为 null 时保留全部会话
+    private final Duration idleRetention;
+    // 上次清理过期会话的时间
+    private final AtomicLong lastPurge = new AtomicLong();
+    // 线程安全的序列化器，所有会话共享
+    private static final MessageSerializer serializer = new MessageSerializer();
+
+    private final ReadWriteLock[] locks = new ReadWriteLock[LOCK_STRIPES];
+
+    // 每个会话尚未写入磁盘的消息批次
+    private final ConcurrentHashMap<String, PendingBatch> pendingBatches = new ConcurrentHashMap<>();
+
+    private volatile AppendListener appendListener;
+
+    /**
+     * 消息写入磁盘后的回调：持有该会话的写锁，按写入顺序调用，与 {@link #read} 互斥
+     */
+    @FunctionalInterface
+    public interface AppendListener {
+        void appended(String conversationId, List<Message> messages);
+    }
 
-    static {
-        kryo.setRegistrationRequired(false);
-        // 设置实例化策略
-        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+    /**
+     * 待写入的消息批次，写入完成后通过 done 通知所有提交过消息的线程
+     */
+    private static class PendingBatch {
+        private final List<Message> messages = new ArrayList<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
     }
 
     // 构造对象时，指定文件保存目录
     public FileBasedChatMemory(String dir) {
+        this(dir, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SEGMENTS, DEFAULT_RETAIN_MESSAGES);
+    }
+
+    /**
+     * @param dir            文件保存目录
+     * @param segmentBytes   单个段文件的最大字节数
+     * @param maxSegments    段数量超过该值时压缩，只在配置了 retainMessages 时生效
+     * @param retainMessages 压缩时保留的最近消息条数，更早的消息会被永久删除；小于等于 0 时保留全部历史
+     */
+    public FileBasedChatMemory(String dir, long segmentBytes, int maxSegments, int retainMessages) {
+        this(dir, segmentBytes, maxSegments, retainMessages, null);
+    }
+
+    /**
+     * @param dir            文件保存目录
+     * @param retainMessages 每个会话最多保留的最近消息条数（段数量超过默认上限时压缩）
+     * @param idleRetention  会话超过这段时间没有新消息后删除，为 null 时保留全部会话
+     */
+    public FileBasedChatMemory(String dir, int retainMessages, Duration idleRetention) {
+        this(dir, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SEGMENTS, retainMessages, idleRetention);
+    }
+
+    /**
+     * @param dir            文件保存目录
+     * @param segmentBytes   单个段文件的最大字节数
+     * @param maxSegments    段数量超过该值时压缩，只在配置了 retainMessages 时生效
+     * @param retainMessages 压缩时保留的最近消息条数，更早的消息会被永久删除；小于等于 0 时保留全部历史
+     * @param idleRetention  会话超过这段时间没有新消息后删除，为 null 时保留全部会话
+     */
+    public FileBasedChatMemory(String dir, long segmentBytes, int maxSegments, int retainMessages,
+                               Duration idleRetention) {
         this.BASE_DIR = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.retainMessages = retainMessages;
+        this.idleRetention = idleRetention;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
         File baseDir = new File(dir);
         if (!baseDir.exists()) {
             baseDir.mkdirs();
@@ -39,50 +130,179 @@ public class FileBasedChatMemory implements ChatMemory {
 
     @Override
     public void add(String conversationId, List<Message> messages) {
-        List<Message> conversationMessages = getOrCreateConversation(conversationId);
-        conversationMessages.addAll(messages);
-        saveConversation(conversationId, conversationMessages);
+        if (messages.isEmpty()) {
+            return;
+        }
+        // 1、把消息合并到该会话当前的待写批次
+        PendingBatch batch = pendingBatches.compute(conversationId, (id, pending) -> {
+            PendingBatch target = pending != null ? pending : new PendingBatch();
+            target.messages.addAll(messages);
+            return target;
+        });
+        // 2、拿到锁后取走当前批次并写入；如果自己的批次已被其他线程写完，这里取到的是更新的批次或 null
+        ReadWriteLock lock = getLock(conversationId);
+        lock.writeLock().lock();
+        try {
+            PendingBatch toFlush = pendingBatches.remove(conversationId);
+            if (toFlush != null) {
+                flush(conversationId, toFlush);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // 3、等待自己的批次写入完成
+        try {
+            batch.done.join();
+        } catch (CompletionException e) {
+            log.error("Failed to append messages to conversation {}", conversationId, e.getCause());
+        }
+        long now = System.currentTimeMillis();
+        long last = lastPurge.get();
+        if (idleRetention != null && now - last >= PURGE_INTERVAL_MILLIS && lastPurge.compareAndSet(last, now)) {
+            purgeExpired();
+        }
+    }
+
+    /**
+     * 删除超过 idleRetention 没有新消息的会话
+     *
+     * @return 删除的会话数
+     */
+    public int purgeExpired() {
+        File[] conversationDirs = new File(BASE_DIR).listFiles(File::isDirectory);
+        if (idleRetention == null || conversationDirs == null) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - idleRetention.toMillis();
+        int removed = 0;
+        for (File conversationDir : conversationDirs) {
+            String conversationId = conversationDir.getName();
+            ReadWriteLock lock = getLock(conversationId);
+            lock.writeLock().lock();
+            try {
+                ConversationLog conversationLog = getConversationLog(conversationId);
+                // 持有写锁时检查，检查和删除之间不会有新消息写入
+                if (conversationLog.lastModified() < cutoff) {
+                    conversationLog.delete();
+                    removed++;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        if (removed > 0) {
+            log.info("Removed {} conversations idle for more than {} from {}", removed, idleRetention, BASE_DIR);
+        }
+        return removed;
+    }
+
+    public void setAppendListener(AppendListener appendListener) {
+        this.appendListener = appendListener;
     }
 
     @Override
     public List<Message> get(String conversationId, int lastN) {
-        List<Message> allMessages = getOrCreateConversation(conversationId);
-        return allMessages.stream()
-                .skip(Math.max(0, allMessages.size() - lastN))
-                .toList();
+        if (lastN <= 0) {
+            return List.of();
+        }
+        List<Message> messages = read(conversationId, lastN, Function.identity());
+        return messages != null ? messages : new ArrayList<>();
+    }
+
+    /**
+     * 读取最近 lastN 条消息，并在持有该会话读锁时交给 mapper 处理，期间不会有新的批次写入
+     *
+     * @return mapper 的结果，读取失败时返回 null
+     */
+    public <T> T read(String conversationId, int lastN, Function<List<Message>, T> mapper) {
+        ReadWriteLock lock = getLock(conversationId);
+        try {
+            if (getLegacyConversationFile(conversationId).exists()) {
+                lock.writeLock().lock();
+                try {
+                    migrateLegacyConversation(conversationId);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            lock.readLock().lock();
+            try {
+                return mapper.apply(getConversationLog(conversationId).readLast(lastN));
+            } finally {
+                lock.readLock().unlock();
+            }
+        } catch (IOException e) {
+            log.error("Failed to read conversation {}", conversationId, e);
+            return null;
+        }
     }
 
     @Override
     public void clear(String conversationId) {
-        File file = getConversationFile(conversationId);
-        if (file.exists()) {
-            file.delete();
+        ReadWriteLock lock = getLock(conversationId);
+        lock.writeLock().lock();
+        try {
+            getConversationLog(conversationId).delete();
+            File legacyFile = getLegacyConversationFile(conversationId);
+            if (legacyFile.exists()) {
+                legacyFile.delete();
+            }
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
-    private List<Message> getOrCreateConversation(String conversationId) {
-        File file = getConversationFile(conversationId);
-        List<Message> messages = new ArrayList<>();
-        if (file.exists()) {
-            try (Input input = new Input(new FileInputStream(file))) {
-                messages = kryo.readObject(input, ArrayList.class);
-            } catch (IOException e) {
-                e.printStackTrace();
+    /**
+     * 写入一个批次（需持有该会话的写锁）
+     */
+    private void flush(String conversationId, PendingBatch batch) {
+        try {
+            migrateLegacyConversation(conversationId);
+            getConversationLog(conversationId).append(batch.messages);
+        } catch (IOException | RuntimeException e) {
+            batch.done.completeExceptionally(e);
+            return;
+        }
+        // 在唤醒等待的线程之前回调，add 返回后上层缓存已经包含这些消息
+        AppendListener listener = appendListener;
+        if (listener != null) {
+            try {
+                listener.appended(conversationId, batch.messages);
+            } catch (RuntimeException e) {
+                log.error("Append listener failed for conversation {}", conversationId, e);
             }
         }
-        return messages;
+        batch.done.complete(null);
     }
 
-    private void saveConversation(String conversationId, List<Message> messages) {
-        File file = getConversationFile(conversationId);
-        try (Output output = new Output(new FileOutputStream(file))) {
-            kryo.writeObject(output, messages);
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * 如果存在旧格式（整个列表序列化为一个 .kryo 文件）的数据则先迁移到日志中（需持有该会话的写锁）
+     */
+    private void migrateLegacyConversation(String conversationId) throws IOException {
+        ConversationLog conversationLog = getConversationLog(conversationId);
+        File legacyFile = getLegacyConversationFile(conversationId);
+        if (legacyFile.exists() && !conversationLog.exists()) {
+            List<Message> messages;
+            // 删除前先关闭文件，否则在 Windows 上无法删除
+            try (FileInputStream inputStream = new FileInputStream(legacyFile)) {
+                messages = serializer.read(inputStream, ArrayList.class);
+            }
+            conversationLog.append(messages);
+            log.info("Migrated legacy conversation file {} ({} messages)", legacyFile.getName(), messages.size());
         }
+        legacyFile.delete();
+    }
+
+    private ReadWriteLock getLock(String conversationId) {
+        return locks[(conversationId.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
+    private ConversationLog getConversationLog(String conversationId) {
+        return new ConversationLog(new File(BASE_DIR, conversationId), serializer,
+                segmentBytes, maxSegments, retainMessages);
     }
 
-    private File getConversationFile(String conversationId) {
+    private File getLegacyConversationFile(String conversationId) {
         return new File(BASE_DIR, conversationId + ".kryo");
     }
 }
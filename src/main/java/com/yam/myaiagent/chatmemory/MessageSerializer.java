@@ -0,0 +1,118 @@
+package com.yam.myaiagent.chatmemory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.Pool;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * 线程安全的消息序列化器
+ * <p>
+ * Kryo 实例不是线程安全的，这里通过 Kryo 自带的 {@link Pool} 复用 Kryo 及其 Output、Input 缓冲区，
+ * 每次序列化时借出、用完归还，避免并发会话共用同一个实例导致数据错乱。
+ */
+public class MessageSerializer {
+
+    // 池中最多缓存的实例数，超出部分用完后直接丢弃
+    private static final int POOL_SIZE = 64;
+
+    // Output 初始缓冲区大小，不够时自动扩容
+    private static final int OUTPUT_BUFFER_SIZE = 4096;
+
+    // Output 扩容超过该大小时，归还前换回初始缓冲区，避免少数超长消息长期占用内存
+    private static final int MAX_POOLED_OUTPUT_SIZE = 1024 * 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Pool<KryoContext> pool = new Pool<>(true, false, POOL_SIZE) {
+        @Override
+        protected KryoContext create() {
+            return new KryoContext(createKryo(), new Output(OUTPUT_BUFFER_SIZE, -1), new Input());
+        }
+    };
+
+    /**
+     * 一次借出的 Kryo 及其配套的读写缓冲区，整体借出、整体归还，减少池的争用
+     */
+    private record KryoContext(Kryo kryo, Output output, Input input) {
+    }
+
+    /**
+     * 创建预注册了 Spring AI 消息类型的 Kryo 实例
+     * 使用固定的注册 ID，保证不同实例、不同进程写出的数据格式一致
+     */
+    static Kryo createKryo() {
+        Kryo kryo = new Kryo();
+        kryo.setRegistrationRequired(false);
+        // 设置实例化策略
+        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+        kryo.register(ArrayList.class, 100);
+        kryo.register(HashMap.class, 101);
+        kryo.register(LinkedHashMap.class, 102);
+        kryo.register(MessageType.class, 103);
+        kryo.register(UserMessage.class, 104);
+        kryo.register(AssistantMessage.class, 105);
+        kryo.register(AssistantMessage.ToolCall.class, 106);
+        kryo.register(SystemMessage.class, 107);
+        kryo.register(ToolResponseMessage.class, 108);
+        kryo.register(ToolResponseMessage.ToolResponse.class, 109);
+        return kryo;
+    }
+
+    /**
+     * 序列化单条消息
+     */
+    public byte[] serialize(Message message) {
+        KryoContext context = pool.obtain();
+        Output output = context.output();
+        try {
+            output.reset();
+            context.kryo().writeClassAndObject(output, message);
+            return output.toBytes();
+        } finally {
+            if (output.getBuffer().length > MAX_POOLED_OUTPUT_SIZE) {
+                output.setBuffer(new byte[OUTPUT_BUFFER_SIZE], -1);
+            }
+            pool.free(context);
+        }
+    }
+
+    /**
+     * 反序列化单条消息
+     */
+    public Message deserialize(byte[] bytes) {
+        KryoContext context = pool.obtain();
+        Input input = context.input();
+        try {
+            input.setBuffer(bytes);
+            return (Message) context.kryo().readClassAndObject(input);
+        } finally {
+            input.setBuffer(EMPTY);
+            pool.free(context);
+        }
+    }
+
+    /**
+     * 从输入流中读取指定类型的对象（用于读取旧格式的会话文件）
+     */
+    public <T> T read(InputStream inputStream, Class<T> type) {
+        KryoContext context = pool.obtain();
+        try (Input input = new Input(inputStream)) {
+            return context.kryo().readObject(input, type);
+        } finally {
+            pool.free(context);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.yam.myaiagent.chatmemory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分层对话记忆：内存热层 + 本地磁盘层
+ * <p>
+ * 所有消息直接写入磁盘层（{@link FileBasedChatMemory}）保证持久化，
+ * 活跃会话的最近 hotMessages 条消息同时保存在内存中，读取时优先命中内存。
+ * 热层按容量和空闲时间淘汰会话，被淘汰或从未加载过的会话在 get 时再从磁盘懒加载回内存，
+ * 因此无论有多少个 chatId，堆内存占用都有上限。
+ * <p>
+ * add 不加锁，直接交给磁盘层的组提交；热层在磁盘层写入批次后的回调中按写入顺序更新，
+ * 从磁盘加载热层时持有磁盘层的读锁，两者互斥，加载的会话不会遗漏或重复并发写入的消息。
+ */
+public class TieredChatMemory implements ChatMemory {
+
+    // 默认热层最多保留的会话数
+    private static final long DEFAULT_MAX_HOT_CONVERSATIONS = 10_000;
+    // 默认每个会话在热层保留的消息数
+    private static final int DEFAULT_HOT_MESSAGES = 20;
+    // 默认会话空闲多久后从热层淘汰
+    private static final Duration DEFAULT_HOT_EXPIRE_AFTER_ACCESS = Duration.ofMinutes(30);
+    // 分段锁数量
+    private static final int LOCK_STRIPES = 64;
+
+    private final FileBasedChatMemory diskTier;
+
+    private final Cache<String, HotConversation> hotTier;
+
+    private final int hotMessages;
+
+    // 同一会话只由一个线程从磁盘加载，加载和清空互斥
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * 热层中的会话：最近的若干条消息
+     */
+    private static class HotConversation {
+        private final Deque<Message> messages = new ArrayDeque<>();
+        // 是否包含了该会话的全部历史（会话较短时为 true，此时任何 lastN 都能直接从内存返回）
+        private boolean complete;
+    }
+
+    public TieredChatMemory(String diskDir) {
+        this(new FileBasedChatMemory(diskDir), DEFAULT_MAX_HOT_CONVERSATIONS, DEFAULT_HOT_MESSAGES,
+                DEFAULT_HOT_EXPIRE_AFTER_ACCESS);
+    }
+
+    /**
+     * 限制磁盘占用的分层记忆，见 {@link FileBasedChatMemory#FileBasedChatMemory(String, int, Duration)}
+     *
+     * @param diskDir        文件保存目录
+     * @param retainMessages 每个会话在磁盘上最多保留的最近消息条数
+     * @param idleRetention  会话超过这段时间没有新消息后从磁盘删除，应远大于热层的空闲过期时间
+     */
+    public TieredChatMemory(String diskDir, int retainMessages, Duration idleRetention) {
+        this(new FileBasedChatMemory(diskDir, retainMessages, idleRetention), DEFAULT_MAX_HOT_CONVERSATIONS,
+                DEFAULT_HOT_MESSAGES, DEFAULT_HOT_EXPIRE_AFTER_ACCESS);
+    }
+
+    public TieredChatMemory(FileBasedChatMemory diskTier, long maxHotConversations, int hotMessages,
+                            Duration hotExpireAfterAccess) {
+        this.diskTier = diskTier;
+        this.hotMessages = hotMessages;
+        this.hotTier = Caffeine.newBuilder()
+                .maximumSize(maxHotConversations)
+                .expireAfterAccess(hotExpireAfterAccess)
+                .recordStats()
+                .build();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        diskTier.setAppendListener(this::appended);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        // 热层由 appended 回调更新
+        diskTier.add(conversationId, messages);
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        if (lastN <= 0) {
+            return List.of();
+        }
+        // 1、优先从热层读取
+        List<Message> hotResult = readHot(hotTier.asMap().get(conversationId), lastN);
+        if (hotResult != null) {
+            hitCount.increment();
+            return hotResult;
+        }
+        missCount.increment();
+        // 2、超出热层容量的请求直接读磁盘，不污染热层
+        if (lastN > hotMessages) {
+            return diskTier.get(conversationId, lastN);
+        }
+        // 3、从磁盘加载到热层
+        ReentrantLock lock = getLock(conversationId);
+        lock.lock();
+        try {
+            HotConversation conversation = hotTier.asMap().get(conversationId);
+            if (conversation == null) {
+                // 在磁盘层的读锁内放入热层，加载期间写入的批次会在之后回调到这个会话
+                conversation = diskTier.read(conversationId, hotMessages, loaded -> {
+                    HotConversation hot = new HotConversation();
+                    hot.messages.addAll(loaded);
+                    hot.complete = loaded.size() < hotMessages;
+                    hotTier.put(conversationId, hot);
+                    return hot;
+                });
+            }
+            List<Message> result = readHot(conversation, lastN);
+            return result != null ? result : diskTier.get(conversationId, lastN);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ReentrantLock lock = getLock(conversationId);
+        lock.lock();
+        try {
+            hotTier.invalidate(conversationId);
+            diskTier.clear(conversationId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取热层的命中、未命中、淘汰等统计信息
+     */
+    public ChatMemoryStats getStats() {
+        hotTier.cleanUp();
+        long hits = hitCount.sum();
+        long misses = missCount.sum();
+        double hitRate = hits + misses == 0 ? 1.0 : (double) hits / (hits + misses);
+        return new ChatMemoryStats(hotTier.estimatedSize(), hits, misses, hitRate,
+                hotTier.stats().evictionCount());
+    }
+
+    /**
+     * 磁盘层写入一个批次后的回调（持有磁盘层该会话的写锁）：只更新已在热层中的会话，不在热层的会话等下次读取时再加载
+     */
+    private void appended(String conversationId, List<Message> messages) {
+        HotConversation conversation = hotTier.asMap().get(conversationId);
+        if (conversation != null) {
+            synchronized (conversation) {
+                conversation.messages.addAll(messages);
+                trim(conversation);
+            }
+        }
+    }
+
+    /**
+     * 从热层会话中读取最近 lastN 条消息，热层数据不足以回答时返回 null
+     */
+    private List<Message> readHot(HotConversation conversation, int lastN) {
+        if (conversation == null) {
+            return null;
+        }
+        synchronized (conversation) {
+            int size = conversation.messages.size();
+            if (size < lastN && !conversation.complete) {
+                return null;
+            }
+            List<Message> all = new ArrayList<>(conversation.messages);
+            return all.subList(Math.max(0, size - lastN), size);
+        }
+    }
+
+    private void trim(HotConversation conversation) {
+        while (conversation.messages.size() > hotMessages) {
+            conversation.messages.pollFirst();
+            conversation.complete = false;
+        }
+    }
+
+    private ReentrantLock getLock(String conversationId) {
+        return locks[(conversationId.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+}
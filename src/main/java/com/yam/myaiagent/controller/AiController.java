@@ -1,11 +1,12 @@
 package com.yam.myaiagent.controller;
 
+import com.yam.myaiagent.agent.MultiAgentOrchestrator;
 import com.yam.myaiagent.agent.MyManus;
+import com.yam.myaiagent.agent.ReactiveToolCallAgent;
+import com.yam.myaiagent.app.JavaInterviewApp;
 import com.yam.myaiagent.app.LoveApp;
 import com.yam.myaiagent.app.UIApp;
 import jakarta.annotation.Resource;
-import org.springframework.ai.chat.model.ChatModel;
-import org.springframework.ai.tool.ToolCallback;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -37,11 +38,9 @@ public class AiController {
     private JavaInterviewApp javaInterviewApp;
 
 
+    // 只负责提供配置，每次请求基于它创建独立的会话
     @Resource
-    private ToolCallback[] allTools;
-
-    @Resource
-    private ChatModel dashscopeChatModel;
+    private MyManus myManus;
 
 
     /**
@@ -116,8 +115,37 @@ public class AiController {
      */
     @GetMapping("/manus/chat")
     public SseEmitter doChatWithManus(String message) {
-        MyManus yuManus = new MyManus(allTools, dashscopeChatModel);
-        return yuManus.runStream(message);
+        return myManus.newSession().runStream(message);
+    }
+
+    /**
+     * 从检查点恢复一次中断的 Manus 运行（流式）
+     * @param runId 运行 ID，由 /manus/chat 的 run 事件返回
+     * @return
+     */
+    @GetMapping("/manus/resume")
+    public SseEmitter resumeManus(String runId) {
+        return myManus.newSession().resumeStream(runId);
+    }
+
+    /**
+     * 流式调用 Manus 超级智能体（规划-并行执行版本，先拆分子任务，互不依赖的子任务并行执行后合并结果）
+     * @param message
+     * @return
+     */
+    @GetMapping("/manus/plan")
+    public SseEmitter doChatWithManusPlan(String message) {
+        return new MultiAgentOrchestrator(myManus).executeStream(message);
+    }
+
+    /**
+     * 流式调用 Manus 超级智能体（响应式版本，客户端断开连接时自动取消运行）
+     * @param message
+     * @return
+     */
+    @GetMapping(value = "/manus/chat/reactive", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> doChatWithManusReactive(String message) {
+        return new ReactiveToolCallAgent(myManus).runReactive(message);
     }
 
     // ==================== Java面试大师相关接口 ====================
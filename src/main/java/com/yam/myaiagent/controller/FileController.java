@@ -1,23 +1,51 @@
 package com.yam.myaiagent.controller;
 
 import com.yam.myaiagent.service.FileService;
+import com.yam.myaiagent.storage.FileVariant;
+import com.yam.myaiagent.storage.MarkdownCatalog;
+import com.yam.myaiagent.storage.MarkdownFilePage;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/files")
 public class FileController {
 
+    // 每页最多返回的文件数
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private static final MediaType MARKDOWN = new MediaType("text", "markdown", StandardCharsets.UTF_8);
+
+    // Tomcat 的 sendfile 请求属性
+    private static final String SENDFILE_SUPPORTED_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
     @Autowired
     private FileService fileService;
 
@@ -30,22 +58,116 @@ public class FileController {
         return ResponseEntity.ok(fileList);
     }
 
+    /**
+     * 分页获取Markdown文件列表（包含大小、修改时间和摘要）
+     */
+    @GetMapping("/markdown/page")
+    public ResponseEntity<MarkdownFilePage> listMarkdownFilePage(
+            @RequestParam(defaultValue = "NAME") MarkdownCatalog.Sort sort,
+            @RequestParam(required = false) String prefix,
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(fileService.listMarkdownFiles(sort, prefix, keyword, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * 以流的方式下载指定的Markdown文件
+     * <ul>
+     *     <li>条件请求：ETag（内容摘要）和 Last-Modified 与 If-None-Match、If-Modified-Since 匹配时返回 304</li>
+     *     <li>范围请求：支持 Range（If-Range 不匹配时返回完整文件），由 Spring 按 ResourceRegion 输出 206</li>
+     *     <li>压缩：按 Accept-Encoding 发送预压缩的 .md.br 或 .md.gz 文件</li>
+     *     <li>零拷贝：完整文件在 Tomcat 支持 sendfile 时由容器直接从文件发送到套接字</li>
+     * </ul>
      */
     @GetMapping("/markdown/{filename:.+}")
-    public ResponseEntity<Resource> downloadMarkdownFile(@PathVariable String filename) {
-        Resource resource = fileService.loadFileAsResource(filename);
-        
+    public ResponseEntity<Resource> downloadMarkdownFile(@PathVariable String filename,
+                                                         HttpServletRequest request,
+                                                         HttpServletResponse response) throws IOException {
+        Optional<FileVariant> found;
         try {
-            String contentType = "text/markdown";
-            
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
-                    .body(resource);
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
+            found = fileService.getMarkdownFileVariant(filename, request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        FileVariant variant = found.get();
+        // 304 响应同样需要 Vary，缓存才能区分不同编码的版本
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (new ServletWebRequest(request, response).checkNotModified(variant.etag(), variant.lastModified())) {
+            return null;
         }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MARKDOWN);
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(filename, StandardCharsets.UTF_8)
+                .build());
+        headers.setETag(variant.etag());
+        headers.setLastModified(variant.lastModified());
+        if (variant.contentEncoding() != null) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, variant.contentEncoding());
+        }
+
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && ifRangeMatches(request.getHeader(HttpHeaders.IF_RANGE), variant)) {
+            return ResponseEntity.ok().headers(headers).body(new FileSystemResource(variant.path()));
+        }
+        if (HttpMethod.GET.matches(request.getMethod())
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTRIBUTE))) {
+            sendFile(request, response, headers, variant);
+            return null;
+        }
+        // 有 Range 但 If-Range 不匹配时必须返回完整文件，InputStreamResource 不会被按范围输出
+        Resource body = range == null
+                ? new FileSystemResource(variant.path())
+                : new InputStreamResource(Files.newInputStream(variant.path()));
+        headers.setContentLength(variant.length());
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+
+    /**
+     * If-Range 为空，或者与当前版本的 ETag / 修改时间（精确到秒）一致
+     */
+    private static boolean ifRangeMatches(String ifRange, FileVariant variant) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(variant.etag());
+        }
+        try {
+            long date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return date / 1000 == variant.lastModified() / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 交给 Tomcat 用 sendfile 发送文件，响应体不经过应用的缓冲区
+     */
+    private static void sendFile(HttpServletRequest request, HttpServletResponse response, HttpHeaders headers,
+                                 FileVariant variant) {
+        response.setStatus(HttpServletResponse.SC_OK);
+        // checkNotModified 已经写入过 ETag 和 Last-Modified，这里覆盖而不是追加
+        headers.forEach((name, values) -> {
+            response.setHeader(name, values.get(0));
+            values.stream().skip(1).forEach(value -> response.addHeader(name, value));
+        });
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentLengthLong(variant.length());
+        request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, variant.path().toAbsolutePath().toString());
+        request.setAttribute(SENDFILE_START_ATTRIBUTE, 0L);
+        request.setAttribute(SENDFILE_END_ATTRIBUTE, variant.length());
     }
-}
\ No newline at end of file
+}
@@ -1,16 +1,68 @@
 package com.yam.myaiagent.controller;
 
+import com.yam.myaiagent.agent.AgentExecutionEngine;
+import com.yam.myaiagent.agent.model.AgentEngineStats;
+import com.yam.myaiagent.app.JavaInterviewApp;
+import com.yam.myaiagent.app.LoveApp;
+import com.yam.myaiagent.app.UIApp;
+import com.yam.myaiagent.chatmemory.ChatMemoryStats;
+import com.yam.myaiagent.tools.ToolCacheStats;
+import com.yam.myaiagent.tools.ToolResultCache;
+import jakarta.annotation.Resource;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * 健康检查控制器
  */
 @RestController
 public class HealthController {
 
+    @Resource
+    private LoveApp loveApp;
+
+    @Resource
+    private UIApp uiApp;
+
+    @Resource
+    private JavaInterviewApp javaInterviewApp;
+
+    @Resource
+    private ToolResultCache toolResultCache;
+
     @GetMapping("/health")
     public String health() {
         return "ok";
     }
+
+    /**
+     * 各应用对话记忆的命中、淘汰统计
+     */
+    @GetMapping("/health/chat-memory")
+    public Map<String, ChatMemoryStats> chatMemoryStats() {
+        Map<String, ChatMemoryStats> stats = new LinkedHashMap<>();
+        stats.put("loveApp", loveApp.getChatMemoryStats());
+        stats.put("uiApp", uiApp.getChatMemoryStats());
+        stats.put("javaInterviewApp", javaInterviewApp.getChatMemoryStats());
+        return stats;
+    }
+
+    /**
+     * 智能体执行引擎的执行中、排队中任务数等统计
+     */
+    @GetMapping("/health/agent-engine")
+    public AgentEngineStats agentEngineStats() {
+        return AgentExecutionEngine.shared().getStats();
+    }
+
+    /**
+     * 各工具结果缓存的命中、合并、未命中统计
+     */
+    @GetMapping("/health/tool-cache")
+    public Map<String, ToolCacheStats> toolCacheStats() {
+        return toolResultCache.getStats();
+    }
 }
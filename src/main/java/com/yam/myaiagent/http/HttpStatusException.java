@@ -0,0 +1,19 @@
+package com.yam.myaiagent.http;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * 响应状态码不是 2xx
+ */
+@Getter
+public class HttpStatusException extends IOException {
+
+    private final int statusCode;
+
+    public HttpStatusException(int statusCode, String url) {
+        super("HTTP " + statusCode + " from " + url);
+        this.statusCode = statusCode;
+    }
+}
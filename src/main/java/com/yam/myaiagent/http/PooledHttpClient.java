@@ -0,0 +1,237 @@
+package com.yam.myaiagent.http;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网络工具共用的 HTTP 客户端
+ * <p>
+ * 基于 JDK HttpClient，所有工具共享同一个实例，从而复用连接池和 keep-alive 连接（支持 HTTP/2 的站点会协商使用 HTTP/2）：
+ * <ul>
+ *     <li>超时：建立连接超时和单次请求超时（从发出请求到收到响应头）</li>
+ *     <li>单主机并发限制：同一个主机同时进行的请求数超过上限时排队，排队超时则失败，避免拖垮对方或被限流</li>
+ *     <li>重试：只重试幂等的 GET 请求，网络异常、超时和 429/502/503/504 响应会按指数退避（全抖动）重试，
+ *     响应带 Retry-After 时按其等待（不超过退避上限）</li>
+ * </ul>
+ * 以流的形式读取响应体时，单主机并发限制只覆盖到收到响应头为止。
+ */
+@Slf4j
+public class PooledHttpClient {
+
+    private static final PooledHttpClient SHARED = new PooledHttpClient(Duration.ofSeconds(10),
+            Duration.ofSeconds(30), 16, 3, Duration.ofMillis(200), Duration.ofSeconds(5));
+
+    // 可以重试的响应状态码
+    private static final Set<Integer> RETRYABLE_STATUS = Set.of(429, 502, 503, 504);
+
+    private static final String USER_AGENT = "Mozilla/5.0 (compatible; MyAiAgent/1.0)";
+
+    private final HttpClient httpClient;
+
+    private final Duration requestTimeout;
+
+    private final int maxConcurrentPerHost;
+
+    private final int maxAttempts;
+
+    private final Duration backoffBase;
+
+    private final Duration backoffMax;
+
+    // 主机 -> 并发许可
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    /**
+     * @param connectTimeout       建立连接超时
+     * @param requestTimeout       单次请求超时（等待响应头），同时也是等待单主机并发许可的超时
+     * @param maxConcurrentPerHost 单个主机同时进行的最大请求数
+     * @param maxAttempts          最多尝试次数（包括第一次）
+     * @param backoffBase          第一次重试的退避时间上限，之后每次翻倍
+     * @param backoffMax           退避时间上限
+     */
+    public PooledHttpClient(Duration connectTimeout, Duration requestTimeout, int maxConcurrentPerHost,
+                            int maxAttempts, Duration backoffBase, Duration backoffMax) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-client-", 0).factory()))
+                .build();
+        this.requestTimeout = requestTimeout;
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+        this.maxAttempts = maxAttempts;
+        this.backoffBase = backoffBase;
+        this.backoffMax = backoffMax;
+    }
+
+    /**
+     * 获取所有工具共享的客户端
+     */
+    public static PooledHttpClient shared() {
+        return SHARED;
+    }
+
+    /**
+     * GET 请求，以字符串返回响应体
+     *
+     * @param url     请求地址
+     * @param headers 请求头
+     * @return 响应（任意状态码）
+     */
+    public HttpResponse<String> get(String url, Map<String, String> headers) throws IOException {
+        return send(newGet(url, headers), HttpResponse.BodyHandlers.ofString());
+    }
+
+    public HttpResponse<String> get(String url) throws IOException {
+        return get(url, Map.of());
+    }
+
+    /**
+     * GET 请求，返回成功（2xx）响应的响应体，其余状态码抛出 {@link HttpStatusException}
+     */
+    public String getString(String url, Map<String, String> headers) throws IOException {
+        HttpResponse<String> response = get(url, headers);
+        if (response.statusCode() / 100 != 2) {
+            throw new HttpStatusException(response.statusCode(), url);
+        }
+        return response.body();
+    }
+
+    public String getString(String url) throws IOException {
+        return getString(url, Map.of());
+    }
+
+    /**
+     * 构造 GET 请求，带上默认的超时和 User-Agent
+     */
+    public HttpRequest.Builder newGet(String url, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .GET()
+                .timeout(requestTimeout)
+                .header("User-Agent", USER_AGENT);
+        headers.forEach(builder::setHeader);
+        return builder;
+    }
+
+    /**
+     * 发送请求：遵守单主机并发限制，GET 请求失败时按退避策略重试
+     *
+     * @param requestBuilder 请求
+     * @param bodyHandler    响应体处理方式
+     * @return 最后一次尝试的响应
+     */
+    public <T> HttpResponse<T> send(HttpRequest.Builder requestBuilder, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException {
+        HttpRequest request = requestBuilder.build();
+        boolean retryable = "GET".equals(request.method());
+        for (int attempt = 1; ; attempt++) {
+            boolean lastAttempt = !retryable || attempt >= maxAttempts;
+            HttpResponse<T> response;
+            try {
+                response = sendOnce(request, bodyHandler);
+            } catch (IOException e) {
+                if (lastAttempt || e instanceof HostBusyException) {
+                    throw e;
+                }
+                log.warn("Request to {} failed (attempt {}/{}): {}", request.uri(), attempt, maxAttempts,
+                        e.toString());
+                sleep(backoff(attempt, Optional.empty()));
+                continue;
+            }
+            if (lastAttempt || !RETRYABLE_STATUS.contains(response.statusCode())) {
+                return response;
+            }
+            log.warn("Request to {} returned {} (attempt {}/{})", request.uri(), response.statusCode(), attempt,
+                    maxAttempts);
+            discard(response);
+            sleep(backoff(attempt, response.headers().firstValue("Retry-After")));
+        }
+    }
+
+    private <T> HttpResponse<T> sendOnce(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException {
+        String host = request.uri().getHost();
+        Semaphore permits = hostPermits.computeIfAbsent(host == null ? "" : host,
+                key -> new Semaphore(maxConcurrentPerHost));
+        try {
+            if (!permits.tryAcquire(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new HostBusyException(host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + host);
+        }
+        try {
+            return httpClient.send(request, bodyHandler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while requesting " + request.uri());
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 第 attempt 次失败后的等待时间：在 [0, min(backoffMax, backoffBase * 2^(attempt-1))] 中随机取值；
+     * 有 Retry-After（秒）时使用它，但不超过 backoffMax
+     */
+    Duration backoff(int attempt, Optional<String> retryAfter) {
+        if (retryAfter.isPresent()) {
+            try {
+                Duration wait = Duration.ofSeconds(Math.max(0, Long.parseLong(retryAfter.get().trim())));
+                return wait.compareTo(backoffMax) > 0 ? backoffMax : wait;
+            } catch (NumberFormatException ignored) {
+                // HTTP 日期格式的 Retry-After 按普通退避处理
+            }
+        }
+        long ceiling = Math.min(backoffMax.toMillis(), backoffBase.toMillis() << Math.min(attempt - 1, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    private static void sleep(Duration duration) throws InterruptedIOException {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        }
+    }
+
+    /**
+     * 重试前关闭不再使用的流式响应体，释放连接
+     */
+    private static void discard(HttpResponse<?> response) {
+        if (response.body() instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception ignored) {
+                // 忽略
+            }
+        }
+    }
+
+    /**
+     * 等待单主机并发许可超时
+     */
+    public static class HostBusyException extends HttpTimeoutException {
+        public HostBusyException(String host) {
+            super("Too many concurrent requests to " + host);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.yam.myaiagent.pdf;
+
+import com.itextpdf.kernel.colors.Color;
+import com.itextpdf.kernel.colors.ColorConstants;
+import com.itextpdf.kernel.colors.DeviceRgb;
+import com.itextpdf.kernel.pdf.canvas.draw.SolidLine;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.borders.SolidBorder;
+import com.itextpdf.layout.element.LineSeparator;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Text;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 按 Markdown 块结构排版
+ * <p>
+ * 逐行解析，每个块解析完成后立即加入文档，不保留整篇文档的元素。支持的语法：
+ * <ul>
+ *     <li>块：标题（#）、无序列表（- * +）、有序列表（1.）、引用（&gt;）、围栏代码块（```）、分隔线（---）</li>
+ *     <li>行内：粗体（**）、代码（`）</li>
+ * </ul>
+ * 其余内容按段落排版，空行分隔段落，段落内的换行保留。
+ * 列表项排成悬挂缩进的段落而不是 iText 的 List，排版开销接近普通段落，嵌套列表按同一层级排版。
+ */
+final class MarkdownPdfLayout {
+
+    private static final float[] HEADING_SIZES = {20, 17, 15, 13, 12, 12};
+
+    private static final float CODE_FONT_SIZE = 9;
+
+    private static final float LIST_INDENT = 16;
+
+    // 内置中文字体中的 • 复制出来是乱码，用缩小的 ●
+    private static final String BULLET_SYMBOL = "● ";
+
+    private static final Color CODE_BACKGROUND = new DeviceRgb(245, 245, 245);
+
+    private static final Pattern HEADING = Pattern.compile("^ {0,3}(#{1,6})\\s+(.*?)(\\s+#+)?\\s*$");
+
+    private static final Pattern RULE = Pattern.compile("^ {0,3}([-*_])(\\s*\\1){2,}\\s*$");
+
+    private static final Pattern BULLET = Pattern.compile("^\\s*[-*+]\\s+(.*)$");
+
+    private static final Pattern ORDERED = Pattern.compile("^\\s*\\d{1,9}[.)]\\s+(.*)$");
+
+    private static final Pattern QUOTE = Pattern.compile("^ {0,3}>\\s?(.*)$");
+
+    private static final Pattern FENCE = Pattern.compile("^ {0,3}(```|~~~)");
+
+    private static final Pattern INLINE = Pattern.compile("\\*\\*(.+?)\\*\\*|`([^`]+)`");
+
+    private final Document document;
+
+    // 当前段落的行
+    private final StringBuilder paragraph = new StringBuilder();
+
+    // 当前引用的行
+    private final StringBuilder quote = new StringBuilder();
+
+    // 当前代码块，不在代码块中时为 null
+    private StringBuilder code;
+
+    // 代码块的结束标记
+    private String fence;
+
+    // 当前有序列表的项数，不在有序列表中时为 0
+    private int listNumber;
+
+    MarkdownPdfLayout(Document document) {
+        this.document = document;
+    }
+
+    /**
+     * 排版整篇文本
+     */
+    void write(String markdown) {
+        markdown.lines().forEach(this::line);
+        if (code != null) {
+            // 未闭合的代码块按代码块输出
+            addCode();
+        }
+        flush();
+    }
+
+    private void line(String line) {
+        if (code != null) {
+            if (line.strip().startsWith(fence)) {
+                addCode();
+            } else {
+                code.append(line).append('\n');
+            }
+            return;
+        }
+        Matcher fenceMatcher = FENCE.matcher(line);
+        if (fenceMatcher.find()) {
+            flush();
+            fence = fenceMatcher.group(1);
+            code = new StringBuilder();
+            return;
+        }
+        if (line.isBlank()) {
+            flush();
+            return;
+        }
+        Matcher matcher = HEADING.matcher(line);
+        if (matcher.matches()) {
+            flush();
+            int level = matcher.group(1).length();
+            document.add(inline(matcher.group(2))
+                    .setFontSize(HEADING_SIZES[level - 1])
+                    .simulateBold()
+                    .setMarginTop(level <= 2 ? 12 : 8)
+                    .setMarginBottom(4));
+            return;
+        }
+        if (RULE.matcher(line).matches()) {
+            flush();
+            document.add(new LineSeparator(new SolidLine(0.5f)).setMarginTop(4).setMarginBottom(4));
+            return;
+        }
+        matcher = QUOTE.matcher(line);
+        if (matcher.matches()) {
+            flushParagraph();
+            endList();
+            appendLine(quote, matcher.group(1));
+            return;
+        }
+        matcher = BULLET.matcher(line);
+        boolean bullet = matcher.matches();
+        if (!bullet) {
+            matcher = ORDERED.matcher(line);
+        }
+        if (bullet || matcher.matches()) {
+            flushParagraph();
+            flushQuote();
+            addListItem(!bullet, matcher.group(1));
+            return;
+        }
+        endList();
+        flushQuote();
+        appendLine(paragraph, line.strip());
+    }
+
+    private void addListItem(boolean ordered, String text) {
+        listNumber = ordered ? listNumber + 1 : 0;
+        Text symbol = ordered ? new Text(listNumber + ". ") : new Text(BULLET_SYMBOL).setFontSize(6);
+        Paragraph item = inline(new Paragraph(symbol), text)
+                .setMarginTop(0)
+                .setMarginBottom(0)
+                .setMarginLeft(LIST_INDENT)
+                .setFirstLineIndent(-LIST_INDENT / 2)
+                .setPaddingLeft(LIST_INDENT / 2);
+        document.add(item);
+    }
+
+    private void addCode() {
+        // 去掉最后一个换行，避免代码块底部多出空行
+        int length = code.length();
+        String text = length > 0 && code.charAt(length - 1) == '\n' ? code.substring(0, length - 1) : code.toString();
+        document.add(new Paragraph(text)
+                .setFontSize(CODE_FONT_SIZE)
+                .setBackgroundColor(CODE_BACKGROUND)
+                .setPadding(6));
+        code = null;
+        fence = null;
+    }
+
+    private void flush() {
+        flushParagraph();
+        flushQuote();
+        endList();
+    }
+
+    private void flushParagraph() {
+        if (!paragraph.isEmpty()) {
+            document.add(inline(paragraph.toString()));
+            paragraph.setLength(0);
+        }
+    }
+
+    private void flushQuote() {
+        if (!quote.isEmpty()) {
+            document.add(inline(quote.toString())
+                    .setFontColor(ColorConstants.DARK_GRAY)
+                    .setBorderLeft(new SolidBorder(ColorConstants.LIGHT_GRAY, 2))
+                    .setPaddingLeft(8));
+            quote.setLength(0);
+        }
+    }
+
+    private void endList() {
+        // 列表项已经逐项加入文档，这里只需要重新开始编号
+        listNumber = 0;
+    }
+
+    private static void appendLine(StringBuilder block, String line) {
+        if (!block.isEmpty()) {
+            block.append('\n');
+        }
+        block.append(line);
+    }
+
+    /**
+     * 处理行内粗体和代码
+     */
+    private static Paragraph inline(String text) {
+        return inline(new Paragraph(), text);
+    }
+
+    private static Paragraph inline(Paragraph paragraph, String text) {
+        Matcher matcher = INLINE.matcher(text);
+        int last = 0;
+        while (matcher.find()) {
+            if (matcher.start() > last) {
+                paragraph.add(new Text(text.substring(last, matcher.start())));
+            }
+            if (matcher.group(1) != null) {
+                paragraph.add(new Text(matcher.group(1)).simulateBold());
+            } else {
+                paragraph.add(new Text(matcher.group(2)).setBackgroundColor(CODE_BACKGROUND));
+            }
+            last = matcher.end();
+        }
+        if (last < text.length()) {
+            paragraph.add(new Text(text.substring(last)));
+        }
+        return paragraph;
+    }
+}
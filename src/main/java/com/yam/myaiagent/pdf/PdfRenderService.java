@@ -0,0 +1,197 @@
+package com.yam.myaiagent.pdf;
+
+import com.itextpdf.io.font.CMapEncoding;
+import com.itextpdf.io.font.FontProgram;
+import com.itextpdf.io.font.FontProgramFactory;
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.font.PdfType0Font;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.yam.myaiagent.storage.ContentStore;
+import com.yam.myaiagent.storage.StoredFile;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * PDF 渲染服务
+ * <p>
+ * 把 Markdown 文本渲染为 PDF，针对频繁调用和长文档做了以下处理：
+ * <ul>
+ *     <li>字体：内置中文字体 STSongStd-Light 的字形信息和 UniGB-UCS2-H 编码表（CMap）在进程内只加载一次。
+ *     PdfFont 绑定到单个 PdfDocument，不能跨文档共用，每个文档仍然新建 PdfFont，
+ *     但 iText 每次新建都会重新解析 CMap（约占小文档生成时间的一半），这里改为复用已解析的编码表。
+ *     复用依赖 iText 9.1 的内部字段 PdfType0Font.cmapEncoding：加载字体时先确认替换编码表后的字体与直接按编码创建的字体
+ *     编码结果一致，字段不存在或结果不一致时退回每个文档重新解析 CMap</li>
+ *     <li>输出：直接写入目标流或文件，不在内存中缓存整个 PDF；Markdown 的每个块单独加入文档，
+ *     排满的页面立即写出并释放</li>
+ *     <li>排版：标题、列表、引用、代码块等按 Markdown 结构排版，见 {@link MarkdownPdfLayout}</li>
+ * </ul>
+ */
+@Slf4j
+public class PdfRenderService {
+
+    private static final PdfRenderService SHARED = new PdfRenderService();
+
+    private static final String FONT_NAME = "STSongStd-Light";
+
+    private static final String ENCODING = "UniGB-UCS2-H";
+
+    // 先用不需要解析 CMap 的编码创建字体，再换成缓存的编码表
+    private static final Field CMAP_ENCODING_FIELD = cmapEncodingField();
+
+    // 校验复用的编码表时使用的文本：中文、ASCII 和全角符号
+    private static final String PROBE_TEXT = "原创项目 PDF，第 1 章：Java 并发 ● 123";
+
+    /**
+     * 进程内缓存的字体：字形信息和解析好的编码表都只读，可以在多个文档、多个线程间共用
+     *
+     * @param reuseEncoding 替换编码表的字体通过了校验，可以复用编码表
+     */
+    private record CachedFont(FontProgram program, CMapEncoding encoding, boolean reuseEncoding) {
+    }
+
+    private volatile CachedFont cachedFont;
+
+    /**
+     * 获取进程内共享的渲染服务
+     */
+    public static PdfRenderService shared() {
+        return SHARED;
+    }
+
+    /**
+     * 渲染到输出流，完成后不关闭输出流
+     *
+     * @param markdown Markdown 文本
+     * @param output   输出流
+     */
+    public void render(String markdown, OutputStream output) throws IOException {
+        render(markdown, new PdfWriter(output), createFont());
+    }
+
+    /**
+     * 使用指定的写出器和字体渲染，字体只能用于这一个文档
+     */
+    void render(String markdown, PdfWriter writer, PdfFont font) throws IOException {
+        writer.setCloseStream(false);
+        // Document 默认立即排版，排满的页面在加入下一个块时写出
+        try (PdfDocument pdf = new PdfDocument(writer);
+             Document document = new Document(pdf)) {
+            document.setFont(font);
+            new MarkdownPdfLayout(document).write(markdown);
+        }
+    }
+
+    /**
+     * 渲染并写入内容存储，先写到存储目录下的临时文件再移入，不在内存中缓存整个 PDF
+     *
+     * @param markdown     Markdown 文本
+     * @param contentStore 内容存储
+     * @param name         存储中的文件名，例如 pdf/report.pdf
+     */
+    public StoredFile render(String markdown, ContentStore contentStore, String name) throws IOException {
+        Path temp = Files.createTempFile(contentStore.getRoot(), ".pdf-", ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(temp)) {
+                render(markdown, output);
+            }
+            return contentStore.put(name, temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 为一个文档创建字体
+     */
+    PdfFont createFont() throws IOException {
+        CachedFont font = cachedFont();
+        if (font.reuseEncoding()) {
+            PdfFont pdfFont = reuseEncoding(font.program(), font.encoding());
+            if (pdfFont != null) {
+                return pdfFont;
+            }
+        }
+        return createFactoryFont();
+    }
+
+    /**
+     * 直接按编码创建字体，每次都重新解析 CMap
+     */
+    PdfFont createFactoryFont() throws IOException {
+        return PdfFontFactory.createFont(cachedFont().program(), ENCODING,
+                PdfFontFactory.EmbeddingStrategy.PREFER_NOT_EMBEDDED);
+    }
+
+    /**
+     * 创建使用已解析编码表的字体，无法替换时返回 null
+     */
+    private static PdfFont reuseEncoding(FontProgram program, CMapEncoding encoding) {
+        if (CMAP_ENCODING_FIELD == null) {
+            return null;
+        }
+        PdfFont pdfFont = PdfFontFactory.createFont(program, PdfEncodings.IDENTITY_H,
+                PdfFontFactory.EmbeddingStrategy.PREFER_NOT_EMBEDDED);
+        try {
+            CMAP_ENCODING_FIELD.set(pdfFont, encoding);
+            return pdfFont;
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            log.warn("Failed to reuse parsed CMap, creating font with {}", ENCODING, e);
+            return null;
+        }
+    }
+
+    private CachedFont cachedFont() throws IOException {
+        CachedFont font = cachedFont;
+        if (font == null) {
+            synchronized (this) {
+                font = cachedFont;
+                if (font == null) {
+                    // 使用 font-asian 中的内置中文字体
+                    FontProgram program = FontProgramFactory.createFont(FONT_NAME);
+                    PdfType0Font parsed = (PdfType0Font) PdfFontFactory.createFont(program, ENCODING,
+                            PdfFontFactory.EmbeddingStrategy.PREFER_NOT_EMBEDDED);
+                    font = new CachedFont(program, parsed.getCmap(), isEquivalent(reuseEncoding(program,
+                            parsed.getCmap()), parsed));
+                    cachedFont = font;
+                }
+            }
+        }
+        return font;
+    }
+
+    /**
+     * 替换编码表后的字体与直接创建的字体是否等价：编码表相同，且文本编码结果一致
+     */
+    private static boolean isEquivalent(PdfFont reused, PdfType0Font expected) {
+        if (reused instanceof PdfType0Font type0
+                && type0.getCmap() == expected.getCmap()
+                && Arrays.equals(reused.convertToBytes(PROBE_TEXT), expected.convertToBytes(PROBE_TEXT))) {
+            return true;
+        }
+        if (reused != null) {
+            log.warn("Font with reused CMap differs from {}, each PDF will parse it again", ENCODING);
+        }
+        return false;
+    }
+
+    private static Field cmapEncodingField() {
+        try {
+            Field field = PdfType0Font.class.getDeclaredField("cmapEncoding");
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("CMap of PdfType0Font is not accessible, each PDF will parse it again", e);
+            return null;
+        }
+    }
+}
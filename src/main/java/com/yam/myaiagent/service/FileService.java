@@ -1,14 +1,30 @@
 package com.yam.myaiagent.service;
 
+import com.yam.myaiagent.storage.FileVariant;
+import com.yam.myaiagent.storage.MarkdownCatalog;
+import com.yam.myaiagent.storage.MarkdownFilePage;
 import org.springframework.core.io.Resource;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 
 public interface FileService {
     /**
      * 获取markdown目录下所有文件列表
      */
     List<String> listMarkdownFiles();
+
+    /**
+     * 分页获取markdown文件列表
+     *
+     * @param sort    排序方式
+     * @param prefix  文件名前缀，可以为空
+     * @param keyword 文件名包含的关键字，可以为空
+     * @param cursor  上一页返回的游标，第一页为空
+     * @param size    每页数量
+     */
+    MarkdownFilePage listMarkdownFiles(MarkdownCatalog.Sort sort, String prefix, String keyword, String cursor,
+                                       int size);
     
     /**
      * 获取指定的markdown文件资源
@@ -19,4 +35,18 @@ public interface FileService {
      * 获取markdown文件的路径
      */
     Path getMarkdownFilePath(String filename);
-}
\ No newline at end of file
+
+    /**
+     * 获取markdown文件的强 ETag（内容的 SHA-256），文件不是通过内容存储写入的时返回空
+     */
+    Optional<String> getMarkdownFileETag(String filename);
+
+    /**
+     * 获取下载markdown文件时实际发送的文件：客户端接受压缩且有可用的预压缩版本时返回压缩版本
+     *
+     * @param filename       文件名
+     * @param acceptEncoding 请求的 Accept-Encoding，可以为空
+     * @return 文件不存在时返回空
+     */
+    Optional<FileVariant> getMarkdownFileVariant(String filename, String acceptEncoding);
+}
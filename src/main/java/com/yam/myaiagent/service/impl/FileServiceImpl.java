@@ -2,48 +2,84 @@ package com.yam.myaiagent.service.impl;
 
 import com.yam.myaiagent.constant.FileConstant;
 import com.yam.myaiagent.service.FileService;
+import com.yam.myaiagent.storage.ContentStore;
+import com.yam.myaiagent.storage.FileVariant;
+import com.yam.myaiagent.storage.MarkdownCatalog;
+import com.yam.myaiagent.storage.MarkdownFilePage;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collections;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
+@Slf4j
 @Service
 public class FileServiceImpl implements FileService {
 
+    // 小于该字节数的文件不值得压缩
+    private static final long MIN_COMPRESS_SIZE = 1024;
+
     private final Path markdownLocation;
 
+    private final ContentStore contentStore;
+
+    private final MarkdownCatalog markdownCatalog;
+
     public FileServiceImpl() {
         // 配置markdown文件存储路径
-        this.markdownLocation = Paths.get(FileConstant.FILE_SAVE_DIR + "/markdown").toAbsolutePath().normalize();
-        
+        this(Paths.get(FileConstant.FILE_SAVE_DIR + "/markdown"), ContentStore.shared());
+    }
+
+    public FileServiceImpl(Path markdownLocation, ContentStore contentStore) {
+        this.markdownLocation = markdownLocation.toAbsolutePath().normalize();
+        this.contentStore = contentStore;
+
         // 确保目录存在
         try {
             Files.createDirectories(this.markdownLocation);
         } catch (IOException ex) {
             throw new RuntimeException("无法创建文件存储目录", ex);
         }
+
+        // 建立文件目录并监听变更，列表请求不再遍历目录
+        this.markdownCatalog = new MarkdownCatalog(this.markdownLocation);
+        try {
+            this.markdownCatalog.start();
+        } catch (IOException ex) {
+            throw new RuntimeException("无法监听文件存储目录", ex);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        markdownCatalog.close();
     }
 
     @Override
     public List<String> listMarkdownFiles() {
-        try {
-            return Files.walk(this.markdownLocation, 1)
-                    .filter(path -> !path.equals(this.markdownLocation))
-                    .filter(path -> path.toString().endsWith(".md"))
-                    .map(path -> path.getFileName().toString())
-                    .collect(Collectors.toList());
-        } catch (IOException e) {
-            return Collections.emptyList();
-        }
+        return markdownCatalog.names();
+    }
+
+    @Override
+    public MarkdownFilePage listMarkdownFiles(MarkdownCatalog.Sort sort, String prefix, String keyword,
+                                              String cursor, int size) {
+        return markdownCatalog.list(sort, prefix, keyword, cursor, size);
     }
 
     @Override
@@ -68,4 +104,116 @@ public class FileServiceImpl implements FileService {
         }
         return this.markdownLocation.resolve(filename);
     }
+
+    @Override
+    public Optional<String> getMarkdownFileETag(String filename) {
+        // 校验文件名
+        getMarkdownFilePath(filename);
+        return contentStore.hashOf("markdown/" + filename).map(ContentStore::etagOf);
+    }
+
+    @Override
+    public Optional<FileVariant> getMarkdownFileVariant(String filename, String acceptEncoding) {
+        Path file = getMarkdownFilePath(filename);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+        if (!attributes.isRegularFile()) {
+            return Optional.empty();
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        // 优先使用内容摘要，否则用修改时间和大小（同一文件两者都相同时内容也相同）
+        String tag = getMarkdownFileETag(filename)
+                .map(etag -> etag.substring(1, etag.length() - 1))
+                .orElse(Long.toHexString(lastModified) + "-" + Long.toHexString(attributes.size()));
+        Set<String> encodings = acceptedEncodings(acceptEncoding);
+        if (encodings.contains("br")) {
+            // JDK 没有 brotli 编码器，只使用外部工具生成的 .br 文件
+            Optional<FileVariant> brotli = precompressed(file, "br", ".br", tag, lastModified);
+            if (brotli.isPresent()) {
+                return brotli;
+            }
+        }
+        if (encodings.contains("gzip") && attributes.size() >= MIN_COMPRESS_SIZE) {
+            try {
+                Optional<FileVariant> gzip = precompressed(file, "gzip", ".gz", tag, lastModified);
+                return Optional.of(gzip.isPresent() ? gzip.get() : gzip(file, tag, lastModified));
+            } catch (IOException e) {
+                log.warn("Failed to compress {}, serving it uncompressed", file, e);
+            }
+        }
+        return Optional.of(new FileVariant(file, null, "\"" + tag + "\"", lastModified, attributes.size()));
+    }
+
+    /**
+     * 与原文件修改时间相同的预压缩文件（gzip -k、brotli -k 都会保留原文件的修改时间）
+     */
+    private static Optional<FileVariant> precompressed(Path file, String encoding, String suffix, String tag,
+                                                       long lastModified) {
+        Path compressed = file.resolveSibling(file.getFileName() + suffix);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(compressed, BasicFileAttributes.class);
+            if (attributes.isRegularFile() && attributes.lastModifiedTime().toMillis() == lastModified) {
+                return Optional.of(new FileVariant(compressed, encoding, "\"" + tag + "-" + encoding + "\"",
+                        lastModified, attributes.size()));
+            }
+        } catch (IOException ignored) {
+            // 没有预压缩文件
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * 生成 .gz 文件，修改时间设置为与原文件相同，原文件变化后重新生成
+     */
+    private static FileVariant gzip(Path file, String tag, long lastModified) throws IOException {
+        Path compressed = file.resolveSibling(file.getFileName() + ".gz");
+        Path temp = file.resolveSibling("." + file.getFileName() + ".gz." + System.nanoTime() + ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                Files.copy(file, out);
+            }
+            Files.setLastModifiedTime(temp, FileTime.fromMillis(lastModified));
+            Files.move(temp, compressed, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return new FileVariant(compressed, "gzip", "\"" + tag + "-gzip\"", lastModified, Files.size(compressed));
+    }
+
+    /**
+     * 解析 Accept-Encoding，返回可以接受（q 大于 0）的编码
+     */
+    private static Set<String> acceptedEncodings(String acceptEncoding) {
+        Set<String> encodings = new HashSet<>();
+        if (!StringUtils.hasText(acceptEncoding)) {
+            return encodings;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] pieces = part.split(";");
+            String coding = pieces[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < pieces.length; i++) {
+                String parameter = pieces[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (quality > 0) {
+                if (coding.equals("*")) {
+                    encodings.addAll(List.of("br", "gzip"));
+                } else {
+                    encodings.add(coding);
+                }
+            }
+        }
+        return encodings;
+    }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.yam.myaiagent.service.impl;
 
 import com.yam.myaiagent.advisor.MyLoggerAdvisor;
+import com.yam.myaiagent.chatmemory.BoundedInMemoryChatMemory;
 import com.yam.myaiagent.model.QAResponse;
 import com.yam.myaiagent.rag.LoveAppDocumentLoader;
 import com.yam.myaiagent.rag.QueryRewriter;
@@ -10,8 +11,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
-import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.InMemoryChatMemory;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.document.Document;
@@ -58,6 +57,8 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
 
     private final ChatClient chatClient;
 
+    private final BoundedInMemoryChatMemory chatMemory;
+
     private static final String SYSTEM_PROMPT_NORMAL = "你是一个AI助手，可以帮助用户解答各种问题。";
 
     /**
@@ -69,8 +70,8 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
 //        // 初始化基于文件的对话记忆
 //        String fileDir = System.getProperty("user.dir") + "/tmp/chat-memory";
 //        ChatMemory chatMemory = new FileBasedChatMemory(fileDir);
-        // 初始化基于内存的对话记忆
-        ChatMemory chatMemory = new InMemoryChatMemory();
+        // 初始化基于内存的对话记忆（有界，按容量和空闲时间淘汰）
+        chatMemory = new BoundedInMemoryChatMemory();
         chatClient = ChatClient.builder(dashscopeChatModel)
                 .defaultSystem(SYSTEM_PROMPT_NORMAL)
                 .defaultAdvisors(
@@ -116,21 +117,27 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
 
     @Override
     public QAResponse getAnswer(String message) {
+        // 每次问答都是独立会话，结束后立即清理，避免会话记忆无限增长
         String chatId = UUID.randomUUID().toString();
-        // 查询重写
-        String rewrittenMessage = queryRewriter.doQueryRewrite(message);
-        ChatResponse chatResponse = chatClient
-                .prompt()
-                // 使用改写后的查询
-                .user(rewrittenMessage)
-                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
-                        .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
-                // 开启日志，便于观察效果
-                .advisors(new MyLoggerAdvisor())
-                // 应用 RAG 检索增强服务（基于 PgVector 向量存储）
-                .advisors(new QuestionAnswerAdvisor(pgVectorVectorStore))
-                .call()
-                .chatResponse();
+        ChatResponse chatResponse;
+        try {
+            // 查询重写
+            String rewrittenMessage = queryRewriter.doQueryRewrite(message);
+            chatResponse = chatClient
+                    .prompt()
+                    // 使用改写后的查询
+                    .user(rewrittenMessage)
+                    .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
+                            .param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 10))
+                    // 开启日志，便于观察效果
+                    .advisors(new MyLoggerAdvisor())
+                    // 应用 RAG 检索增强服务（基于 PgVector 向量存储）
+                    .advisors(new QuestionAnswerAdvisor(pgVectorVectorStore))
+                    .call()
+                    .chatResponse();
+        } finally {
+            chatMemory.clear(chatId);
+        }
         String content = chatResponse.getResult().getOutput().getText();
         log.info("content: {}", content);
         QAResponse qaResponse = new QAResponse();
@@ -0,0 +1,577 @@
+package com.yam.myaiagent.storage;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.yam.myaiagent.constant.FileConstant;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 按内容寻址的文件存储
+ * <p>
+ * 智能体生成和下载的文件都通过它写入 {@link FileConstant#FILE_SAVE_DIR}，相同内容只保存一份：
+ * <ul>
+ *     <li>数据块：内容保存在 .blobs/前两位/SHA-256 中，写入后设为只读，已存在的数据块不会重复写入</li>
+ *     <li>引用：对外的文件名（例如 pdf/report.pdf）记录指向的 SHA-256。只由存储写入的目录（linkedDirs）中，
+ *     文件是数据块的硬链接，原有的按路径读取文件的代码不需要修改；文件系统不支持硬链接时退化为独立的副本，
+ *     不计入引用数，也不算作去重。
+ *     其他目录中的文件可能被终端、编辑器原地修改，硬链接会连带修改数据块和所有同内容的文件，
+ *     因此写入独立的副本，不参与去重</li>
+ *     <li>校验：每个引用记录写入时文件的大小、修改时间和 inode，三者都没有变化才认为摘要仍然有效，
+ *     复用数据块前同样确认它没有被修改过</li>
+ *     <li>回收：每个数据块按引用数计数，最后一个引用被覆盖或删除时删除数据块；
+ *     {@link #gc()} 还会清理被外部删除、替换或修改的文件对应的引用，打开存储时执行一次，之后写入时每小时最多执行一次</li>
+ * </ul>
+ * 引用表的快照保存在 .blobs/refs.json 中，每次变更只向 .blobs/refs.log 追加一行，写入的开销与文件总数无关；
+ * 日志条数超过引用数（至少 compactThreshold 条）时合并为新的快照。日志中的每一行都是引用的完整状态，
+ * 快照替换后、日志删除前崩溃，重新打开时再回放一遍也得到相同的结果。
+ */
+@Slf4j
+public class ContentStore {
+
+    // 下载和 PDF 只由工具通过存储写入，其余目录（markdown、file 等）可能被原地修改
+    private static final ContentStore SHARED = new ContentStore(Paths.get(FileConstant.FILE_SAVE_DIR),
+            Set.of("download", "pdf"));
+
+    private static final String BLOB_DIR = ".blobs";
+
+    private static final String REFS_FILE = "refs.json";
+
+    private static final String JOURNAL_FILE = "refs.log";
+
+    private static final int DEFAULT_COMPACT_THRESHOLD = 1000;
+
+    // 写入时自动执行 gc 的最小间隔
+    private static final long GC_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * 引用：指向的内容、是否链接到数据块（计入引用数），以及写入时的文件状态
+     */
+    private record Ref(String sha256, boolean linked, Stamp stamp) {
+    }
+
+    /**
+     * 文件状态：大小、修改时间（纳秒）和 inode（文件系统不提供时为 null）
+     */
+    private record Stamp(long size, long lastModified, String fileKey) {
+
+        static Stamp of(Path file) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new Stamp(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    attributes.fileKey() == null ? null : attributes.fileKey().toString());
+        }
+
+        boolean matches(Path file) {
+            try {
+                return equals(of(file));
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private final Path root;
+
+    private final Path blobDir;
+
+    // 硬链接到数据块的顶层目录，为 null 时所有文件都使用硬链接
+    private final Set<String> linkedDirs;
+
+    // 文件名 -> 引用
+    private final Map<String, Ref> refs = new HashMap<>();
+
+    // SHA-256 -> 引用数
+    private final Map<String, Integer> refCounts = new HashMap<>();
+
+    // SHA-256 -> 数据块写入时的状态
+    private final Map<String, Stamp> blobStamps = new HashMap<>();
+
+    private final Path journal;
+
+    // 日志合并为快照前至少保留的条数
+    private final int compactThreshold;
+
+    // 日志中的条数
+    private int journalEntries;
+
+    // 上次执行 gc 的时间
+    private long lastGc;
+
+    /**
+     * 根目录下的文件都只通过存储写入，全部使用硬链接
+     */
+    public ContentStore(Path root) {
+        this(root, null);
+    }
+
+    /**
+     * @param root       根目录
+     * @param linkedDirs 只通过存储写入、可以硬链接到数据块的顶层目录，其他目录中的文件写入独立的副本
+     */
+    public ContentStore(Path root, Set<String> linkedDirs) {
+        this(root, linkedDirs, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    /**
+     * @param root             根目录
+     * @param linkedDirs       只通过存储写入、可以硬链接到数据块的顶层目录，为 null 时所有文件都使用硬链接
+     * @param compactThreshold 日志合并为快照前至少保留的条数
+     */
+    public ContentStore(Path root, Set<String> linkedDirs, int compactThreshold) {
+        this.root = root.toAbsolutePath().normalize();
+        this.blobDir = this.root.resolve(BLOB_DIR);
+        this.journal = blobDir.resolve(JOURNAL_FILE);
+        this.linkedDirs = linkedDirs;
+        this.compactThreshold = compactThreshold;
+        try {
+            Files.createDirectories(blobDir);
+            loadRefs();
+        } catch (IOException e) {
+            throw new RuntimeException("无法初始化文件存储目录: " + blobDir, e);
+        }
+        gcIfDue();
+    }
+
+    /**
+     * 获取所有工具共享的存储，根目录为 {@link FileConstant#FILE_SAVE_DIR}
+     */
+    public static ContentStore shared() {
+        return SHARED;
+    }
+
+    public static String etagOf(String sha256) {
+        return "\"" + sha256 + "\"";
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * 写入文件
+     *
+     * @param name    相对于根目录的文件名，例如 markdown/report.md
+     * @param content 文件内容
+     */
+    public StoredFile put(String name, byte[] content) throws IOException {
+        String sha256 = DigestUtil.sha256Hex(content);
+        synchronized (this) {
+            String key = normalize(name);
+            if (!isLinked(key)) {
+                return putCopy(key, sha256, content.length, temp -> Files.write(temp, content));
+            }
+            boolean exists = intactBlob(sha256);
+            if (!exists) {
+                Path temp = Files.createTempFile(blobDir, "put-", ".tmp");
+                try {
+                    Files.write(temp, content);
+                    storeBlob(temp, sha256);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+            StoredFile file = link(key, sha256, content.length, exists);
+            gcIfDue();
+            return file;
+        }
+    }
+
+    /**
+     * 把已经写好的文件移入存储，例如下载完成的临时文件；存储中已有相同内容时直接删除它
+     *
+     * @param name   相对于根目录的文件名
+     * @param source 源文件，调用后不再存在
+     */
+    public StoredFile put(String name, Path source) throws IOException {
+        // 在锁外计算摘要，大文件不会阻塞其他写入
+        String sha256 = DigestUtil.sha256Hex(source.toFile());
+        long size = Files.size(source);
+        synchronized (this) {
+            String key = normalize(name);
+            if (!isLinked(key)) {
+                StoredFile file = putCopy(key, sha256, size,
+                        temp -> Files.move(source, temp, StandardCopyOption.REPLACE_EXISTING));
+                Files.deleteIfExists(source);
+                return file;
+            }
+            boolean exists = intactBlob(sha256);
+            if (exists) {
+                Files.delete(source);
+            } else {
+                storeBlob(source, sha256);
+            }
+            StoredFile file = link(key, sha256, size, exists);
+            gcIfDue();
+            return file;
+        }
+    }
+
+    /**
+     * 文件当前内容的 SHA-256；文件不是通过存储写入的，或者之后被外部修改、替换过时返回空
+     */
+    public synchronized Optional<String> hashOf(String name) {
+        String key = normalize(name);
+        Ref ref = refs.get(key);
+        return ref != null && ref.stamp().matches(resolve(key)) ? Optional.of(ref.sha256()) : Optional.empty();
+    }
+
+    /**
+     * 删除文件和它的引用，数据块不再被引用时一起删除
+     */
+    public synchronized boolean delete(String name) throws IOException {
+        String key = normalize(name);
+        boolean deleted = Files.deleteIfExists(resolve(key));
+        Ref ref = refs.remove(key);
+        if (ref != null) {
+            release(ref);
+            record(key, null);
+        }
+        return deleted || ref != null;
+    }
+
+    /**
+     * 数据块的引用数
+     */
+    public synchronized int refCount(String sha256) {
+        return refCounts.getOrDefault(sha256, 0);
+    }
+
+    /**
+     * 清理失效的引用（文件被外部删除、替换或修改）和没有引用的数据块
+     *
+     * @return 删除的数据块数量
+     */
+    public synchronized int gc() throws IOException {
+        List<String> stale = refs.entrySet().stream()
+                .filter(entry -> !entry.getValue().stamp().matches(resolve(entry.getKey())))
+                .map(Map.Entry::getKey)
+                .toList();
+        for (String key : stale) {
+            Ref ref = refs.remove(key);
+            if (ref.linked()) {
+                // 只减少引用数，数据块在下面统一删除
+                refCounts.merge(ref.sha256(), -1,
+                        (current, delta) -> current + delta > 0 ? current + delta : null);
+            }
+            record(key, null);
+        }
+        int removed = 0;
+        try (Stream<Path> blobs = Files.walk(blobDir, 2)) {
+            for (Path blob : (Iterable<Path>) blobs.filter(Files::isRegularFile)::iterator) {
+                String fileName = blob.getFileName().toString();
+                if (fileName.equals(REFS_FILE) || fileName.equals(JOURNAL_FILE)) {
+                    continue;
+                }
+                // 中断的写入留下的临时文件，以及没有引用的数据块
+                if (fileName.endsWith(".tmp") || !refCounts.containsKey(fileName)) {
+                    deleteBlob(blob);
+                    blobStamps.remove(fileName);
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            log.info("Removed {} unreferenced blobs from {}", removed, blobDir);
+        }
+        return removed;
+    }
+
+    /**
+     * 距离上次 gc 超过 GC_INTERVAL_MILLIS 时执行 gc，失败不影响调用方（调用方持有锁或在构造器中）
+     */
+    private void gcIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - lastGc < GC_INTERVAL_MILLIS) {
+            return;
+        }
+        lastGc = now;
+        try {
+            gc();
+        } catch (IOException e) {
+            log.warn("Failed to collect unreferenced blobs in {}", blobDir, e);
+        }
+    }
+
+    /**
+     * 写入临时文件的操作
+     */
+    @FunctionalInterface
+    private interface TempWriter {
+        void write(Path temp) throws IOException;
+    }
+
+    /**
+     * 写入独立的副本（调用方持有锁），内容与当前文件相同且文件没有被修改过时不重复写入
+     */
+    private StoredFile putCopy(String key, String sha256, long size, TempWriter writer) throws IOException {
+        Path target = resolve(key);
+        Ref previous = refs.get(key);
+        if (previous != null && previous.sha256().equals(sha256) && previous.stamp().matches(target)) {
+            return new StoredFile(target, sha256, size, true);
+        }
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling("." + target.getFileName() + "." + System.nanoTime() + ".tmp");
+        try {
+            writer.write(temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        replaceRef(key, new Ref(sha256, false, Stamp.of(target)), previous);
+        return new StoredFile(target, sha256, size, false);
+    }
+
+    /**
+     * 让文件名指向数据块（调用方持有锁）；无法创建硬链接时写入独立的副本，不计入引用数
+     */
+    private StoredFile link(String key, String sha256, long size, boolean deduplicated) throws IOException {
+        Path target = resolve(key);
+        Ref previous = refs.get(key);
+        if (previous != null && previous.linked() && previous.sha256().equals(sha256)
+                && previous.stamp().matches(target)) {
+            return new StoredFile(target, sha256, size, true);
+        }
+        Files.createDirectories(target.getParent());
+        // 先在同目录建好链接再替换，读者不会看到文件缺失
+        Path temp = target.resolveSibling("." + target.getFileName() + "." + System.nanoTime() + ".tmp");
+        boolean linked = true;
+        try {
+            createLink(temp, blobPath(sha256));
+        } catch (UnsupportedOperationException | IOException e) {
+            log.warn("Failed to link {} to its blob, writing an independent copy: {}", key, e.getMessage());
+            Files.copy(blobPath(sha256), temp, StandardCopyOption.REPLACE_EXISTING);
+            linked = false;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (linked) {
+            refCounts.merge(sha256, 1, Integer::sum);
+        } else if (!refCounts.containsKey(sha256)) {
+            // 没有其他文件链接到刚写入的数据块，只保留副本
+            deleteBlob(blobPath(sha256));
+            blobStamps.remove(sha256);
+        }
+        replaceRef(key, new Ref(sha256, linked, Stamp.of(target)), previous);
+        return new StoredFile(target, sha256, size, linked && deduplicated);
+    }
+
+    /**
+     * 创建硬链接
+     */
+    void createLink(Path link, Path existing) throws IOException {
+        Files.createLink(link, existing);
+    }
+
+    private void replaceRef(String key, Ref ref, Ref previous) throws IOException {
+        refs.put(key, ref);
+        if (previous != null) {
+            release(previous);
+        }
+        record(key, ref);
+    }
+
+    private void release(Ref ref) throws IOException {
+        if (!ref.linked()) {
+            return;
+        }
+        Integer count = refCounts.merge(ref.sha256(), -1,
+                (current, delta) -> current + delta > 0 ? current + delta : null);
+        if (count == null) {
+            deleteBlob(blobPath(ref.sha256()));
+            blobStamps.remove(ref.sha256());
+        }
+    }
+
+    /**
+     * 数据块存在且写入后没有被修改过；被修改过的数据块（例如以 root 身份原地写入了硬链接）从数据块目录中移除，
+     * 仍指向它的引用因为文件状态变化而失效
+     */
+    private boolean intactBlob(String sha256) throws IOException {
+        Path blob = blobPath(sha256);
+        if (!Files.exists(blob)) {
+            return false;
+        }
+        Stamp stamp = blobStamps.get(sha256);
+        if (stamp != null && stamp.matches(blob)) {
+            return true;
+        }
+        log.warn("Blob {} was modified outside the store, writing it again", sha256);
+        deleteBlob(blob);
+        blobStamps.remove(sha256);
+        return false;
+    }
+
+    /**
+     * 移入数据块并设为只读，硬链接的文件无法被原地修改
+     */
+    private void storeBlob(Path source, String sha256) throws IOException {
+        Path blob = blobPath(sha256);
+        Files.createDirectories(blob.getParent());
+        Files.move(source, blob, StandardCopyOption.ATOMIC_MOVE);
+        if (!blob.toFile().setReadOnly()) {
+            log.warn("Failed to make blob {} read-only", blob);
+        }
+        blobStamps.put(sha256, Stamp.of(blob));
+    }
+
+    private static void deleteBlob(Path blob) throws IOException {
+        // 部分文件系统不允许删除只读文件
+        blob.toFile().setWritable(true);
+        Files.deleteIfExists(blob);
+    }
+
+    private boolean isLinked(String key) {
+        if (linkedDirs == null) {
+            return true;
+        }
+        int separator = key.indexOf('/');
+        return separator > 0 && linkedDirs.contains(key.substring(0, separator));
+    }
+
+    private Path blobPath(String sha256) {
+        return blobDir.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    /**
+     * 统一文件名格式，拒绝根目录之外和存储内部的路径
+     */
+    private String normalize(String name) {
+        Path path = root.resolve(name).normalize();
+        if (!path.startsWith(root) || path.equals(root) || path.startsWith(blobDir)) {
+            throw new IllegalArgumentException("文件名无效: " + name);
+        }
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    private Path resolve(String key) {
+        return root.resolve(key);
+    }
+
+    /**
+     * 读取快照并回放日志，再由引用计算引用数和数据块状态
+     */
+    private void loadRefs() throws IOException {
+        Path refsFile = blobDir.resolve(REFS_FILE);
+        if (Files.exists(refsFile)) {
+            JSONObject json = JSONUtil.parseObj(Files.readString(refsFile, StandardCharsets.UTF_8));
+            for (String name : json.keySet()) {
+                Object value = json.get(name);
+                Ref ref = value instanceof JSONObject object ? parseRef(object) : legacyRef(name, String.valueOf(value));
+                if (ref != null) {
+                    refs.put(name, ref);
+                }
+            }
+        }
+        if (Files.exists(journal)) {
+            for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JSONObject entry;
+                try {
+                    entry = JSONUtil.parseObj(line);
+                } catch (RuntimeException e) {
+                    // 追加时崩溃留下的不完整的行
+                    log.warn("Skipping malformed entry in {}: {}", journal, line);
+                    continue;
+                }
+                String name = entry.getStr("name");
+                if (entry.getBool("deleted", false)) {
+                    refs.remove(name);
+                } else {
+                    refs.put(name, parseRef(entry));
+                }
+                journalEntries++;
+            }
+        }
+        for (Ref ref : refs.values()) {
+            if (!ref.linked()) {
+                continue;
+            }
+            refCounts.merge(ref.sha256(), 1, Integer::sum);
+            // 硬链接与数据块是同一个文件，引用记录的状态就是数据块写入时的状态
+            Path blob = blobPath(ref.sha256());
+            if (Files.exists(blob) && ref.stamp().fileKey() != null
+                    && ref.stamp().fileKey().equals(Stamp.of(blob).fileKey())) {
+                blobStamps.put(ref.sha256(), ref.stamp());
+            }
+        }
+        if (journalEntries > 0) {
+            // 合并上次留下的日志，之后的追加不会接在不完整的行后面
+            compact();
+        }
+    }
+
+    private static Ref parseRef(JSONObject object) {
+        return new Ref(object.getStr("sha256"), object.getBool("linked", true),
+                new Stamp(object.getLong("size"), object.getLong("modified"), object.getStr("fileKey")));
+    }
+
+    private static JSONObject toJson(Ref ref) {
+        return new JSONObject()
+                .set("sha256", ref.sha256())
+                .set("linked", ref.linked())
+                .set("size", ref.stamp().size())
+                .set("modified", ref.stamp().lastModified())
+                .set("fileKey", ref.stamp().fileKey());
+    }
+
+    /**
+     * 旧格式的引用只记录了摘要：重新计算一次文件的摘要，一致时补上文件状态，否则丢弃引用
+     */
+    private Ref legacyRef(String name, String sha256) throws IOException {
+        Path file = resolve(name);
+        if (!Files.isRegularFile(file) || !sha256.equals(DigestUtil.sha256Hex(file.toFile()))) {
+            return null;
+        }
+        Path blob = blobPath(sha256);
+        boolean linked = Files.exists(blob);
+        if (linked && Files.isSameFile(file, blob) && !blob.toFile().setReadOnly()) {
+            log.warn("Failed to make blob {} read-only", blob);
+        }
+        return new Ref(sha256, linked, Stamp.of(file));
+    }
+
+    /**
+     * 向日志追加一条引用的变更（调用方持有锁），ref 为 null 表示删除
+     */
+    private void record(String key, Ref ref) throws IOException {
+        JSONObject entry = ref == null ? new JSONObject().set("deleted", true) : toJson(ref);
+        entry.set("name", key);
+        Files.writeString(journal, entry + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        journalEntries++;
+        if (journalEntries > Math.max(compactThreshold, refs.size())) {
+            compact();
+        }
+    }
+
+    /**
+     * 把当前的引用写成新的快照并清空日志；合并的开销按日志条数分摊，每次变更仍是常数
+     */
+    private void compact() throws IOException {
+        JSONObject json = new JSONObject();
+        refs.forEach((name, ref) -> json.set(name, toJson(ref)));
+        Path temp = Files.createTempFile(blobDir, "refs-", ".tmp");
+        Files.writeString(temp, json.toString(), StandardCharsets.UTF_8);
+        Files.move(temp, blobDir.resolve(REFS_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(journal);
+        journalEntries = 0;
+    }
+}
@@ -0,0 +1,15 @@
+package com.yam.myaiagent.storage;
+
+import java.nio.file.Path;
+
+/**
+ * 下载时实际发送的文件：原文件或预压缩的版本
+ *
+ * @param path            文件路径
+ * @param contentEncoding 内容编码（gzip、br），原文件为 null
+ * @param etag            强 ETag，不同编码的版本各不相同
+ * @param lastModified    原文件的修改时间（毫秒）
+ * @param length          文件字节数
+ */
+public record FileVariant(Path path, String contentEncoding, String etag, long lastModified, long length) {
+}
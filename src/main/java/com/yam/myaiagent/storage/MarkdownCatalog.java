@@ -0,0 +1,311 @@
+package com.yam.myaiagent.storage;
+
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Markdown 文件目录
+ * <p>
+ * 在内存中维护目录下所有 .md 文件的名称、大小、修改时间和摘要，列表请求不再访问文件系统：
+ * <ul>
+ *     <li>启动时扫描一次目录，之后由 {@link WatchService} 推送的创建、修改、删除事件增量更新；事件溢出时重新扫描</li>
+ *     <li>同时按文件名和按修改时间（新的在前）建立有序索引，分页通过游标定位；
+ *     不带过滤条件时每页的开销只与页大小有关，与目录中的文件总数无关</li>
+ *     <li>按文件名排序时，前缀过滤直接在文件名索引上取子区间；按修改时间排序时前缀过滤和任何关键字过滤都只能逐项匹配，
+ *     匹配的文件很少时需要扫描很多项。每页最多检查 maxScan 项，达到上限时返回已经找到的文件（可能不满一页，甚至为空）
+ *     和从扫描位置继续的游标，单次请求的开销仍然有上限</li>
+ *     <li>摘要在文件出现在列表中时才计算，文件大小和修改时间不变时复用</li>
+ * </ul>
+ */
+@Slf4j
+public class MarkdownCatalog implements Closeable {
+
+    /**
+     * 排序方式
+     */
+    public enum Sort {
+        // 按文件名升序
+        NAME,
+        // 按修改时间降序
+        RECENT
+    }
+
+    private static final String SUFFIX = ".md";
+
+    // 默认每页最多检查的索引项数
+    private static final int DEFAULT_MAX_SCAN = 10_000;
+
+    private static final Comparator<RecentKey> RECENT_ORDER = Comparator
+            .comparingLong(RecentKey::lastModified).reversed()
+            .thenComparing(RecentKey::name);
+
+    /**
+     * 按修改时间排序的索引项，只包含排序用的字段，补上摘要时不需要更新
+     */
+    private record RecentKey(long lastModified, String name) {
+    }
+
+    private final Path dir;
+
+    private final int maxScan;
+
+    private final NavigableMap<String, MarkdownFileInfo> byName = new ConcurrentSkipListMap<>();
+
+    private final NavigableSet<RecentKey> byRecent = new ConcurrentSkipListSet<>(RECENT_ORDER);
+
+    private WatchService watchService;
+
+    private Thread watcher;
+
+    public MarkdownCatalog(Path dir) {
+        this(dir, DEFAULT_MAX_SCAN);
+    }
+
+    /**
+     * @param dir     目录
+     * @param maxScan 带过滤条件时每页最多检查的索引项数
+     */
+    public MarkdownCatalog(Path dir, int maxScan) {
+        this.dir = dir;
+        this.maxScan = maxScan;
+    }
+
+    /**
+     * 扫描目录并开始监听变更
+     */
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        // 先注册监听再扫描，扫描期间发生的变更不会丢失
+        watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        rescan();
+        watcher = Thread.ofPlatform().daemon().name("markdown-catalog").start(this::watch);
+        log.info("Markdown catalog of {} started with {} files", dir, byName.size());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            watcher.interrupt();
+            watchService = null;
+        }
+    }
+
+    /**
+     * 分页列出文件
+     * <p>
+     * 过滤条件很少匹配时，本页可能不满 size 项但仍返回游标（检查的项数达到上限），nextCursor 为 null 才表示没有更多文件
+     *
+     * @param sort    排序方式
+     * @param prefix  文件名前缀，可以为空
+     * @param keyword 文件名包含的关键字（不区分大小写），可以为空
+     * @param cursor  上一页返回的游标，第一页为空
+     * @param size    每页数量
+     */
+    public MarkdownFilePage list(Sort sort, String prefix, String keyword, String cursor, int size) {
+        Iterator<MarkdownFileInfo> candidates = sort == Sort.RECENT
+                ? recentFrom(cursor).stream().map(key -> byName.get(key.name())).filter(Objects::nonNull).iterator()
+                : namesFrom(prefix, cursor).values().iterator();
+        String lowerKeyword = StrUtil.isBlank(keyword) ? null : keyword.toLowerCase();
+        List<MarkdownFileInfo> items = new ArrayList<>(size);
+        String nextCursor = null;
+        int scanned = 0;
+        MarkdownFileInfo lastScanned = null;
+        while (candidates.hasNext()) {
+            if (scanned == maxScan && lastScanned != null) {
+                // 达到扫描上限，下一页从最后检查的项之后继续
+                nextCursor = cursorOf(sort, lastScanned);
+                break;
+            }
+            MarkdownFileInfo info = candidates.next();
+            scanned++;
+            lastScanned = info;
+            if (StrUtil.isNotEmpty(prefix) && !info.name().startsWith(prefix)) {
+                continue;
+            }
+            if (lowerKeyword != null && !info.name().toLowerCase().contains(lowerKeyword)) {
+                continue;
+            }
+            if (items.size() == size) {
+                nextCursor = cursorOf(sort, items.get(items.size() - 1));
+                break;
+            }
+            items.add(withHash(info));
+        }
+        return new MarkdownFilePage(items, nextCursor, byName.size());
+    }
+
+    /**
+     * 所有文件名（按名称排序）
+     */
+    public List<String> names() {
+        return new ArrayList<>(byName.keySet());
+    }
+
+    public int size() {
+        return byName.size();
+    }
+
+    /**
+     * 重新读取一个文件的信息，文件不存在时从目录中移除
+     */
+    public synchronized void refresh(String name) {
+        if (!isMarkdown(name)) {
+            return;
+        }
+        Path file = dir.resolve(name);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                remove(name);
+                return;
+            }
+            MarkdownFileInfo previous = byName.get(name);
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            if (previous != null && previous.size() == attributes.size() && previous.lastModified() == lastModified) {
+                return;
+            }
+            replace(previous, new MarkdownFileInfo(name, attributes.size(), lastModified, null));
+        } catch (IOException e) {
+            remove(name);
+        }
+    }
+
+    private NavigableMap<String, MarkdownFileInfo> namesFrom(String prefix, String cursor) {
+        NavigableMap<String, MarkdownFileInfo> range = byName;
+        if (StrUtil.isNotEmpty(prefix)) {
+            range = range.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        }
+        if (StrUtil.isNotEmpty(cursor)) {
+            range = range.tailMap(cursor, false);
+        }
+        return range;
+    }
+
+    private NavigableSet<RecentKey> recentFrom(String cursor) {
+        if (StrUtil.isEmpty(cursor)) {
+            return byRecent;
+        }
+        int separator = cursor.indexOf(':');
+        try {
+            long lastModified = Long.parseLong(cursor.substring(0, separator));
+            return byRecent.tailSet(new RecentKey(lastModified, cursor.substring(separator + 1)), false);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("游标无效: " + cursor);
+        }
+    }
+
+    private static String cursorOf(Sort sort, MarkdownFileInfo info) {
+        return sort == Sort.RECENT ? info.lastModified() + ":" + info.name() : info.name();
+    }
+
+    /**
+     * 补上摘要
+     */
+    private MarkdownFileInfo withHash(MarkdownFileInfo info) {
+        if (info.sha256() != null) {
+            return info;
+        }
+        try {
+            String sha256 = DigestUtil.sha256Hex(dir.resolve(info.name()).toFile());
+            MarkdownFileInfo hashed = new MarkdownFileInfo(info.name(), info.size(), info.lastModified(), sha256);
+            // 计算期间文件没有变化时写回目录
+            byName.replace(info.name(), info, hashed);
+            return hashed;
+        } catch (IORuntimeException e) {
+            // 文件刚被删除，删除事件随后会把它移出目录
+            return info;
+        }
+    }
+
+    private void replace(MarkdownFileInfo previous, MarkdownFileInfo info) {
+        if (previous != null) {
+            byRecent.remove(new RecentKey(previous.lastModified(), previous.name()));
+        }
+        byName.put(info.name(), info);
+        byRecent.add(new RecentKey(info.lastModified(), info.name()));
+    }
+
+    private void remove(String name) {
+        MarkdownFileInfo previous = byName.remove(name);
+        if (previous != null) {
+            byRecent.remove(new RecentKey(previous.lastModified(), previous.name()));
+        }
+    }
+
+    private synchronized void rescan() throws IOException {
+        Set<String> present = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                present.add(name);
+                refresh(name);
+            }
+        }
+        for (String name : names()) {
+            if (!present.contains(name)) {
+                remove(name);
+            }
+        }
+    }
+
+    private void watch() {
+        WatchService service = watchService;
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    try {
+                        rescan();
+                    } catch (IOException e) {
+                        log.warn("Failed to rescan markdown directory {}", dir, e);
+                    }
+                } else if (event.context() instanceof Path path) {
+                    refresh(path.getFileName().toString());
+                }
+            }
+            if (!key.reset()) {
+                log.warn("Markdown directory {} is no longer watched", dir);
+                return;
+            }
+        }
+    }
+
+    private static boolean isMarkdown(String name) {
+        return name.endsWith(SUFFIX) && !name.startsWith(".");
+    }
+}
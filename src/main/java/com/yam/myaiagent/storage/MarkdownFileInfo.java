@@ -0,0 +1,12 @@
+package com.yam.myaiagent.storage;
+
+/**
+ * Markdown 文件目录中的一项
+ *
+ * @param name         文件名
+ * @param size         字节数
+ * @param lastModified 最后修改时间（毫秒）
+ * @param sha256       内容的 SHA-256（十六进制），列表时按需计算
+ */
+public record MarkdownFileInfo(String name, long size, long lastModified, String sha256) {
+}
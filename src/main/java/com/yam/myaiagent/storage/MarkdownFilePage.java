@@ -0,0 +1,13 @@
+package com.yam.myaiagent.storage;
+
+import java.util.List;
+
+/**
+ * Markdown 文件分页列表
+ *
+ * @param items      本页的文件
+ * @param nextCursor 下一页的游标，没有下一页时为 null；带过滤条件时本页不满也可能还有下一页
+ * @param total      目录中的文件总数（不考虑过滤条件）
+ */
+public record MarkdownFilePage(List<MarkdownFileInfo> items, String nextCursor, int total) {
+}
@@ -0,0 +1,21 @@
+package com.yam.myaiagent.storage;
+
+import java.nio.file.Path;
+
+/**
+ * 写入内容存储后的文件信息
+ *
+ * @param path         文件路径
+ * @param sha256       内容的 SHA-256（十六进制）
+ * @param size         字节数
+ * @param deduplicated 存储中是否已有相同内容（本次没有写入新的数据）
+ */
+public record StoredFile(Path path, String sha256, long size, boolean deduplicated) {
+
+    /**
+     * 强 ETag：内容相同则 ETag 相同
+     */
+    public String etag() {
+        return ContentStore.etagOf(sha256);
+    }
+}
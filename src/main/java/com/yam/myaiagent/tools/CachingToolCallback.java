@@ -0,0 +1,165 @@
+package com.yam.myaiagent.tools;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带结果缓存的工具调用装饰器
+ * <p>
+ * 以规范化后的 JSON 参数为键缓存工具结果（每个工具一个缓存，键中不需要再带工具名）：
+ * <ul>
+ *     <li>结果按策略中的有效期过期，数量超过上限时按 W-TinyLFU 淘汰</li>
+ *     <li>相同参数的并发调用只实际调用一次，其余调用等待同一个结果（single-flight）</li>
+ *     <li>调用失败（抛出异常或返回错误信息）和过大的结果不缓存</li>
+ * </ul>
+ */
+public class CachingToolCallback implements ToolCallback {
+
+    // 判断错误信息时检查的结果前缀长度
+    private static final int ERROR_MARKER_SCAN_LENGTH = 200;
+
+    private final ToolCallback delegate;
+
+    private final ToolCachePolicy policy;
+
+    private final Store store;
+
+    /**
+     * 缓存和统计，同名工具的多个装饰器实例共享
+     */
+    private static class Store {
+        private final AsyncCache<String, String> cache;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder uncached = new LongAdder();
+
+        Store(ToolCachePolicy policy) {
+            this.cache = Caffeine.newBuilder()
+                    .expireAfterWrite(policy.ttl())
+                    .maximumSize(policy.maxEntries())
+                    .recordStats()
+                    .buildAsync();
+        }
+    }
+
+    public CachingToolCallback(ToolCallback delegate, ToolCachePolicy policy) {
+        this(delegate, policy, new Store(policy));
+    }
+
+    private CachingToolCallback(ToolCallback delegate, ToolCachePolicy policy, Store store) {
+        this.delegate = delegate;
+        this.policy = policy;
+        this.store = store;
+    }
+
+    /**
+     * 包装另一个同名工具实例，共享缓存和统计
+     */
+    public CachingToolCallback withDelegate(ToolCallback newDelegate) {
+        return newDelegate == delegate ? this : new CachingToolCallback(newDelegate, policy, store);
+    }
+
+    public ToolCallback getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return cachedCall(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        // 带上下文的调用结果可能依赖上下文，不缓存
+        if (toolContext != null && !toolContext.getContext().isEmpty()) {
+            return delegate.call(toolInput, toolContext);
+        }
+        return cachedCall(toolInput, toolContext);
+    }
+
+    private String cachedCall(String toolInput, ToolContext toolContext) {
+        String key = ToolArguments.normalize(toolInput);
+        ConcurrentMap<String, CompletableFuture<String>> map = store.cache.asMap();
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = map.putIfAbsent(key, future);
+        if (existing != null) {
+            (existing.isDone() ? store.hits : store.coalesced).increment();
+            // 等待可以被中断，取消运行时不会卡在别人的调用上
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for tool call in progress", e);
+            } catch (ExecutionException e) {
+                // 进行中的调用失败，本次调用也失败
+                throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException
+                        : new IllegalStateException(e.getCause());
+            }
+        }
+        store.misses.increment();
+        String result;
+        try {
+            result = toolContext == null ? delegate.call(toolInput) : delegate.call(toolInput, toolContext);
+        } catch (Throwable e) {
+            // 包括 Error：必须结束这次调用并移出缓存，否则后续相同参数的调用会一直等待
+            map.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        // 先把结果交给等待中的调用，再决定是否保留在缓存中
+        future.complete(result);
+        if (!isCacheable(result)) {
+            store.uncached.increment();
+            map.remove(key, future);
+        }
+        return result;
+    }
+
+    private boolean isCacheable(String result) {
+        if (result == null || result.length() > policy.maxResultLength()) {
+            return false;
+        }
+        String head = result.substring(0, Math.min(result.length(), ERROR_MARKER_SCAN_LENGTH));
+        return policy.errorMarkers().stream().noneMatch(head::contains);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        store.cache.synchronous().invalidateAll();
+    }
+
+    /**
+     * 获取命中、合并、未命中等统计信息
+     */
+    public ToolCacheStats getStats() {
+        long hits = store.hits.sum();
+        long coalesced = store.coalesced.sum();
+        long misses = store.misses.sum();
+        long total = hits + coalesced + misses;
+        return new ToolCacheStats(store.cache.synchronous().estimatedSize(), hits, coalesced, misses,
+                store.uncached.sum(), total == 0 ? 0 : (double) (hits + coalesced) / total,
+                store.cache.synchronous().stats().evictionCount());
+    }
+}
@@ -1,20 +1,35 @@
 package com.yam.myaiagent.tools;
 
 import cn.hutool.core.io.FileUtil;
-import com.yam.myaiagent.constant.FileConstant;
+import com.yam.myaiagent.storage.ContentStore;
+import com.yam.myaiagent.storage.StoredFile;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * 文件操作工具类（提供文件读写功能）
+ * <p>
+ * 写入的文件通过内容存储记录摘要；file 目录中的文件可能被原地修改，存储为独立的副本
  */
 public class FileOperationTool {
 
-    private final String FILE_DIR = FileConstant.FILE_SAVE_DIR + "/file";
+    private static final String FILE_DIR = "file";
+
+    private final ContentStore contentStore;
+
+    public FileOperationTool() {
+        this(ContentStore.shared());
+    }
+
+    public FileOperationTool(ContentStore contentStore) {
+        this.contentStore = contentStore;
+    }
 
     @Tool(description = "Read content from a file")
     public String readFile(@ToolParam(description = "Name of a file to read") String fileName) {
-        String filePath = FILE_DIR + "/" + fileName;
+        String filePath = contentStore.getRoot().resolve(FILE_DIR) + "/" + fileName;
         try {
             return FileUtil.readUtf8String(filePath);
         } catch (Exception e) {
@@ -26,13 +41,9 @@ public class FileOperationTool {
     public String writeFile(@ToolParam(description = "Name of the file to write") String fileName,
                             @ToolParam(description = "Content to write to the file") String content
     ) {
-        String filePath = FILE_DIR + "/" + fileName;
-
         try {
-            // 创建目录
-            FileUtil.mkdir(FILE_DIR);
-            FileUtil.writeUtf8String(content, filePath);
-            return "File written successfully to: " + filePath;
+            StoredFile file = contentStore.put(FILE_DIR + "/" + fileName, content.getBytes(StandardCharsets.UTF_8));
+            return "File written successfully to: " + file.path();
         } catch (Exception e) {
             return "Error writing to file: " + e.getMessage();
         }
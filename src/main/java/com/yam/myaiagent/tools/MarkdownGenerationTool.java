@@ -7,7 +7,8 @@ package com.yam.myaiagent.tools;
 
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.json.JSONUtil;
-import com.yam.myaiagent.constant.FileConstant;
+import com.yam.myaiagent.storage.ContentStore;
+import com.yam.myaiagent.storage.StoredFile;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
@@ -26,6 +27,16 @@ public class MarkdownGenerationTool {
     // 得到项目启动的端口
     private static final String PORT = System.getProperty("server.port", "8123");
 
+    private final ContentStore contentStore;
+
+    public MarkdownGenerationTool() {
+        this(ContentStore.shared());
+    }
+
+    public MarkdownGenerationTool(ContentStore contentStore) {
+        this.contentStore = contentStore;
+    }
+
     @Tool(description = "Generate a Markdown file with given content and return file info", returnDirect = false)
     public String generateMarkdown(
             @ToolParam(description = "Name of the file to save the generated Markdown") String fileName,
@@ -35,21 +46,17 @@ public class MarkdownGenerationTool {
             fileName += ".md";
         }
 
-        String fileDir = FileConstant.FILE_SAVE_DIR + "/markdown";
-        String filePath = fileDir + "/" + fileName;
-
         try {
-            // 创建目录（如果不存在）
-            FileUtil.mkdir(fileDir);
-
             // 格式化 Markdown 内容（可选）
             String formattedContent = formatMarkdownContent(content);
 
-            // 将内容写入文件
-            FileUtil.writeString(formattedContent, filePath, StandardCharsets.UTF_8);
+            // 写入内容存储，文件内容没有变化时不重复写入
+            StoredFile storedFile = contentStore.put("markdown/" + fileName,
+                    formattedContent.getBytes(StandardCharsets.UTF_8));
+            String filePath = storedFile.path().toString();
 
             // 获取文件信息
-            File file = new File(filePath);
+            File file = storedFile.path().toFile();
             Map<String, Object> fileInfo = new HashMap<>();
             fileInfo.put("fileName", fileName);
             fileInfo.put("filePath", filePath);
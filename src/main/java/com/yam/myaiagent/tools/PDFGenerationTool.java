@@ -1,13 +1,8 @@
 package com.yam.myaiagent.tools;
 
-import cn.hutool.core.io.FileUtil;
-import com.itextpdf.kernel.font.PdfFont;
-import com.itextpdf.kernel.font.PdfFontFactory;
-import com.itextpdf.kernel.pdf.PdfDocument;
-import com.itextpdf.kernel.pdf.PdfWriter;
-import com.itextpdf.layout.Document;
-import com.itextpdf.layout.element.Paragraph;
-import com.yam.myaiagent.constant.FileConstant;
+import com.yam.myaiagent.pdf.PdfRenderService;
+import com.yam.myaiagent.storage.ContentStore;
+import com.yam.myaiagent.storage.StoredFile;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
@@ -18,34 +13,33 @@ import java.io.IOException;
  */
 public class PDFGenerationTool {
 
-    @Tool(description = "Generate a PDF file with given content", returnDirect = false)
+    private final ContentStore contentStore;
+
+    private final PdfRenderService renderService;
+
+    public PDFGenerationTool() {
+        this(ContentStore.shared(), PdfRenderService.shared());
+    }
+
+    public PDFGenerationTool(ContentStore contentStore) {
+        this(contentStore, PdfRenderService.shared());
+    }
+
+    public PDFGenerationTool(ContentStore contentStore, PdfRenderService renderService) {
+        this.contentStore = contentStore;
+        this.renderService = renderService;
+    }
+
+    @Tool(description = "Generate a PDF file with given content, Markdown headings, lists, quotes, code blocks and bold text are laid out accordingly",
+            returnDirect = false)
     public String generatePDF(
             @ToolParam(description = "Name of the file to save the generated PDF") String fileName,
-            @ToolParam(description = "Content to be included in the PDF") String content) {
-        String fileDir = FileConstant.FILE_SAVE_DIR + "/pdf";
-        String filePath = fileDir + "/" + fileName;
+            @ToolParam(description = "Content to be included in the PDF, plain text or Markdown") String content) {
         try {
-            // 创建目录
-            FileUtil.mkdir(fileDir);
-            // 创建 PdfWriter 和 PdfDocument 对象
-            try (PdfWriter writer = new PdfWriter(filePath);
-                 PdfDocument pdf = new PdfDocument(writer);
-                 Document document = new Document(pdf)) {
-                // 自定义字体（需要人工下载字体文件到特定目录）
-//                String fontPath = Paths.get("src/main/resources/static/fonts/simsun.ttf")
-//                        .toAbsolutePath().toString();
-//                PdfFont font = PdfFontFactory.createFont(fontPath,
-//                        PdfFontFactory.EmbeddingStrategy.PREFER_EMBEDDED);
-                // 使用内置中文字体
-                PdfFont font = PdfFontFactory.createFont("STSongStd-Light", "UniGB-UCS2-H");
-                document.setFont(font);
-                // 创建段落
-                Paragraph paragraph = new Paragraph(content);
-                // 添加段落并关闭文档
-                document.add(paragraph);
-            }
-            return "PDF generated successfully to: " + filePath;
-        } catch (IOException e) {
+            // 流式写入内容存储，已有相同内容时不重复写入
+            StoredFile storedFile = renderService.render(content, contentStore, "pdf/" + fileName);
+            return "PDF generated successfully to: " + storedFile.path();
+        } catch (IOException | IllegalArgumentException e) {
             return "Error generating PDF: " + e.getMessage();
         }
     }
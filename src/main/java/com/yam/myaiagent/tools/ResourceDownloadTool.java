@@ -1,30 +1,542 @@
 package com.yam.myaiagent.tools;
 
 import cn.hutool.core.io.FileUtil;
-import cn.hutool.http.HttpUtil;
-import com.yam.myaiagent.constant.FileConstant;
+import cn.hutool.core.util.StrUtil;
+import com.yam.myaiagent.http.HttpStatusException;
+import com.yam.myaiagent.http.PooledHttpClient;
+import com.yam.myaiagent.storage.ContentStore;
+import com.yam.myaiagent.storage.StoredFile;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
-import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * 资源下载工具
+ * <p>
+ * 响应体通过 {@link FileChannel#transferFrom} 分段直接写入文件，不在内存中缓存整个资源：
+ * <ul>
+ *     <li>大小限制：响应头声明的长度或实际写入的字节数超过 maxBytes 时放弃下载并删除临时文件</li>
+ *     <li>断点续传：下载先写入 .part 临时文件；单次下载超过 maxDuration 时保留临时文件并返回，
+ *     再次调用时用 Range 请求继续下载（服务端不支持 Range 或资源已变化时重新下载）</li>
+ *     <li>分块并发下载：资源超过 chunkThreshold 且服务端支持 Range 时拆成多个分块并发下载，各自写入 .chunks 文件的不同位置；
+ *     各分块已写入的位置记录在 .chunks.state 中，暂停或进程退出后只续传未完成的部分，全部完成后才改名为 .part</li>
+ *     <li>内容去重：下载完成后移入 {@link ContentStore}，已有相同内容时不重复占用磁盘</li>
+ * </ul>
  */
+@Slf4j
 public class ResourceDownloadTool {
 
+    // 默认最大下载字节数
+    private static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+    // 默认使用分块并发下载的最小字节数
+    private static final long DEFAULT_CHUNK_THRESHOLD = 16L * 1024 * 1024;
+    // 默认分块数
+    private static final int DEFAULT_CHUNKS = 4;
+    // 默认单次调用最长下载时间
+    private static final Duration DEFAULT_MAX_DURATION = Duration.ofMinutes(5);
+    // 每次 transferFrom 的最大字节数，每段之间检查大小限制和时间限制
+    private static final long TRANSFER_STEP = 1024 * 1024;
+    // 输出进度日志的间隔字节数
+    private static final long PROGRESS_LOG_INTERVAL = 32L * 1024 * 1024;
+
+    private static final String DOWNLOAD_DIR = "download";
+
+    private static final String PART_SUFFIX = ".part";
+    // 记录临时文件对应资源版本（ETag 或 Last-Modified）的文件，续传时用于 If-Range
+    private static final String VALIDATOR_SUFFIX = ".part.validator";
+    // 分块下载的目标文件，各分块乱序写入，完成前不会被当作连续的 .part 续传
+    private static final String CHUNKS_SUFFIX = ".chunks";
+    // 分块下载进度：第一行是资源长度，之后每行是一个分块的起始位置、结束位置和已写入的位置
+    private static final String CHUNKS_STATE_SUFFIX = ".chunks.state";
+    // 每个分块写入该字节数后保存一次进度
+    private static final long CHUNK_STATE_SAVE_INTERVAL = 8L * 1024 * 1024;
+
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    // 分块下载使用的线程池，每个分块一个虚拟线程
+    private static final ExecutorService CHUNK_EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("download-chunk-", 0).factory());
+
+    private final PooledHttpClient httpClient;
+
+    private final ContentStore contentStore;
+
+    private final Path downloadDir;
+
+    private final long maxBytes;
+
+    private final long chunkThreshold;
+
+    private final int chunks;
+
+    private final Duration maxDuration;
+
+    public ResourceDownloadTool() {
+        this(PooledHttpClient.shared(), ContentStore.shared(), DEFAULT_MAX_BYTES,
+                DEFAULT_CHUNK_THRESHOLD, DEFAULT_CHUNKS, DEFAULT_MAX_DURATION);
+    }
+
+    public ResourceDownloadTool(PooledHttpClient httpClient, ContentStore contentStore, long maxBytes,
+                                long chunkThreshold, int chunks, Duration maxDuration) {
+        this.httpClient = httpClient;
+        this.contentStore = contentStore;
+        this.downloadDir = contentStore.getRoot().resolve(DOWNLOAD_DIR);
+        this.maxBytes = maxBytes;
+        this.chunkThreshold = chunkThreshold;
+        this.chunks = chunks;
+        this.maxDuration = maxDuration;
+    }
+
     @Tool(description = "Download a resource from a given URL")
     public String downloadResource(@ToolParam(description = "URL of the resource to download") String url, @ToolParam(description = "Name of the file to save the downloaded resource") String fileName) {
-        String fileDir = FileConstant.FILE_SAVE_DIR + "/download";
-        String filePath = fileDir + "/" + fileName;
         try {
+            if (StrUtil.isBlank(fileName) || !fileName.equals(FileUtil.getName(fileName))
+                    || fileName.equals(".") || fileName.equals("..")) {
+                return "Error downloading resource: invalid file name " + fileName;
+            }
             // 创建目录
-            FileUtil.mkdir(fileDir);
-            // 使用 Hutool 的 downloadFile 方法下载资源
-            HttpUtil.downloadFile(url, new File(filePath));
-            return "Resource downloaded successfully to: " + filePath;
+            FileUtil.mkdir(downloadDir.toFile());
+            Path part = downloadDir.resolve(fileName + PART_SUFFIX);
+            long deadline = System.nanoTime() + maxDuration.toNanos();
+            boolean complete;
+            if (Files.exists(siblingOf(part, CHUNKS_STATE_SUFFIX))) {
+                complete = resumeChunks(url, part, deadline);
+            } else if (Files.exists(part) && Files.size(part) > 0) {
+                complete = resume(url, part, deadline);
+            } else {
+                complete = download(url, part, deadline);
+            }
+            if (!complete) {
+                return "Download paused after " + maxDuration.toSeconds() + "s with " + savedBytes(part)
+                        + " bytes saved; call the tool again with the same arguments to resume";
+            }
+            Files.deleteIfExists(downloadDir.resolve(fileName + VALIDATOR_SUFFIX));
+            // 移入内容存储，已有相同内容时不占用新的磁盘空间
+            StoredFile storedFile = contentStore.put(DOWNLOAD_DIR + "/" + fileName, part);
+            return "Resource downloaded successfully to: " + storedFile.path()
+                    + (storedFile.deduplicated() ? " (same content already stored, no extra disk used)" : "");
         } catch (Exception e) {
             return "Error downloading resource: " + e.getMessage();
         }
     }
+
+    /**
+     * 全新下载：先用 HEAD 请求获取长度，能分块时并发下载，否则单连接下载
+     *
+     * @return 是否下载完成（false 表示超时暂停，临时文件已保留）
+     */
+    private boolean download(String url, Path part, long deadline) throws IOException {
+        Optional<HttpHeaders> head = head(url);
+        OptionalLong length = head.map(headers -> headers.firstValueAsLong("Content-Length"))
+                .orElse(OptionalLong.empty());
+        if (length.isPresent()) {
+            checkSize(length.getAsLong());
+        }
+        boolean acceptsRanges = head.flatMap(headers -> headers.firstValue("Accept-Ranges"))
+                .filter(value -> value.equalsIgnoreCase("bytes"))
+                .isPresent();
+        if (acceptsRanges && length.isPresent() && length.getAsLong() >= chunkThreshold && chunks > 1) {
+            return downloadChunks(url, part, length.getAsLong(), head.get(), deadline);
+        }
+        HttpResponse<InputStream> response = httpClient.send(httpClient.newGet(url, Map.of()),
+                HttpResponse.BodyHandlers.ofInputStream());
+        return writeResponse(url, response, part, 0, deadline);
+    }
+
+    /**
+     * 断点续传：从临时文件末尾继续下载；资源已变化或服务端不支持 Range 时重新下载
+     */
+    private boolean resume(String url, Path part, long deadline) throws IOException {
+        long offset = Files.size(part);
+        Path validatorFile = siblingOf(part, VALIDATOR_SUFFIX);
+        HttpRequest.Builder request = httpClient.newGet(url, Map.of("Range", "bytes=" + offset + "-"));
+        if (Files.exists(validatorFile)) {
+            request.setHeader("If-Range", Files.readString(validatorFile).trim());
+        }
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() == 416) {
+            // 请求范围无效（例如资源已变小），重新下载
+            response.body().close();
+            Files.delete(part);
+            return download(url, part, deadline);
+        }
+        if (response.statusCode() == 206) {
+            Matcher matcher = CONTENT_RANGE_PATTERN.matcher(response.headers().firstValue("Content-Range").orElse(""));
+            if (!matcher.matches() || Long.parseLong(matcher.group(1)) != offset) {
+                response.body().close();
+                throw new IOException("Unexpected Content-Range in resumed download of " + url);
+            }
+            if (!matcher.group(3).equals("*")) {
+                checkSize(Long.parseLong(matcher.group(3)));
+            }
+            log.info("Resuming download of {} from byte {}", url, offset);
+            return writeResponse(url, response, part, offset, deadline);
+        }
+        // 200：服务端返回了完整资源，从头写入
+        log.info("Server ignored range request for {}, restarting download", url);
+        return writeResponse(url, response, part, 0, deadline);
+    }
+
+    /**
+     * 把响应体从 offset 开始写入临时文件
+     */
+    private boolean writeResponse(String url, HttpResponse<InputStream> response, Path part, long offset,
+                                  long deadline) throws IOException {
+        try (InputStream in = response.body()) {
+            int status = response.statusCode();
+            if (status / 100 != 2) {
+                throw new HttpStatusException(status, url);
+            }
+            OptionalLong length = response.headers().firstValueAsLong("Content-Length");
+            if (length.isPresent()) {
+                checkSize(offset + length.getAsLong());
+            }
+            saveValidator(response.headers(), part);
+            try (ReadableByteChannel source = new InputStreamChannel(in);
+                 FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // 从头写入时清空旧内容
+                channel.truncate(offset);
+                long position = offset;
+                long nextLog = offset + PROGRESS_LOG_INTERVAL;
+                while (true) {
+                    long transferred = channel.transferFrom(source, position, TRANSFER_STEP);
+                    if (transferred == 0) {
+                        return true;
+                    }
+                    position += transferred;
+                    if (position > maxBytes) {
+                        channel.close();
+                        Files.deleteIfExists(part);
+                        throw new IOException("Resource exceeds the size limit of " + maxBytes + " bytes");
+                    }
+                    if (position >= nextLog) {
+                        log.info("Downloading {}: {} MB{}", url, position >> 20, length.isPresent()
+                                ? " / " + ((offset + length.getAsLong()) >> 20) + " MB" : "");
+                        nextLog += PROGRESS_LOG_INTERVAL;
+                    }
+                    if (System.nanoTime() > deadline) {
+                        log.info("Download of {} paused at byte {}", url, position);
+                        return false;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 分块并发下载：先保存资源版本和各分块的进度，再并发下载
+     */
+    private boolean downloadChunks(String url, Path part, long length, HttpHeaders head, long deadline)
+            throws IOException {
+        log.info("Downloading {} ({} bytes) in {} chunks", url, length, chunks);
+        // 续传各分块时用 If-Range 确认资源没有变化
+        saveValidator(head, part);
+        long chunkSize = (length + chunks - 1) / chunks;
+        List<Chunk> ranges = new ArrayList<>();
+        for (long start = 0; start < length; start += chunkSize) {
+            ranges.add(new Chunk(start, Math.min(length, start + chunkSize) - 1, start));
+        }
+        try (FileChannel channel = FileChannel.open(siblingOf(part, CHUNKS_SUFFIX), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // 预先占满长度，各分块的 transferFrom 不会因为位置超过文件末尾而不写入
+            channel.write(ByteBuffer.allocate(1), length - 1);
+        }
+        saveChunkState(part, length, ranges);
+        return transferChunks(url, part, length, ranges, deadline);
+    }
+
+    /**
+     * 继续未完成的分块下载，进度文件无效时重新下载
+     */
+    private boolean resumeChunks(String url, Path part, long deadline) throws IOException {
+        Path chunksFile = siblingOf(part, CHUNKS_SUFFIX);
+        Path stateFile = siblingOf(part, CHUNKS_STATE_SUFFIX);
+        List<Chunk> ranges = new ArrayList<>();
+        long length;
+        try {
+            List<String> lines = Files.readAllLines(stateFile);
+            length = Long.parseLong(lines.get(0).trim());
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.trim().split(" ");
+                ranges.add(new Chunk(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+            }
+            if (ranges.isEmpty() || !Files.exists(chunksFile) || Files.size(chunksFile) != length) {
+                throw new IOException("Chunked download state does not match " + chunksFile);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.info("Discarding chunked download state of {}: {}", url, e.getMessage());
+            discardChunks(part);
+            return download(url, part, deadline);
+        }
+        log.info("Resuming chunked download of {} ({} of {} bytes saved)", url, savedBytes(part), length);
+        return transferChunks(url, part, length, ranges, deadline);
+    }
+
+    /**
+     * 并发下载未完成的分块，全部完成后把 .chunks 改名为 .part
+     *
+     * @return 是否下载完成（false 表示超时暂停，进度已保存）
+     */
+    private boolean transferChunks(String url, Path part, long length, List<Chunk> ranges, long deadline)
+            throws IOException {
+        Path validatorFile = siblingOf(part, VALIDATOR_SUFFIX);
+        String validator = Files.exists(validatorFile) ? Files.readString(validatorFile).trim() : null;
+        boolean complete = true;
+        try (FileChannel channel = FileChannel.open(siblingOf(part, CHUNKS_SUFFIX), StandardOpenOption.WRITE)) {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (Chunk chunk : ranges) {
+                if (chunk.position <= chunk.to) {
+                    futures.add(CHUNK_EXECUTOR.submit(
+                            () -> downloadChunk(url, validator, channel, chunk, part, length, ranges, deadline)));
+                }
+            }
+            try {
+                for (Future<Boolean> future : futures) {
+                    complete &= future.get();
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                futures.forEach(future -> future.cancel(true));
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                if (e.getCause() instanceof ResourceChangedException) {
+                    // 已下载的分块属于旧版本，不能再使用
+                    discardChunks(part);
+                } else {
+                    // 保留已完成的部分，再次调用时继续下载
+                    saveChunkState(part, length, ranges);
+                }
+                throw new IOException("Chunked download failed: " + (e.getCause() == null ? e : e.getCause())
+                        .getMessage(), e);
+            }
+        }
+        if (!complete) {
+            saveChunkState(part, length, ranges);
+            log.info("Chunked download of {} paused with {} bytes saved", url, savedBytes(part));
+            return false;
+        }
+        // 先删除进度再改名：中途退出时最多重新下载，不会把未完成的文件当作 .part
+        Files.delete(siblingOf(part, CHUNKS_STATE_SUFFIX));
+        Files.move(siblingOf(part, CHUNKS_SUFFIX), part, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /**
+     * 下载一个分块的剩余部分
+     *
+     * @return 是否下载完成（false 表示超时暂停）
+     */
+    private boolean downloadChunk(String url, String validator, FileChannel channel, Chunk chunk, Path part,
+                                  long length, List<Chunk> ranges, long deadline) throws IOException {
+        HttpRequest.Builder request = httpClient.newGet(url,
+                Map.of("Range", "bytes=" + chunk.position + "-" + chunk.to));
+        if (validator != null) {
+            request.setHeader("If-Range", validator);
+        }
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream in = response.body(); ReadableByteChannel source = new InputStreamChannel(in)) {
+            if (response.statusCode() == 200) {
+                throw new ResourceChangedException("Resource " + url + " changed during chunked download");
+            }
+            Matcher matcher = CONTENT_RANGE_PATTERN.matcher(response.headers().firstValue("Content-Range").orElse(""));
+            if (response.statusCode() != 206 || !matcher.matches()
+                    || Long.parseLong(matcher.group(1)) != chunk.position) {
+                throw new IOException("Range request for bytes " + chunk.position + "-" + chunk.to + " returned "
+                        + response.statusCode());
+            }
+            long position = chunk.position;
+            long nextSave = position + CHUNK_STATE_SAVE_INTERVAL;
+            while (position <= chunk.to) {
+                long transferred = channel.transferFrom(source, position,
+                        Math.min(TRANSFER_STEP, chunk.to - position + 1));
+                if (transferred == 0) {
+                    throw new IOException("Chunk " + chunk.from + "-" + chunk.to + " ended early at byte " + position);
+                }
+                position += transferred;
+                chunk.position = position;
+                if (position >= nextSave) {
+                    saveChunkState(part, length, ranges);
+                    nextSave = position + CHUNK_STATE_SAVE_INTERVAL;
+                }
+                if (position <= chunk.to && System.nanoTime() > deadline) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 原子地重写进度文件；记录的位置不超过已写入的位置，中途退出后续传的数据都是完整的
+     */
+    private static void saveChunkState(Path part, long length, List<Chunk> ranges) throws IOException {
+        synchronized (ranges) {
+            StringBuilder state = new StringBuilder().append(length).append('\n');
+            for (Chunk chunk : ranges) {
+                state.append(chunk.from).append(' ').append(chunk.to).append(' ').append(chunk.position).append('\n');
+            }
+            Path stateFile = siblingOf(part, CHUNKS_STATE_SUFFIX);
+            Path temp = siblingOf(part, CHUNKS_STATE_SUFFIX + ".tmp");
+            Files.writeString(temp, state);
+            Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static void discardChunks(Path part) throws IOException {
+        Files.deleteIfExists(siblingOf(part, CHUNKS_STATE_SUFFIX));
+        Files.deleteIfExists(siblingOf(part, CHUNKS_SUFFIX));
+        Files.deleteIfExists(siblingOf(part, VALIDATOR_SUFFIX));
+    }
+
+    /**
+     * 已保存的字节数：分块下载按进度文件统计，否则为 .part 的大小
+     */
+    private static long savedBytes(Path part) throws IOException {
+        Path stateFile = siblingOf(part, CHUNKS_STATE_SUFFIX);
+        if (!Files.exists(stateFile)) {
+            return Files.exists(part) ? Files.size(part) : 0;
+        }
+        long saved = 0;
+        List<String> lines = Files.readAllLines(stateFile);
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.trim().split(" ");
+            saved += Long.parseLong(fields[2]) - Long.parseLong(fields[0]);
+        }
+        return saved;
+    }
+
+    /**
+     * HEAD 请求获取资源长度和是否支持 Range，失败时返回空
+     */
+    private Optional<HttpHeaders> head(String url) {
+        try {
+            HttpResponse<Void> response = httpClient.send(
+                    httpClient.newGet(url, Map.of()).method("HEAD", HttpRequest.BodyPublishers.noBody()),
+                    HttpResponse.BodyHandlers.discarding());
+            return response.statusCode() / 100 == 2 ? Optional.of(response.headers()) : Optional.empty();
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void checkSize(long length) throws IOException {
+        if (length > maxBytes) {
+            throw new IOException("Resource size " + length + " exceeds the limit of " + maxBytes + " bytes");
+        }
+    }
+
+    /**
+     * 记录资源版本，续传时通过 If-Range 确认资源没有变化
+     */
+    private static void saveValidator(HttpHeaders headers, Path part) throws IOException {
+        Path validatorFile = siblingOf(part, VALIDATOR_SUFFIX);
+        Optional<String> validator = headers.firstValue("ETag")
+                .filter(etag -> !etag.startsWith("W/"))
+                .or(() -> headers.firstValue("Last-Modified"));
+        if (validator.isPresent()) {
+            Files.writeString(validatorFile, validator.get());
+        } else {
+            Files.deleteIfExists(validatorFile);
+        }
+    }
+
+    /**
+     * 与临时文件同名、后缀不同的文件，例如 a.bin.part -> a.bin.chunks
+     */
+    private static Path siblingOf(Path part, String suffix) {
+        String name = part.getFileName().toString();
+        return part.resolveSibling(name.substring(0, name.length() - PART_SUFFIX.length()) + suffix);
+    }
+
+    /**
+     * 一个分块：起止位置（含）和已连续写入到的位置
+     */
+    private static final class Chunk {
+
+        private final long from;
+
+        private final long to;
+
+        private volatile long position;
+
+        Chunk(long from, long to, long position) {
+            this.from = from;
+            this.to = to;
+            this.position = position;
+        }
+    }
+
+    /**
+     * 分块下载期间资源发生变化（If-Range 不匹配，服务端返回了完整资源）
+     */
+    private static class ResourceChangedException extends IOException {
+
+        ResourceChangedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 把输入流适配成 {@link ReadableByteChannel}，供 {@link FileChannel#transferFrom} 使用
+     * <p>
+     * {@link java.nio.channels.Channels#newChannel(InputStream)} 在 synchronized 块中阻塞读取，会把虚拟线程固定在载体线程上；
+     * 载体线程很少时，HttpClient 用来推送响应体的虚拟线程得不到调度，读取就会一直等下去。
+     */
+    private static class InputStreamChannel implements ReadableByteChannel {
+
+        private final InputStream in;
+
+        private final byte[] buffer = new byte[64 * 1024];
+
+        private boolean open = true;
+
+        InputStreamChannel(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int read = in.read(buffer, 0, Math.min(buffer.length, dst.remaining()));
+            if (read > 0) {
+                dst.put(buffer, 0, read);
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            in.close();
+        }
+    }
 }
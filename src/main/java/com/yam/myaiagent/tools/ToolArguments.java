@@ -0,0 +1,33 @@
+package com.yam.myaiagent.tools;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONConfig;
+import cn.hutool.json.JSONUtil;
+
+/**
+ * 工具调用参数的处理
+ */
+public final class ToolArguments {
+
+    private ToolArguments() {
+    }
+
+    /**
+     * 规范化工具调用的 JSON 参数：键按字典序排列、去掉多余空白，内容相同的参数得到相同的字符串。
+     * 无法解析为 JSON 时返回去掉首尾空白的原始参数。
+     *
+     * @param arguments 大模型生成的参数
+     * @return 规范化后的参数
+     */
+    public static String normalize(String arguments) {
+        if (StrUtil.isBlank(arguments)) {
+            return "{}";
+        }
+        String trimmed = arguments.trim();
+        try {
+            return JSONUtil.parse(trimmed, JSONConfig.create().setNatureKeyComparator()).toString();
+        } catch (Exception e) {
+            return trimmed;
+        }
+    }
+}
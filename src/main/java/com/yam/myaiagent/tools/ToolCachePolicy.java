@@ -0,0 +1,19 @@
+package com.yam.myaiagent.tools;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 单个工具的结果缓存策略
+ *
+ * @param ttl             结果写入后的有效期
+ * @param maxEntries      最多缓存的结果数
+ * @param maxResultLength 超过该长度的结果不缓存
+ * @param errorMarkers    结果开头（前 200 个字符）包含这些文本时视为调用失败，不缓存
+ */
+public record ToolCachePolicy(Duration ttl, long maxEntries, int maxResultLength, List<String> errorMarkers) {
+
+    public ToolCachePolicy(Duration ttl, long maxEntries, int maxResultLength, String... errorMarkers) {
+        this(ttl, maxEntries, maxResultLength, List.of(errorMarkers));
+    }
+}
@@ -0,0 +1,16 @@
+package com.yam.myaiagent.tools;
+
+/**
+ * 工具结果缓存统计信息
+ *
+ * @param entries        当前缓存的结果数（估算值）
+ * @param hitCount       命中已缓存结果的次数
+ * @param coalescedCount 等待相同参数的进行中调用、合并为一次调用的次数
+ * @param missCount      实际调用工具的次数
+ * @param uncachedCount  调用失败或结果过大、没有缓存的次数
+ * @param hitRate        没有实际调用工具的比例
+ * @param evictionCount  因容量或过期被淘汰的结果数
+ */
+public record ToolCacheStats(long entries, long hitCount, long coalescedCount, long missCount, long uncachedCount,
+                             double hitRate, long evictionCount) {
+}
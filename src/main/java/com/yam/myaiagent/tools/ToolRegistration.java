@@ -6,6 +6,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.Map;
+
 /**
  * 集中的工具注册类
  */
@@ -13,8 +16,26 @@ import org.springframework.context.annotation.Configuration;
 public class ToolRegistration {
 
 
+    /**
+     * 远程查询类工具的结果缓存：相同参数在有效期内直接复用结果，不再请求远程接口
+     */
+    @Bean
+    public ToolResultCache toolResultCache() {
+        return new ToolResultCache(Map.of(
+                "searchWeb", new ToolCachePolicy(Duration.ofMinutes(30), 1000, 64 * 1024,
+                        "Error searching", "Search failed"),
+                "searchWeather", new ToolCachePolicy(Duration.ofMinutes(10), 500, 16 * 1024,
+                        "查询失败", "请求天气API失败", "查询天气时发生错误"),
+                "scrapeWebPage", new ToolCachePolicy(Duration.ofMinutes(10), 500, 16 * 1024,
+                        "Error scraping"),
+                // MCP 图片搜索服务提供的工具
+                "searchImage", new ToolCachePolicy(Duration.ofHours(1), 1000, 64 * 1024,
+                        "Error search image")
+        ));
+    }
+
     @Bean
-    public ToolCallback[] allTools() {
+    public ToolCallback[] allTools(ToolResultCache toolResultCache) {
         FileOperationTool fileOperationTool = new FileOperationTool();
         WebSearchTool webSearchTool = new WebSearchTool();
         WebScrapingTool webScrapingTool = new WebScrapingTool();
@@ -25,7 +46,7 @@ public class ToolRegistration {
         WeatherSearchTool weatherSearchTool = new WeatherSearchTool();
         TerminateTool terminateTool = new TerminateTool();
 //        ShowFileDownloadURLTool showFileDownloadURLTool = new ShowFileDownloadURLTool();
-        return ToolCallbacks.from(
+        return toolResultCache.decorate(ToolCallbacks.from(
 //                showFileDownloadURLTool,
                 weatherSearchTool,
                 markdownGenerationTool,
@@ -36,6 +57,6 @@ public class ToolRegistration {
                 terminalOperationTool,
                 pdfGenerationTool,
                 terminateTool
-        );
+        ));
     }
 }
@@ -0,0 +1,66 @@
+package com.yam.myaiagent.tools;
+
+import org.springframework.ai.model.function.FunctionCallback;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 工具结果缓存
+ * <p>
+ * 按工具名配置缓存策略，为配置了策略的工具套上 {@link CachingToolCallback}，其余工具原样返回。
+ * 同名工具只有一份缓存：MCP 客户端每次获取工具都会创建新的回调实例，它们共享同一份缓存和统计。
+ */
+public class ToolResultCache {
+
+    // 工具名 -> 缓存策略
+    private final Map<String, ToolCachePolicy> policies;
+
+    // 工具名 -> 最近一次创建的装饰器
+    private final Map<String, CachingToolCallback> callbacks = new ConcurrentHashMap<>();
+
+    public ToolResultCache(Map<String, ToolCachePolicy> policies) {
+        this.policies = Map.copyOf(policies);
+    }
+
+    /**
+     * 为配置了缓存策略的工具加上结果缓存
+     */
+    public ToolCallback decorate(ToolCallback tool) {
+        String name = tool.getToolDefinition().name();
+        ToolCachePolicy policy = policies.get(name);
+        if (policy == null) {
+            return tool;
+        }
+        return callbacks.compute(name, (key, existing) -> existing == null
+                ? new CachingToolCallback(tool, policy)
+                : existing.withDelegate(tool));
+    }
+
+    public ToolCallback[] decorate(ToolCallback[] tools) {
+        return Arrays.stream(tools).map(this::decorate).toArray(ToolCallback[]::new);
+    }
+
+    /**
+     * 包装工具提供者（例如 MCP 客户端），每次获取到的工具都加上结果缓存；
+     * 只在使用处包装，注册为 Bean 的提供者保持原样
+     */
+    public ToolCallbackProvider decorate(ToolCallbackProvider provider) {
+        return () -> Arrays.stream(provider.getToolCallbacks())
+                .map(callback -> callback instanceof ToolCallback tool ? decorate(tool) : callback)
+                .toArray(FunctionCallback[]::new);
+    }
+
+    /**
+     * 获取各工具的缓存统计信息
+     */
+    public Map<String, ToolCacheStats> getStats() {
+        Map<String, ToolCacheStats> stats = new TreeMap<>();
+        callbacks.forEach((name, callback) -> stats.put(name, callback.getStats()));
+        return stats;
+    }
+}
@@ -1,12 +1,13 @@
 package com.yam.myaiagent.tools;
 
-import cn.hutool.http.HttpRequest;
-import cn.hutool.http.HttpResponse;
+import cn.hutool.core.util.URLUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.yam.myaiagent.http.PooledHttpClient;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
+import java.net.http.HttpResponse;
 import java.util.List;
 import java.util.Map;
 
@@ -20,13 +21,13 @@ public class WeatherSearchTool {
             @ToolParam(description = "the name of search city") String city) {
 
         // 构建请求URL
-        String url = String.format("https://api.pearktrue.cn/api/weather/?city=%s&id=1", city);
+        String url = String.format("https://api.pearktrue.cn/api/weather/?city=%s&id=1", URLUtil.encode(city));
 
         try {
-            // 发送GET请求
-            HttpResponse response = HttpRequest.get(url).execute();
+            // 发送GET请求（共享连接池，超时、失败重试）
+            HttpResponse<String> response = PooledHttpClient.shared().get(url);
 
-            if (response.isOk()) {
+            if (response.statusCode() / 100 == 2) {
                 String body = response.body();
                 JSONObject json = JSONUtil.parseObj(body);
 
@@ -52,7 +53,7 @@ public class WeatherSearchTool {
                     return "查询失败: " + json.getStr("msg");
                 }
             } else {
-                return "请求天气API失败，状态码: " + response.getStatus();
+                return "请求天气API失败，状态码: " + response.statusCode();
             }
         } catch (Exception e) {
             return "查询天气时发生错误: " + e.getMessage();
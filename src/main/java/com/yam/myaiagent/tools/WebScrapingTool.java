@@ -1,22 +1,225 @@
 package com.yam.myaiagent.tools;
 
+import cn.hutool.core.util.StrUtil;
+import com.yam.myaiagent.http.HttpStatusException;
+import com.yam.myaiagent.http.PooledHttpClient;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Elements;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  * 网页抓取工具
+ * <p>
+ * 返回网页正文的可读文本，而不是完整的 HTML，内存和 token 开销都有上限：
+ * <ol>
+ *     <li>以流的方式读取响应体，最多读取 maxBodyBytes 字节，超出部分直接丢弃</li>
+ *     <li>去掉脚本、样式、导航、页眉页脚、广告等与正文无关的元素</li>
+ *     <li>指定了 CSS 选择器时只提取匹配的元素；否则优先使用 article、main，再按段落文本密度找出正文所在的元素</li>
+ *     <li>保留标题、段落、列表的结构输出纯文本，超过 maxOutputChars 个字符的部分截断</li>
+ * </ol>
  */
 public class WebScrapingTool {
 
-    @Tool(description = "Scrape the content of a web page")
-    public String scrapeWebPage(@ToolParam(description = "URL of the web page to scrape") String url) {
+    // 默认最多读取的响应体字节数
+    private static final int DEFAULT_MAX_BODY_BYTES = 2 * 1024 * 1024;
+    // 默认最多返回的字符数
+    private static final int DEFAULT_MAX_OUTPUT_CHARS = 8000;
+    // 正文元素的文本至少占全文的比例，否则使用整个 body
+    private static final double MIN_MAIN_CONTENT_RATIO = 0.25;
+
+    // 不包含可读文本的元素
+    private static final String NON_TEXT_SELECTOR = "script, style, noscript, template, iframe, svg, canvas";
+
+    // 与正文无关的元素
+    private static final String BOILERPLATE_SELECTOR = String.join(",",
+            "form", "button", "input", "select", "nav", "header", "footer", "aside",
+            "[role=navigation]", "[role=banner]", "[role=contentinfo]", "[aria-hidden=true]", "[hidden]",
+            "[class~=(?i)(^|[\\s_-])(ad|advert|banner|cookie|comment|share|social|sidebar|related|breadcrumb)s?([\\s_-]|$)]",
+            "[id~=(?i)(^|[\\s_-])(ad|advert|banner|cookie|comment|share|social|sidebar|related|breadcrumb)s?([\\s_-]|$)]");
+
+    // 输出时需要换行的块级元素
+    private static final Set<String> BLOCK_TAGS = Set.of("p", "div", "section", "article", "main", "br", "li",
+            "ul", "ol", "dl", "dt", "dd", "table", "tr", "pre", "blockquote", "figure", "figcaption",
+            "h1", "h2", "h3", "h4", "h5", "h6", "hr");
+
+    private static final Pattern CHARSET_PATTERN = Pattern.compile("(?i)charset=\"?([^;\"\\s]+)");
+
+    private final PooledHttpClient httpClient;
+
+    private final int maxBodyBytes;
+
+    private final int maxOutputChars;
+
+    public WebScrapingTool() {
+        this(PooledHttpClient.shared(), DEFAULT_MAX_BODY_BYTES, DEFAULT_MAX_OUTPUT_CHARS);
+    }
+
+    public WebScrapingTool(PooledHttpClient httpClient, int maxBodyBytes, int maxOutputChars) {
+        this.httpClient = httpClient;
+        this.maxBodyBytes = maxBodyBytes;
+        this.maxOutputChars = maxOutputChars;
+    }
+
+    public String scrapeWebPage(String url) {
+        return scrapeWebPage(url, null);
+    }
+
+    @Tool(description = "Scrape the readable main content of a web page as plain text")
+    public String scrapeWebPage(@ToolParam(description = "URL of the web page to scrape") String url,
+                                @ToolParam(description = "Optional CSS selector to extract only matching elements, e.g. 'article' or '#content'",
+                                        required = false) String cssSelector) {
         try {
-            Document document = Jsoup.connect(url).get();
-            return document.html();
+            HttpResponse<InputStream> response = httpClient.send(httpClient.newGet(url, Map.of()),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            String contentType = response.headers().firstValue("Content-Type").orElse("text/html");
+            byte[] body;
+            // 只读取前 maxBodyBytes 字节，关闭流时丢弃剩余部分
+            try (InputStream in = response.body()) {
+                if (response.statusCode() / 100 != 2) {
+                    throw new HttpStatusException(response.statusCode(), url);
+                }
+                body = in.readNBytes(maxBodyBytes);
+            }
+            String charset = charsetOf(contentType);
+            if (contentType.startsWith("text/plain")) {
+                return limit(new String(body, charset == null ? StandardCharsets.UTF_8 : Charset.forName(charset)));
+            }
+            if (!contentType.contains("html") && !contentType.contains("xml")) {
+                return "Error scraping web page: unsupported content type " + contentType;
+            }
+            // 未声明编码时由 Jsoup 根据 BOM 和 meta 标签判断
+            Document document = Jsoup.parse(new ByteArrayInputStream(body), charset, response.uri().toString());
+            return extract(document, cssSelector);
         } catch (Exception e) {
             return "Error scraping web page: " + e.getMessage();
         }
     }
+
+    /**
+     * 从网页中提取正文文本
+     */
+    String extract(Document document, String cssSelector) {
+        StringBuilder result = new StringBuilder();
+        if (StrUtil.isNotBlank(document.title())) {
+            result.append("Title: ").append(document.title().trim()).append("\n\n");
+        }
+        Element body = document.body();
+        body.select(NON_TEXT_SELECTOR).remove();
+        Elements content;
+        if (StrUtil.isNotBlank(cssSelector)) {
+            content = document.select(cssSelector);
+            if (content.isEmpty()) {
+                return limit(result + "No elements match selector: " + cssSelector);
+            }
+        } else {
+            body.select(BOILERPLATE_SELECTOR).remove();
+            content = new Elements(mainContent(body));
+        }
+        for (Element element : content) {
+            result.append(toText(element)).append("\n\n");
+        }
+        return limit(result.toString().trim());
+    }
+
+    /**
+     * 找出正文所在的元素：article、main 或 role=main，否则选择段落文本最多的块元素
+     */
+    private static Element mainContent(Element body) {
+        int totalLength = body.text().length();
+        Element semantic = body.selectFirst("article, main, [role=main]");
+        if (semantic != null && semantic.text().length() >= totalLength * MIN_MAIN_CONTENT_RATIO) {
+            return semantic;
+        }
+        Element best = body;
+        long bestScore = 0;
+        for (Element candidate : body.select("div, section, td")) {
+            long score = 0;
+            for (Element paragraph : candidate.select("> p, > pre, > blockquote, > ul > li, > ol > li")) {
+                // 链接文字多的段落（导航、推荐列表）权重低
+                int textLength = paragraph.text().length();
+                int linkLength = paragraph.select("a").text().length();
+                score += Math.max(0, textLength - 2L * linkLength);
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                best = candidate;
+            }
+        }
+        return best != body && best.text().length() >= totalLength * MIN_MAIN_CONTENT_RATIO ? best : body;
+    }
+
+    /**
+     * 把元素转换成保留段落结构的纯文本：块元素换行，标题加 #，列表项加 -，连续空白合并
+     */
+    private static String toText(Element root) {
+        StringBuilder text = new StringBuilder();
+        NodeTraversor.traverse(new NodeVisitor() {
+            @Override
+            public void head(Node node, int depth) {
+                if (node instanceof TextNode textNode) {
+                    // text() 已经把连续空白合并成一个空格
+                    text.append(textNode.text());
+                } else if (node instanceof Element element && BLOCK_TAGS.contains(element.normalName())) {
+                    newLine(text);
+                    String tag = element.normalName();
+                    if (tag.length() == 2 && tag.charAt(0) == 'h' && Character.isDigit(tag.charAt(1))) {
+                        text.append("#".repeat(tag.charAt(1) - '0')).append(' ');
+                    } else if (tag.equals("li")) {
+                        text.append("- ");
+                    }
+                }
+            }
+
+            @Override
+            public void tail(Node node, int depth) {
+                if (node instanceof Element element && BLOCK_TAGS.contains(element.normalName())) {
+                    newLine(text);
+                }
+            }
+        }, root);
+        return text.toString()
+                .replaceAll("[ \\t\\u00a0]+", " ")
+                .replaceAll(" ?\\n ?", "\n")
+                .replaceAll("\\n{3,}", "\n\n")
+                .trim();
+    }
+
+    private static void newLine(StringBuilder text) {
+        if (!text.isEmpty() && text.charAt(text.length() - 1) != '\n') {
+            text.append('\n');
+        }
+    }
+
+    private String limit(String text) {
+        if (text.length() <= maxOutputChars) {
+            return text;
+        }
+        return text.substring(0, maxOutputChars) + "\n...[内容已截断，共 " + text.length() + " 个字符]";
+    }
+
+    private static String charsetOf(String contentType) {
+        Matcher matcher = CHARSET_PATTERN.matcher(contentType);
+        if (!matcher.find()) {
+            return null;
+        }
+        String charset = matcher.group(1);
+        return Charset.isSupported(charset) ? charset : null;
+    }
 }
@@ -1,10 +1,10 @@
 package com.yam.myaiagent.tools;
 
-import cn.hutool.http.HttpUtil;
 import cn.hutool.core.util.URLUtil;
 import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.yam.myaiagent.http.PooledHttpClient;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
@@ -26,8 +26,8 @@ public class WebSearchTool {
             // 构建请求URL - 使用URLUtil.encode进行编码
             String url = AI_SEARCH_API_URL + "?keyword=" + URLUtil.encode(query);
 
-            // 发送GET请求
-            String response = HttpUtil.get(url);
+            // 发送GET请求（共享连接池，超时、失败重试）
+            String response = PooledHttpClient.shared().getString(url);
 
             // 解析JSON响应
             JSONObject jsonObject = JSONUtil.parseObj(response);
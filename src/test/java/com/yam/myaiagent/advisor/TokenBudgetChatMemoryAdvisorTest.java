@@ -0,0 +1,156 @@
+package com.yam.myaiagent.advisor;
+
+import com.yam.myaiagent.chatmemory.BoundedInMemoryChatMemory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
+
+class TokenBudgetChatMemoryAdvisorTest {
+
+    /**
+     * 记录收到的 Prompt 并返回固定回复的模型
+     */
+    private static class RecordingChatModel implements ChatModel {
+        private final List<Prompt> prompts = new ArrayList<>();
+        private final String reply;
+
+        RecordingChatModel(String reply) {
+            this.reply = reply;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            prompts.add(prompt);
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(reply + prompts.size()))));
+        }
+    }
+
+    private final RecordingChatModel chatModel = new RecordingChatModel("answer ");
+    private final RecordingChatModel summaryModel = new RecordingChatModel("summary ");
+
+    // 摘要任务先排队，由测试决定何时执行
+    private final List<Runnable> pendingSummaries = new ArrayList<>();
+
+    private ChatClient buildClient(int historyTokenBudget) {
+        return buildClient(historyTokenBudget, Runnable::run);
+    }
+
+    private ChatClient buildClient(int historyTokenBudget, Executor summaryExecutor) {
+        // 每个字符计 1 个 Token，方便控制预算
+        TokenBudgetChatMemoryAdvisor advisor = new TokenBudgetChatMemoryAdvisor(new BoundedInMemoryChatMemory(),
+                summaryModel, String::length, historyTokenBudget, 20, 200, summaryExecutor);
+        return ChatClient.builder(chatModel).defaultSystem("system").defaultAdvisors(advisor).build();
+    }
+
+    private void chat(ChatClient chatClient, String message) {
+        chatClient.prompt()
+                .user(message)
+                .advisors(spec -> spec.param(CHAT_MEMORY_CONVERSATION_ID_KEY, "chat"))
+                .call()
+                .content();
+    }
+
+    private static String systemText(Prompt prompt) {
+        return prompt.getInstructions().stream()
+                .filter(message -> message.getMessageType() == MessageType.SYSTEM)
+                .findFirst()
+                .orElseThrow()
+                .getText();
+    }
+
+    @Test
+    void keepsWholeHistoryWithinBudget() {
+        ChatClient chatClient = buildClient(1000);
+        for (int i = 0; i < 3; i++) {
+            chat(chatClient, "question " + i);
+        }
+        Prompt last = chatModel.prompts.get(2);
+        // 2 轮历史 + 系统提示词 + 本轮问题
+        Assertions.assertEquals(6, last.getInstructions().size());
+        Assertions.assertEquals("system", systemText(last));
+        Assertions.assertTrue(summaryModel.prompts.isEmpty());
+    }
+
+    @Test
+    void foldsOlderTurnsIntoRollingSummary() {
+        // 每条消息约 14 个 Token，预算只够放下最近 2 条
+        ChatClient chatClient = buildClient(30);
+        for (int i = 0; i < 4; i++) {
+            chat(chatClient, "question " + i);
+        }
+        // 第 3 轮回复后移出窗口的消息攒够 4 条，合并成第一版摘要，第 4 轮只带上窗口内的 2 条
+        Prompt fourth = chatModel.prompts.get(3);
+        Assertions.assertEquals(4, fourth.getInstructions().size());
+        Assertions.assertEquals("question 2", fourth.getInstructions().get(0).getText());
+        Assertions.assertTrue(systemText(fourth).contains("summary 1"));
+
+        // 第 5 轮：新移出窗口的 2 条还不够一批，原样留在窗口中
+        chat(chatClient, "question 4");
+        Prompt fifth = chatModel.prompts.get(4);
+        Assertions.assertEquals(6, fifth.getInstructions().size());
+        Assertions.assertEquals("question 2", fifth.getInstructions().get(0).getText());
+        Assertions.assertTrue(systemText(fifth).contains("summary 1"));
+
+        // 每次只把新移出窗口的消息交给摘要模型
+        Assertions.assertEquals(2, summaryModel.prompts.size());
+        String lastSummaryInput = summaryModel.prompts.get(1).getInstructions().get(1).getText();
+        Assertions.assertTrue(lastSummaryInput.contains("question 2"));
+        Assertions.assertTrue(lastSummaryInput.contains("question 3"));
+        Assertions.assertFalse(lastSummaryInput.contains("question 1"));
+        Assertions.assertTrue(lastSummaryInput.contains("summary 1"));
+    }
+
+    @Test
+    void summarizesRepeatedMessagesOnceInTheBackground() {
+        ChatClient chatClient = buildClient(30, pendingSummaries::add);
+        for (int i = 0; i < 4; i++) {
+            chat(chatClient, "好的");
+        }
+        // 摘要在回复之后排队生成，不阻塞模型调用
+        Assertions.assertEquals(1, pendingSummaries.size());
+        Assertions.assertTrue(summaryModel.prompts.isEmpty());
+        Assertions.assertFalse(systemText(chatModel.prompts.get(3)).contains("summary"));
+
+        // 同一会话同时只有一个摘要在生成
+        chat(chatClient, "好的");
+        Assertions.assertEquals(1, pendingSummaries.size());
+
+        for (int i = 0; i < 8; i++) {
+            pendingSummaries.forEach(Runnable::run);
+            pendingSummaries.clear();
+            chat(chatClient, "好的");
+        }
+        Assertions.assertTrue(systemText(chatModel.prompts.get(chatModel.prompts.size() - 1)).contains("summary "));
+
+        // 内容重复的短消息按位置划分边界：每条回复恰好被摘要一次，且按顺序
+        List<String> summarized = new ArrayList<>();
+        int repeatedMessages = 0;
+        for (Prompt prompt : summaryModel.prompts) {
+            String input = prompt.getInstructions().get(1).getText();
+            for (String line : input.substring(input.indexOf("新增对话：")).split("\n")) {
+                if (line.startsWith("assistant: ")) {
+                    summarized.add(line.substring("assistant: ".length()));
+                } else if (line.equals("user: 好的")) {
+                    repeatedMessages++;
+                }
+            }
+        }
+        Assertions.assertFalse(summarized.isEmpty());
+        for (int i = 0; i < summarized.size(); i++) {
+            Assertions.assertEquals("answer " + (i + 1), summarized.get(i));
+        }
+        Assertions.assertEquals(summarized.size(), repeatedMessages);
+    }
+}
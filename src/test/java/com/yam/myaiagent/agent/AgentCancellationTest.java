@@ -0,0 +1,86 @@
+package com.yam.myaiagent.agent;
+
+import com.yam.myaiagent.agent.model.AgentState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class AgentCancellationTest {
+
+    /**
+     * 思考时模拟一次很慢的大模型调用，行动时只计数
+     */
+    private static class SlowAgent extends ReActAgent {
+        private final CountDownLatch thinking = new CountDownLatch(1);
+        private final AtomicInteger thinkCount = new AtomicInteger();
+        private final AtomicInteger actCount = new AtomicInteger();
+        private final boolean interruptible;
+
+        SlowAgent(boolean interruptible) {
+            this.interruptible = interruptible;
+        }
+
+        @Override
+        public boolean think() {
+            thinkCount.incrementAndGet();
+            thinking.countDown();
+            if (interruptible) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    // 模拟网络调用被中断
+                    throw new RuntimeException("interrupted", e);
+                }
+            } else {
+                // 模拟不响应中断的调用
+                long deadline = System.currentTimeMillis() + 300;
+                while (System.currentTimeMillis() < deadline) {
+                    Thread.onSpinWait();
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String act() {
+            actCount.incrementAndGet();
+            return "acted";
+        }
+
+        @Override
+        public BaseAgent newSession() {
+            return new SlowAgent(interruptible);
+        }
+    }
+
+    @Test
+    void cancelInterruptsBlockedCall() throws Exception {
+        SlowAgent agent = new SlowAgent(true);
+        CompletableFuture<String> result = CompletableFuture.supplyAsync(() -> agent.run("task"));
+        Assertions.assertTrue(agent.thinking.await(5, TimeUnit.SECONDS));
+
+        agent.cancel();
+        String output = result.get(2, TimeUnit.SECONDS);
+        Assertions.assertTrue(output.contains("Cancelled at step 1"));
+        Assertions.assertEquals(AgentState.ERROR, agent.getState());
+        Assertions.assertEquals(1, agent.thinkCount.get());
+    }
+
+    @Test
+    void cancelSkipsActAfterThink() throws Exception {
+        // 思考过程不响应中断时，也会在思考结束后、行动前停下
+        SlowAgent agent = new SlowAgent(false);
+        CompletableFuture<String> result = CompletableFuture.supplyAsync(() -> agent.run("task"));
+        Assertions.assertTrue(agent.thinking.await(5, TimeUnit.SECONDS));
+
+        agent.cancel();
+        String output = result.get(5, TimeUnit.SECONDS);
+        Assertions.assertTrue(output.contains("运行已取消"));
+        Assertions.assertEquals(0, agent.actCount.get());
+        Assertions.assertEquals(1, agent.thinkCount.get());
+    }
+}
@@ -0,0 +1,194 @@
+package com.yam.myaiagent.agent;
+
+import com.yam.myaiagent.agent.model.AgentCheckpoint;
+import com.yam.myaiagent.agent.model.AgentState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+class AgentCheckpointStoreTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 每一步只追加 assistant 消息，第 failAt 步抛出 Error 模拟进程中断
+     */
+    private static class CountingAgent extends ReActAgent {
+        private final int failAt;
+        private final List<Integer> executedSteps = new ArrayList<>();
+
+        CountingAgent(int failAt) {
+            this.failAt = failAt;
+        }
+
+        @Override
+        public boolean think() {
+            if (getCurrentStep() == failAt) {
+                throw new AssertionError("crash");
+            }
+            return true;
+        }
+
+        @Override
+        public String act() {
+            executedSteps.add(getCurrentStep());
+            getMessageList().add(new AssistantMessage("step " + getCurrentStep()));
+            return "ok";
+        }
+
+        @Override
+        public BaseAgent newSession() {
+            return new CountingAgent(failAt);
+        }
+    }
+
+    private static AgentCheckpoint checkpoint(String runId, int step) {
+        List<Message> messages = List.of(new UserMessage("task"), new AssistantMessage("step " + step));
+        return new AgentCheckpoint(runId, step, AgentState.RUNNING, messages, step);
+    }
+
+    @Test
+    void loadsLatestCheckpoint() {
+        AgentCheckpointStore store = new AgentCheckpointStore(dir.toString());
+        store.save(checkpoint("run1", 1));
+        store.save(checkpoint("run1", 2));
+
+        AgentCheckpoint latest = store.loadLatest("run1").orElseThrow();
+        Assertions.assertEquals(2, latest.currentStep());
+        Assertions.assertEquals(AgentState.RUNNING, latest.state());
+        Assertions.assertEquals("step 2", latest.messageList().get(1).getText());
+        Assertions.assertTrue(store.loadLatest("other").isEmpty());
+    }
+
+    @Test
+    void dropsTornTail() throws Exception {
+        AgentCheckpointStore store = new AgentCheckpointStore(dir.toString());
+        store.save(checkpoint("run1", 1));
+        store.save(checkpoint("run1", 2));
+        // 模拟写第二条记录时崩溃：截掉最后几个字节
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve("run1.ckpt").toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        Assertions.assertEquals(1, store.loadLatest("run1").orElseThrow().currentStep());
+        // 截断后可以继续追加
+        store.save(checkpoint("run1", 3));
+        Assertions.assertEquals(3, store.loadLatest("run1").orElseThrow().currentStep());
+    }
+
+    @Test
+    void compactsLargeLog() {
+        AgentCheckpointStore store = new AgentCheckpointStore(dir.toString(), 1);
+        store.save(checkpoint("run1", 1));
+        store.save(checkpoint("run1", 2));
+        long size = dir.resolve("run1.ckpt").toFile().length();
+        store.save(checkpoint("run1", 3));
+
+        Assertions.assertEquals(size, dir.resolve("run1.ckpt").toFile().length());
+        Assertions.assertEquals(3, store.loadLatest("run1").orElseThrow().currentStep());
+    }
+
+    @Test
+    void rejectsInvalidRunId() {
+        AgentCheckpointStore store = new AgentCheckpointStore(dir.toString());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> store.loadLatest("../etc/passwd"));
+    }
+
+    @Test
+    void resumesFromLastCompletedStep() {
+        AgentCheckpointStore store = new AgentCheckpointStore(dir.toString());
+        CountingAgent first = new CountingAgent(3);
+        first.setMaxSteps(4);
+        first.setCheckpointStore(store);
+        Assertions.assertThrows(AssertionError.class, () -> first.run("task"));
+        Assertions.assertEquals(List.of(1, 2), first.executedSteps);
+
+        // 新会话从第 3 步继续，前两步的消息被恢复
+        CountingAgent resumed = new CountingAgent(-1);
+        resumed.setMaxSteps(4);
+        resumed.setCheckpointStore(store);
+        String result = resumed.resume(first.getRunId());
+        Assertions.assertEquals(List.of(3, 4), resumed.executedSteps);
+        Assertions.assertTrue(result.startsWith("Step 3: "));
+        Assertions.assertEquals(AgentState.FINISHED, resumed.getState());
+        Assertions.assertEquals(5, resumed.getMessageList().size());
+
+        // 已完成的运行删除检查点，不能再恢复
+        Assertions.assertFalse(dir.resolve(first.getRunId() + ".ckpt").toFile().exists());
+        CountingAgent again = new CountingAgent(-1);
+        again.setCheckpointStore(store);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> again.resume(first.getRunId()));
+    }
+
+    @Test
+    void refusesToResumeActiveRun() {
+        AgentCheckpointStore store = new AgentCheckpointStore(dir.toString());
+        store.save(checkpoint("run1", 1));
+        Assertions.assertTrue(store.acquire("run1"));
+
+        CountingAgent agent = new CountingAgent(-1);
+        agent.setCheckpointStore(store);
+        Assertions.assertThrows(IllegalStateException.class, () -> agent.resume("run1"));
+        Assertions.assertTrue(agent.executedSteps.isEmpty());
+
+        // 运行结束后可以恢复
+        store.release("run1");
+        CountingAgent resumed = new CountingAgent(-1);
+        resumed.setMaxSteps(2);
+        resumed.setCheckpointStore(store);
+        resumed.resume("run1");
+        Assertions.assertEquals(List.of(2), resumed.executedSteps);
+        Assertions.assertTrue(store.acquire("run1"));
+    }
+
+    @Test
+    void expiresOldCheckpoints() {
+        AgentCheckpointStore store = new AgentCheckpointStore(dir.toString(), 1024 * 1024, Duration.ofHours(1));
+        store.save(checkpoint("old", 1));
+        store.save(checkpoint("active", 1));
+        store.save(checkpoint("recent", 1));
+        long twoHoursAgo = System.currentTimeMillis() - Duration.ofHours(2).toMillis();
+        Assertions.assertTrue(dir.resolve("old.ckpt").toFile().setLastModified(twoHoursAgo));
+        Assertions.assertTrue(dir.resolve("active.ckpt").toFile().setLastModified(twoHoursAgo));
+        store.acquire("active");
+
+        Assertions.assertTrue(store.loadLatest("old").isEmpty());
+        Assertions.assertEquals(1, store.purgeExpired());
+        Assertions.assertFalse(dir.resolve("old.ckpt").toFile().exists());
+        Assertions.assertTrue(dir.resolve("active.ckpt").toFile().exists());
+        Assertions.assertTrue(store.loadLatest("recent").isPresent());
+    }
+
+    @Test
+    void leavesNoActiveRunWhenStreamFailsToStart() throws Exception {
+        // 保存第一个检查点时失败
+        AgentCheckpointStore store = new AgentCheckpointStore(dir.toString()) {
+            @Override
+            public void save(AgentCheckpoint checkpoint) {
+                throw new IllegalStateException("encode failed");
+            }
+        };
+        AgentExecutionEngine engine = new AgentExecutionEngine(1, 1);
+        CountingAgent agent = new CountingAgent(-1);
+        agent.setCheckpointStore(store);
+        agent.setExecutionEngine(engine);
+        agent.runStream("task");
+        while (engine.getStats().completed() + engine.getStats().failed() < 1) {
+            Thread.sleep(10);
+        }
+
+        Assertions.assertTrue(agent.executedSteps.isEmpty());
+        // 运行没有停留在执行中，之后可以恢复
+        Assertions.assertTrue(store.acquire(agent.getRunId()));
+    }
+}
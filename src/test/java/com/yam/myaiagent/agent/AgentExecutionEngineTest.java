@@ -0,0 +1,68 @@
+package com.yam.myaiagent.agent;
+
+import com.yam.myaiagent.agent.model.AgentEngineStats;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+class AgentExecutionEngineTest {
+
+    @Test
+    void queuesAndRejectsBeyondLimits() throws Exception {
+        AgentExecutionEngine engine = new AgentExecutionEngine(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(2);
+        engine.submit(() -> {
+            started.countDown();
+            awaitQuietly(release);
+            finished.countDown();
+        });
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        // 第二个任务排队，第三个任务超出队列上限被拒绝
+        engine.submit(finished::countDown);
+        Assertions.assertThrows(RejectedExecutionException.class, () -> engine.submit(() -> {
+        }));
+        AgentEngineStats stats = engine.getStats();
+        Assertions.assertEquals(1, stats.running());
+        Assertions.assertEquals(1, stats.queued());
+        Assertions.assertEquals(1, stats.rejected());
+
+        release.countDown();
+        Assertions.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        // 计数在任务返回后更新，稍等片刻
+        for (int i = 0; i < 50 && engine.getStats().completed() < 2; i++) {
+            Thread.sleep(10);
+        }
+        stats = engine.getStats();
+        Assertions.assertEquals(0, stats.running());
+        Assertions.assertEquals(0, stats.queued());
+        Assertions.assertEquals(2, stats.submitted());
+        Assertions.assertEquals(2, stats.completed());
+    }
+
+    @Test
+    void runsOnNamedVirtualThreads() throws Exception {
+        AgentExecutionEngine engine = new AgentExecutionEngine(4, 4);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread[] thread = new Thread[1];
+        engine.submit(() -> {
+            thread[0] = Thread.currentThread();
+            done.countDown();
+        });
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(thread[0].isVirtual());
+        Assertions.assertTrue(thread[0].getName().startsWith("agent-run-"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.yam.myaiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class ContextWindowManagerTest {
+
+    // 每个字符计 1 个 Token：上下文上限 1000，单个工具结果上限 300，保留最近 1 个工具结果
+    private final ContextWindowManager contextWindowManager = new ContextWindowManager(String::length, 1000, 300, 1,
+            null);
+
+    private static ToolResponseMessage toolResponse(String id, String data) {
+        return new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse(id, "scrapeWebPage", data)));
+    }
+
+    private static AssistantMessage toolCall(String id) {
+        return new AssistantMessage("", Map.of(),
+                List.of(new AssistantMessage.ToolCall(id, "function", "scrapeWebPage", "{}")));
+    }
+
+    @Test
+    void truncatesLongToolResponse() {
+        ToolResponseMessage limited = contextWindowManager.limitToolResponses(toolResponse("1", "x".repeat(5000)),
+                "task");
+        String data = limited.getResponses().get(0).responseData();
+        Assertions.assertTrue(data.startsWith("x".repeat(300)));
+        Assertions.assertTrue(data.length() < 400);
+        Assertions.assertEquals("1", limited.getResponses().get(0).id());
+        // 未超出上限的结果保持不变
+        ToolResponseMessage small = toolResponse("2", "ok");
+        Assertions.assertSame(small, contextWindowManager.limitToolResponses(small, "task"));
+    }
+
+    @Test
+    void evictsOldestToolResponsesFirst() {
+        List<Message> messages = new ArrayList<>();
+        messages.add(new UserMessage("task"));
+        for (int i = 0; i < 5; i++) {
+            messages.add(toolCall(String.valueOf(i)));
+            messages.add(toolResponse(String.valueOf(i), String.valueOf(i).repeat(300)));
+        }
+        contextWindowManager.fit(messages);
+        // 5 个 300 Token 的结果超出 1000 的上限，最早的 2 个被清空，消息条数和工具调用 ID 不变
+        Assertions.assertEquals(11, messages.size());
+        List<String> data = messages.stream()
+                .filter(message -> message instanceof ToolResponseMessage)
+                .map(message -> ((ToolResponseMessage) message).getResponses().get(0).responseData())
+                .toList();
+        Assertions.assertEquals(ContextWindowManager.EVICTED_PLACEHOLDER, data.get(0));
+        Assertions.assertEquals(ContextWindowManager.EVICTED_PLACEHOLDER, data.get(1));
+        Assertions.assertEquals("2".repeat(300), data.get(2));
+        Assertions.assertEquals("4".repeat(300), data.get(4));
+        Assertions.assertEquals("1", ((ToolResponseMessage) messages.get(4)).getResponses().get(0).id());
+    }
+}
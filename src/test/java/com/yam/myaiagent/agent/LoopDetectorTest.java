@@ -0,0 +1,89 @@
+package com.yam.myaiagent.agent;
+
+import com.yam.myaiagent.agent.model.AgentState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class LoopDetectorTest {
+
+    private static AssistantMessage toolCall(String name, String arguments) {
+        return new AssistantMessage("", Map.of(),
+                List.of(new AssistantMessage.ToolCall("call_1", "function", name, arguments)));
+    }
+
+    private static ToolResponseMessage toolResult(String name, String data) {
+        return new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse("call_1", name, data)), Map.of());
+    }
+
+    @Test
+    void detectsRepeatedCallsRegardlessOfArgumentFormatting() {
+        LoopDetector detector = new LoopDetector();
+        Assertions.assertEquals(LoopDetector.Verdict.CONTINUE,
+                detector.recordToolCalls(toolCall("search", "{\"q\":\"java\",\"page\":1}")));
+        Assertions.assertEquals(LoopDetector.Verdict.CONTINUE,
+                detector.recordToolCalls(toolCall("search", "{\"q\":\"java\",\"page\":2}")));
+        // 键顺序和空白不同，内容相同
+        Assertions.assertEquals(LoopDetector.Verdict.CORRECT,
+                detector.recordToolCalls(toolCall("search", "{ \"page\": 1, \"q\": \"java\" }")));
+        Assertions.assertTrue(detector.getReason().contains("search"));
+        // 纠正过一次后再重复，提前结束
+        Assertions.assertEquals(LoopDetector.Verdict.STOP,
+                detector.recordToolCalls(toolCall("search", "{\"q\":\"java\",\"page\":2}")));
+    }
+
+    @Test
+    void detectsStalledResults() {
+        LoopDetector detector = new LoopDetector();
+        Assertions.assertEquals(LoopDetector.Verdict.CONTINUE, detector.recordToolResults(toolResult("search", "a")));
+        Assertions.assertEquals(LoopDetector.Verdict.CONTINUE, detector.recordToolResults(toolResult("search", "a")));
+        // 有新信息时重新计数
+        Assertions.assertEquals(LoopDetector.Verdict.CONTINUE, detector.recordToolResults(toolResult("search", "b")));
+        Assertions.assertEquals(LoopDetector.Verdict.CONTINUE, detector.recordToolResults(toolResult("search", "a")));
+        Assertions.assertEquals(LoopDetector.Verdict.CORRECT, detector.recordToolResults(toolResult("search", "b")));
+        // 新会话不继承状态
+        Assertions.assertEquals(0, detector.newSession().getCorrections());
+    }
+
+    @Test
+    void agentSkipsRepeatedCallAndStopsEarly() {
+        AtomicInteger toolCalls = new AtomicInteger();
+        ToolCallback search = new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return ToolDefinition.builder().name("search").description("search").inputSchema("{}").build();
+            }
+
+            @Override
+            public String call(String arguments) {
+                return "result " + toolCalls.incrementAndGet();
+            }
+        };
+        // 每一步都用相同的参数调用同一个工具
+        ChatModel chatModel = prompt -> new ChatResponse(List.of(new Generation(toolCall("search", "{\"q\":\"x\"}"))));
+        ToolCallAgent template = new ToolCallAgent(new ToolCallback[]{search});
+        template.setName("test");
+        template.setSystemPrompt("system");
+        template.setChatClient(ChatClient.builder(chatModel).build());
+        ToolCallAgent agent = template.newSession();
+
+        String result = agent.run("task");
+        // 第 1 步执行，第 2 步跳过并纠正，第 3 步提前结束
+        Assertions.assertEquals(1, toolCalls.get());
+        Assertions.assertEquals(3, agent.getCurrentStep());
+        Assertions.assertEquals(AgentState.FINISHED, agent.getState());
+        Assertions.assertTrue(result.contains("Step 2: 检测到重复调用"));
+        Assertions.assertTrue(result.contains("Step 3: 提前结束"));
+    }
+}
@@ -0,0 +1,138 @@
+package com.yam.myaiagent.agent;
+
+import com.yam.myaiagent.agent.model.SubTask;
+import com.yam.myaiagent.agent.model.TaskPlan;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MultiAgentOrchestratorTest {
+
+    private static final String PLAN = """
+            {"tasks": [
+              {"id": "a", "description": "research A", "dependsOn": []},
+              {"id": "b", "description": "research B", "dependsOn": []},
+              {"id": "c", "description": "compare", "dependsOn": ["a", "b"]}
+            ]}
+            """;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    /**
+     * 规划时返回固定计划；执行子任务时模拟耗时调用并回显依赖结果；合并时拼接所有输入
+     */
+    private final ChatModel chatModel = new ChatModel() {
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            String system = text(prompt, MessageType.SYSTEM);
+            String user = text(prompt, MessageType.USER);
+            String reply;
+            if (system.contains("planning agent")) {
+                reply = PLAN;
+            } else if (system.contains("combine the results")) {
+                reply = "merged:" + user;
+            } else {
+                int current = running.incrementAndGet();
+                maxRunning.accumulateAndGet(current, Math::max);
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                String subTask = user.substring(user.indexOf("Your sub-task: ") + 15, user.indexOf('\n',
+                        user.indexOf("Your sub-task: ")));
+                reply = "answer(" + subTask + ")" + (user.contains("answer(research A)")
+                        && user.contains("answer(research B)") ? " with deps" : "");
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(reply))));
+        }
+    };
+
+    private static String text(Prompt prompt, MessageType type) {
+        return prompt.getInstructions().stream()
+                .filter(message -> message.getMessageType() == type)
+                .map(Message::getText)
+                .findFirst()
+                .orElse("");
+    }
+
+    private MultiAgentOrchestrator orchestrator() {
+        ChatClient chatClient = ChatClient.builder(chatModel).build();
+        ToolCallAgent template = new ToolCallAgent(new ToolCallback[0]);
+        template.setName("worker");
+        template.setSystemPrompt("worker system");
+        template.setChatClient(chatClient);
+        return new MultiAgentOrchestrator(template, chatClient, 4, 1, 8, 2000);
+    }
+
+    @Test
+    void runsIndependentSubTasksInParallelAndMerges() {
+        String answer = orchestrator().execute("compare A and B");
+
+        // a、b 互不依赖，同时执行；c 等 a、b 都完成后拿到它们的结果
+        Assertions.assertEquals(2, maxRunning.get());
+        Assertions.assertTrue(answer.startsWith("merged:"));
+        Assertions.assertTrue(answer.contains("answer(research A)"));
+        Assertions.assertTrue(answer.contains("answer(research B)"));
+        Assertions.assertTrue(answer.contains("answer(compare) with deps"));
+    }
+
+    @Test
+    void returnsSingleTaskAnswerUntruncated() {
+        String longAnswer = "长".repeat(5000);
+        ChatModel singleTaskModel = prompt -> new ChatResponse(List.of(new Generation(new AssistantMessage(
+                text(prompt, MessageType.SYSTEM).contains("planning agent") ? "not a plan" : longAnswer))));
+        ChatClient chatClient = ChatClient.builder(singleTaskModel).build();
+        ToolCallAgent template = new ToolCallAgent(new ToolCallback[0]);
+        template.setName("worker");
+        template.setSystemPrompt("worker system");
+        template.setChatClient(chatClient);
+        List<String> progress = new ArrayList<>();
+
+        // 计划解析失败时整个任务交给一个子任务，它的结果原样作为最终答案
+        String answer = new MultiAgentOrchestrator(template, chatClient, 4, 1, 8, 2000)
+                .execute("write a long report", progress::add);
+        Assertions.assertEquals(longAnswer, answer);
+        // 进度消息仍然截断
+        Assertions.assertTrue(progress.get(progress.size() - 1).length() < 2100);
+    }
+
+    @Test
+    void normalizeOrdersTasksTopologically() {
+        TaskPlan plan = new TaskPlan(List.of(
+                new SubTask("c", "compare", List.of("a", "b", "missing")),
+                new SubTask("a", "research A", null),
+                new SubTask("b", "research B", List.of("a"))));
+
+        TaskPlan normalized = MultiAgentOrchestrator.normalize(plan, "task", 8);
+        Assertions.assertEquals(List.of("a", "b", "c"), normalized.tasks().stream().map(SubTask::id).toList());
+        // 不存在的依赖被忽略
+        Assertions.assertEquals(List.of("a", "b"), normalized.tasks().get(2).dependsOn());
+    }
+
+    @Test
+    void normalizeFallsBackToSingleTaskOnCycle() {
+        TaskPlan plan = new TaskPlan(List.of(
+                new SubTask("a", "first", List.of("b")),
+                new SubTask("b", "second", List.of("a"))));
+
+        TaskPlan normalized = MultiAgentOrchestrator.normalize(plan, "task", 8);
+        Assertions.assertEquals(1, normalized.tasks().size());
+        Assertions.assertEquals("task", normalized.tasks().get(0).description());
+        Assertions.assertEquals(1, MultiAgentOrchestrator.normalize(null, "task", 8).tasks().size());
+    }
+}
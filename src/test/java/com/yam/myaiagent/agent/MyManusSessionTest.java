@@ -0,0 +1,50 @@
+package com.yam.myaiagent.agent;
+
+import com.yam.myaiagent.agent.model.AgentState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.nio.file.Path;
+import java.util.List;
+
+class MyManusSessionTest {
+
+    // 不调用工具、直接回复的模型
+    private final ChatModel chatModel = prompt ->
+            new ChatResponse(List.of(new Generation(new AssistantMessage("done"))));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sessionsShareConfigButNotState() {
+        MyManus template = new MyManus(new ToolCallback[0], chatModel, new AgentCheckpointStore(dir.toString()));
+        template.setMaxSteps(2);
+
+        MyManus first = template.newSession();
+        first.run("hello");
+        Assertions.assertEquals(AgentState.FINISHED, first.getState());
+        Assertions.assertFalse(first.getMessageList().isEmpty());
+
+        // 运行会话不影响模板和其他会话
+        Assertions.assertEquals(AgentState.IDLE, template.getState());
+        Assertions.assertTrue(template.getMessageList().isEmpty());
+        MyManus second = template.newSession();
+        Assertions.assertEquals(AgentState.IDLE, second.getState());
+        Assertions.assertEquals(0, second.getCurrentStep());
+        Assertions.assertTrue(second.getMessageList().isEmpty());
+
+        // 配置直接复用，不重新构建
+        Assertions.assertSame(template.getChatClient(), second.getChatClient());
+        Assertions.assertSame(template.getChatOptions(), second.getChatOptions());
+        Assertions.assertSame(template.getParallelToolExecutor(), second.getParallelToolExecutor());
+        Assertions.assertEquals(template.getSystemPrompt(), second.getSystemPrompt());
+        Assertions.assertEquals(2, second.getMaxSteps());
+    }
+}
@@ -0,0 +1,98 @@
+package com.yam.myaiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ParallelToolExecutorTest {
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    /**
+     * 休眠 arguments 毫秒后返回工具名称的工具
+     */
+    private ToolCallback sleepingTool(String name) {
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+            }
+
+            @Override
+            public String call(String arguments) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(Long.parseLong(arguments));
+                    return name;
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+    }
+
+    private static AssistantMessage toolCalls(String... nameAndSleep) {
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+        for (int i = 0; i < nameAndSleep.length; i += 2) {
+            toolCalls.add(new AssistantMessage.ToolCall(String.valueOf(i / 2), "function", nameAndSleep[i],
+                    nameAndSleep[i + 1]));
+        }
+        return new AssistantMessage("", Map.of(), toolCalls);
+    }
+
+    private static List<ToolResponseMessage.ToolResponse> responses(List<Message> conversationHistory) {
+        return ((ToolResponseMessage) conversationHistory.get(conversationHistory.size() - 1)).getResponses();
+    }
+
+    @Test
+    void runsConcurrentlyAndKeepsOrder() {
+        ParallelToolExecutor executor = new ParallelToolExecutor(
+                new ToolCallback[]{sleepingTool("search"), sleepingTool("weather"), sleepingTool("scrape")});
+        long start = System.nanoTime();
+        List<Message> history = executor.execute(List.of(new UserMessage("task")),
+                toolCalls("search", "400", "weather", "100", "scrape", "250")).conversationHistory();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        // 串行需要 750ms
+        Assertions.assertTrue(elapsedMillis < 700, "elapsed " + elapsedMillis);
+        Assertions.assertEquals(3, history.size());
+        List<ToolResponseMessage.ToolResponse> responses = responses(history);
+        Assertions.assertEquals(List.of("search", "weather", "scrape"),
+                responses.stream().map(ToolResponseMessage.ToolResponse::responseData).toList());
+        Assertions.assertEquals(List.of("0", "1", "2"),
+                responses.stream().map(ToolResponseMessage.ToolResponse::id).toList());
+    }
+
+    @Test
+    void respectsParallelismCap() {
+        ParallelToolExecutor executor = new ParallelToolExecutor(new ToolCallback[]{sleepingTool("search")}, 2,
+                Duration.ofSeconds(10), Map.of());
+        executor.execute(List.of(), toolCalls("search", "100", "search", "100", "search", "100", "search", "100"));
+        Assertions.assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    void reportsTimeoutAndUnknownTool() {
+        ParallelToolExecutor executor = new ParallelToolExecutor(
+                new ToolCallback[]{sleepingTool("search"), sleepingTool("scrape")}, 4, Duration.ofSeconds(10),
+                Map.of("scrape", Duration.ofMillis(100)));
+        List<ToolResponseMessage.ToolResponse> responses = responses(executor.execute(List.of(),
+                toolCalls("scrape", "5000", "missing", "0", "search", "10")).conversationHistory());
+        Assertions.assertTrue(responses.get(0).responseData().contains("超时"));
+        Assertions.assertTrue(responses.get(1).responseData().contains("找不到工具"));
+        Assertions.assertEquals("search", responses.get(2).responseData());
+    }
+}
@@ -0,0 +1,108 @@
+package com.yam.myaiagent.agent;
+
+import com.yam.myaiagent.agent.model.AgentState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class ReactiveToolCallAgentTest {
+
+    private final CountDownLatch toolStarted = new CountDownLatch(1);
+    private final CountDownLatch toolInterrupted = new CountDownLatch(1);
+
+    private static ToolCallback tool(String name, Runnable body) {
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+            }
+
+            @Override
+            public String call(String arguments) {
+                body.run();
+                return name + " done";
+            }
+        };
+    }
+
+    /**
+     * 先输出一段文本，再调用指定的工具
+     */
+    private static ChatModel streamingModel(String toolName) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                AssistantMessage toolCall = new AssistantMessage("", Map.of(),
+                        List.of(new AssistantMessage.ToolCall("call_1", "function", toolName, "{}")));
+                return Flux.just(
+                        new ChatResponse(List.of(new Generation(new AssistantMessage("think")))),
+                        new ChatResponse(List.of(new Generation(toolCall))));
+            }
+        };
+    }
+
+    private ReactiveToolCallAgent agent(String toolName) {
+        ToolCallAgent template = new ToolCallAgent(new ToolCallback[]{
+                tool("doTerminate", () -> {
+                }),
+                tool("slowTool", () -> {
+                    toolStarted.countDown();
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException e) {
+                        toolInterrupted.countDown();
+                        Thread.currentThread().interrupt();
+                    }
+                })});
+        template.setName("test");
+        template.setSystemPrompt("system");
+        template.setChatClient(ChatClient.builder(streamingModel(toolName)).build());
+        return new ReactiveToolCallAgent(template);
+    }
+
+    @Test
+    void streamsTokensAndStopsOnTerminate() {
+        ReactiveToolCallAgent agent = agent("doTerminate");
+        List<ServerSentEvent<String>> events = agent.runReactive("task").collectList().block();
+
+        Assertions.assertNotNull(events);
+        Assertions.assertEquals(2, events.size());
+        Assertions.assertEquals("token", events.get(0).event());
+        Assertions.assertEquals("think", events.get(0).data());
+        Assertions.assertNull(events.get(1).event());
+        Assertions.assertTrue(events.get(1).data().startsWith("Step 1: "));
+        Assertions.assertEquals(AgentState.FINISHED, agent.getState());
+    }
+
+    @Test
+    void cancelInterruptsRunningTool() throws Exception {
+        ReactiveToolCallAgent agent = agent("slowTool");
+        Disposable subscription = agent.runReactive("task").subscribe();
+        Assertions.assertTrue(toolStarted.await(5, TimeUnit.SECONDS));
+
+        // 模拟客户端断开连接
+        subscription.dispose();
+        Assertions.assertTrue(toolInterrupted.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(AgentState.ERROR, agent.getState());
+    }
+}
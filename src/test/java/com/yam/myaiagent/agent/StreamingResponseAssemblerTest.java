@@ -0,0 +1,78 @@
+package com.yam.myaiagent.agent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class StreamingResponseAssemblerTest {
+
+    private static ChatResponse textChunk(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static ChatResponse toolCallChunk(String id, String name, String arguments) {
+        AssistantMessage message = new AssistantMessage("", Map.of(),
+                List.of(new AssistantMessage.ToolCall(id, "function", name, arguments)));
+        return new ChatResponse(List.of(new Generation(message)));
+    }
+
+    // 先输出两段文本，再分三个片段返回两个工具调用（第一个工具调用的参数被拆开）
+    private static final List<ChatResponse> CHUNKS = List.of(
+            textChunk("Let me "),
+            textChunk("search."),
+            toolCallChunk("call_1", "searchWeb", "{\"query\":"),
+            toolCallChunk("", "", "\"java\"}"),
+            toolCallChunk("call_2", "getWeather", "{\"city\":\"Beijing\"}"));
+
+    @Test
+    void assemblesTextAndSplitToolCalls() {
+        StreamingResponseAssembler assembler = new StreamingResponseAssembler();
+        List<String> tokens = new ArrayList<>();
+        CHUNKS.forEach(chunk -> tokens.add(assembler.accept(chunk)));
+        Assertions.assertEquals(List.of("Let me ", "search.", "", "", ""), tokens);
+
+        AssistantMessage output = assembler.toChatResponse().getResult().getOutput();
+        Assertions.assertEquals("Let me search.", output.getText());
+        Assertions.assertEquals(2, output.getToolCalls().size());
+        Assertions.assertEquals("searchWeb", output.getToolCalls().get(0).name());
+        Assertions.assertEquals("{\"query\":\"java\"}", output.getToolCalls().get(0).arguments());
+        Assertions.assertEquals("call_2", output.getToolCalls().get(1).id());
+    }
+
+    @Test
+    void thinkForwardsTokensWhileStreaming() {
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.fromIterable(CHUNKS);
+            }
+        };
+        ToolCallAgent agent = new ToolCallAgent(new ToolCallback[0]);
+        agent.setSystemPrompt("system");
+        agent.setChatClient(ChatClient.builder(chatModel).build());
+        List<String> tokens = new ArrayList<>();
+        agent.setTokenListener(tokens::add);
+        agent.getMessageList().add(new UserMessage("task"));
+
+        Assertions.assertTrue(agent.think());
+        Assertions.assertEquals(List.of("Let me ", "search."), tokens);
+        Assertions.assertEquals(2, agent.getToolCallChatResponse().getResult().getOutput().getToolCalls().size());
+    }
+}
@@ -0,0 +1,38 @@
+package com.yam.myaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.List;
+
+class BoundedInMemoryChatMemoryTest {
+
+    @Test
+    void capsMessagesPerConversation() {
+        BoundedInMemoryChatMemory chatMemory = new BoundedInMemoryChatMemory(10, 5, Duration.ofMinutes(10));
+        for (int i = 0; i < 20; i++) {
+            chatMemory.add("chat", List.of(new UserMessage("message " + i)));
+        }
+        List<Message> messages = chatMemory.get("chat", 10);
+        Assertions.assertEquals(5, messages.size());
+        Assertions.assertEquals("message 15", messages.get(0).getText());
+        Assertions.assertEquals("message 19", messages.get(4).getText());
+    }
+
+    @Test
+    void evictsConversationsAndRecordsStats() {
+        BoundedInMemoryChatMemory chatMemory = new BoundedInMemoryChatMemory(10, 5, Duration.ofMinutes(10));
+        for (int i = 0; i < 1000; i++) {
+            chatMemory.add("chat-" + i, List.of(new UserMessage("hello")));
+        }
+        chatMemory.get("chat-999", 10);
+        chatMemory.get("missing", 10);
+        ChatMemoryStats stats = chatMemory.getStats();
+        Assertions.assertTrue(stats.conversations() <= 10);
+        Assertions.assertTrue(stats.evictionCount() >= 990);
+        Assertions.assertTrue(stats.missCount() >= 1);
+    }
+}
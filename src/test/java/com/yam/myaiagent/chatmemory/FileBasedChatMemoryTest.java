@@ -0,0 +1,180 @@
+package com.yam.myaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+class FileBasedChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void addAndGetLastN() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        String chatId = "chat";
+        for (int i = 0; i < 20; i++) {
+            chatMemory.add(chatId, List.of(new UserMessage("question " + i), new AssistantMessage("answer " + i)));
+        }
+        List<Message> messages = chatMemory.get(chatId, 3);
+        Assertions.assertEquals(3, messages.size());
+        Assertions.assertEquals("answer 18", messages.get(0).getText());
+        Assertions.assertEquals("question 19", messages.get(1).getText());
+        Assertions.assertEquals("answer 19", messages.get(2).getText());
+        Assertions.assertEquals(40, chatMemory.get(chatId, 100).size());
+    }
+
+    @Test
+    void rollsAndCompactsSegments() {
+        // 每段很小，强制滚动并触发压缩
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), 64, 3, 5);
+        String chatId = "chat";
+        for (int i = 0; i < 50; i++) {
+            chatMemory.add(chatId, List.of(new UserMessage("message " + i)));
+        }
+        File[] segments = new File(tempDir.toFile(), chatId).listFiles((dir, name) -> name.endsWith(".log"));
+        Assertions.assertNotNull(segments);
+        Assertions.assertTrue(segments.length <= 3);
+        List<Message> messages = chatMemory.get(chatId, 5);
+        Assertions.assertEquals("message 45", messages.get(0).getText());
+        Assertions.assertEquals("message 49", messages.get(4).getText());
+    }
+
+    @Test
+    void keepsFullHistoryWithoutRetention() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), 64, 3, 0);
+        for (int i = 0; i < 50; i++) {
+            chatMemory.add("chat", List.of(new UserMessage("message " + i)));
+        }
+        List<Message> messages = chatMemory.get("chat", 100);
+        Assertions.assertEquals(50, messages.size());
+        Assertions.assertEquals("message 0", messages.get(0).getText());
+    }
+
+    @Test
+    void purgesIdleConversations() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString(), 10, Duration.ofDays(30));
+        chatMemory.add("idle", List.of(new UserMessage("old")));
+        chatMemory.add("active", List.of(new UserMessage("new")));
+        // 把 idle 会话的修改时间改到保留期之前
+        long old = System.currentTimeMillis() - Duration.ofDays(31).toMillis();
+        File[] files = new File(tempDir.toFile(), "idle").listFiles();
+        Assertions.assertNotNull(files);
+        for (File file : files) {
+            file.setLastModified(old);
+        }
+
+        Assertions.assertEquals(1, chatMemory.purgeExpired());
+        Assertions.assertFalse(new File(tempDir.toFile(), "idle").exists());
+        Assertions.assertTrue(chatMemory.get("idle", 10).isEmpty());
+        Assertions.assertEquals("new", chatMemory.get("active", 10).get(0).getText());
+    }
+
+    @Test
+    void ignoresSegmentsLeftBehindByInterruptedCompaction() throws Exception {
+        File dir = new File(tempDir.toFile(), "chat");
+        ConversationLog conversationLog = new ConversationLog(dir, new MessageSerializer(), 64, 100, 3);
+        for (int i = 0; i < 10; i++) {
+            conversationLog.append(List.of(new UserMessage("message " + i)));
+        }
+        // 模拟压缩在删除旧段之前崩溃：压缩后把旧段放回去
+        Path backup = Files.createDirectory(tempDir.resolve("backup"));
+        File[] oldFiles = dir.listFiles();
+        Assertions.assertNotNull(oldFiles);
+        for (File file : oldFiles) {
+            Files.copy(file.toPath(), backup.resolve(file.getName()));
+        }
+        conversationLog.compact();
+        for (File file : oldFiles) {
+            Files.copy(backup.resolve(file.getName()), file.toPath());
+        }
+
+        List<String> texts = conversationLog.readLast(100).stream().map(Message::getText).toList();
+        Assertions.assertEquals(List.of("message 7", "message 8", "message 9"), texts);
+        // 下次写入时删除旧段
+        conversationLog.append(List.of(new UserMessage("message 10")));
+        Assertions.assertEquals(4, conversationLog.readLast(100).size());
+        for (File file : oldFiles) {
+            Assertions.assertFalse(file.exists(), file.getName());
+        }
+    }
+
+    @Test
+    void clear() {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        chatMemory.add("chat", List.of(new UserMessage("hello")));
+        chatMemory.clear("chat");
+        Assertions.assertTrue(chatMemory.get("chat", 10).isEmpty());
+    }
+
+    @Test
+    void concurrentAddToSameConversation() throws Exception {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        String chatId = "chat";
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        chatMemory.add(chatId, List.of(new UserMessage(thread + "-" + i)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // 并发写入同一会话时不能丢消息
+        Set<String> texts = chatMemory.get(chatId, 1000).stream()
+                .map(Message::getText)
+                .collect(Collectors.toSet());
+        Assertions.assertEquals(200, texts.size());
+    }
+
+    @Test
+    void rebuildsIndexAndTruncatesTornTail() throws Exception {
+        FileBasedChatMemory chatMemory = new FileBasedChatMemory(tempDir.toString());
+        String chatId = "chat";
+        for (int i = 0; i < 10; i++) {
+            chatMemory.add(chatId, List.of(new UserMessage("message " + i)));
+        }
+        // 模拟崩溃：索引丢失，段文件尾部写了一半
+        File dir = new File(tempDir.toFile(), chatId);
+        new File(dir, "00000001.idx").delete();
+        Files.write(new File(dir, "00000001.log").toPath(), new byte[]{0, 0, 1},
+                StandardOpenOption.APPEND);
+        long tornLength = new File(dir, "00000001.log").length();
+        List<Message> messages = chatMemory.get(chatId, 2);
+        Assertions.assertEquals("message 8", messages.get(0).getText());
+        Assertions.assertEquals("message 9", messages.get(1).getText());
+        // 读取只持有读锁，不修改文件
+        Assertions.assertEquals(tornLength, new File(dir, "00000001.log").length());
+        Assertions.assertFalse(new File(dir, "00000001.idx").exists());
+
+        // 写入前修复：截断尾部、重建索引
+        chatMemory.add(chatId, List.of(new UserMessage("message 10")));
+        Assertions.assertTrue(new File(dir, "00000001.idx").exists());
+        Assertions.assertEquals(11, chatMemory.get(chatId, 100).size());
+        Assertions.assertEquals("message 10", chatMemory.get(chatId, 1).get(0).getText());
+    }
+}
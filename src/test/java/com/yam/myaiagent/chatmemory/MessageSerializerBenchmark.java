@@ -0,0 +1,95 @@
+package com.yam.myaiagent.chatmemory;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 消息序列化 JMH 基准测试：对比原来的共享 Kryo 方式与池化方式在 1/8/64 线程下的吞吐量
+ * <p>
+ * 原来的共享静态 Kryo 在并发下不安全，这里用加锁的共享实例和每次新建实例两种安全写法作为对照。
+ * 运行方式：执行 main 方法（需先 mvn test-compile 生成 JMH 元数据）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageSerializerBenchmark {
+
+    private final MessageSerializer pooledSerializer = new MessageSerializer();
+
+    private final Kryo sharedKryo = newLegacyKryo();
+
+    private Message message;
+
+    @Setup
+    public void setup() {
+        message = new AssistantMessage("Java 中的 HashMap 在 JDK 8 之后引入了红黑树。".repeat(20), Map.of(),
+                List.of(new AssistantMessage.ToolCall("1", "function", "searchWeb", "{\"query\":\"HashMap\"}")));
+    }
+
+    @Benchmark
+    public Message pooled() {
+        return pooledSerializer.deserialize(pooledSerializer.serialize(message));
+    }
+
+    @Benchmark
+    public Message sharedKryoWithLock() {
+        synchronized (sharedKryo) {
+            return roundTrip(sharedKryo, message);
+        }
+    }
+
+    @Benchmark
+    public Message newKryoPerCall() {
+        return roundTrip(newLegacyKryo(), message);
+    }
+
+    private static Message roundTrip(Kryo kryo, Message message) {
+        Output output = new Output(4096, -1);
+        kryo.writeClassAndObject(output, message);
+        try (Input input = new Input(output.toBytes())) {
+            return (Message) kryo.readClassAndObject(input);
+        }
+    }
+
+    private static Kryo newLegacyKryo() {
+        Kryo kryo = new Kryo();
+        kryo.setRegistrationRequired(false);
+        kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+        return kryo;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 8, 64}) {
+            Options options = new OptionsBuilder()
+                    .include(MessageSerializerBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.yam.myaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class MessageSerializerTest {
+
+    private final MessageSerializer serializer = new MessageSerializer();
+
+    @Test
+    void roundTrip() {
+        AssistantMessage assistantMessage = new AssistantMessage("", Map.of(),
+                List.of(new AssistantMessage.ToolCall("1", "function", "searchWeb", "{\"query\":\"kryo\"}")));
+        ToolResponseMessage toolResponseMessage = new ToolResponseMessage(
+                List.of(new ToolResponseMessage.ToolResponse("1", "searchWeb", "result")));
+
+        AssistantMessage assistantCopy = (AssistantMessage) serializer.deserialize(serializer.serialize(assistantMessage));
+        Assertions.assertEquals("searchWeb", assistantCopy.getToolCalls().get(0).name());
+        ToolResponseMessage toolResponseCopy = (ToolResponseMessage) serializer.deserialize(serializer.serialize(toolResponseMessage));
+        Assertions.assertEquals("result", toolResponseCopy.getResponses().get(0).responseData());
+    }
+
+    @Test
+    void concurrentRoundTrip() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        String text = "thread " + thread + " message " + i;
+                        Message copy = serializer.deserialize(serializer.serialize(new UserMessage(text)));
+                        if (!text.equals(copy.getText())) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                Assertions.assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
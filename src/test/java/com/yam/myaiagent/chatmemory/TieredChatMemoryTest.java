@@ -0,0 +1,86 @@
+package com.yam.myaiagent.chatmemory;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class TieredChatMemoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void servesRecentMessagesFromHeapAndOlderFromDisk() {
+        TieredChatMemory chatMemory = new TieredChatMemory(new FileBasedChatMemory(tempDir.toString()),
+                100, 5, Duration.ofMinutes(10));
+        for (int i = 0; i < 20; i++) {
+            chatMemory.add("chat", List.of(new UserMessage("message " + i)));
+        }
+        // 第一次读取从磁盘加载，第二次命中内存
+        Assertions.assertEquals("message 15", chatMemory.get("chat", 5).get(0).getText());
+        Assertions.assertEquals("message 17", chatMemory.get("chat", 3).get(0).getText());
+        // 超出热层容量时从磁盘读取
+        List<Message> messages = chatMemory.get("chat", 10);
+        Assertions.assertEquals(10, messages.size());
+        Assertions.assertEquals("message 10", messages.get(0).getText());
+        ChatMemoryStats stats = chatMemory.getStats();
+        Assertions.assertEquals(1, stats.hitCount());
+        Assertions.assertEquals(2, stats.missCount());
+    }
+
+    @Test
+    void faultsEvictedConversationsBackFromDisk() {
+        FileBasedChatMemory diskTier = new FileBasedChatMemory(tempDir.toString());
+        TieredChatMemory chatMemory = new TieredChatMemory(diskTier, 2, 5, Duration.ofMinutes(10));
+        for (int i = 0; i < 50; i++) {
+            chatMemory.add("chat-" + i, List.of(new UserMessage("hello " + i)));
+            chatMemory.get("chat-" + i, 5);
+        }
+        Assertions.assertTrue(chatMemory.getStats().conversations() <= 2);
+        List<Message> messages = chatMemory.get("chat-0", 5);
+        Assertions.assertEquals(1, messages.size());
+        Assertions.assertEquals("hello 0", messages.get(0).getText());
+        // 加载后的会话继续追加
+        chatMemory.add("chat-0", List.of(new UserMessage("again")));
+        Assertions.assertEquals("again", chatMemory.get("chat-0", 5).get(1).getText());
+    }
+
+    @Test
+    void keepsHotTierInDiskOrderUnderConcurrentAdds() throws Exception {
+        FileBasedChatMemory diskTier = new FileBasedChatMemory(tempDir.toString());
+        TieredChatMemory chatMemory = new TieredChatMemory(diskTier, 100, 10, Duration.ofMinutes(10));
+        chatMemory.add("chat", List.of(new UserMessage("start")));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        chatMemory.add("chat", List.of(new UserMessage(thread + "-" + i)));
+                        // 第一次读取时从磁盘加载，与其他线程的写入并发
+                        chatMemory.get("chat", 5);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        List<String> expected = diskTier.get("chat", 10).stream().map(Message::getText).toList();
+        List<String> hot = chatMemory.get("chat", 10).stream().map(Message::getText).toList();
+        Assertions.assertEquals(expected, hot);
+        Assertions.assertTrue(chatMemory.getStats().hitCount() > 0);
+        Assertions.assertEquals(401, diskTier.get("chat", 1000).size());
+    }
+}
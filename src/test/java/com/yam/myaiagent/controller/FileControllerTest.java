@@ -0,0 +1,150 @@
+package com.yam.myaiagent.controller;
+
+import com.yam.myaiagent.service.impl.FileServiceImpl;
+import com.yam.myaiagent.storage.ContentStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.GZIPInputStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class FileControllerTest {
+
+    private static final String REPORT = "# 报告\n\n" + "虚拟线程适合大量阻塞 IO 的任务。\n".repeat(200);
+
+    @TempDir
+    Path root;
+
+    private FileServiceImpl fileService;
+
+    private MockMvc mockMvc;
+
+    private String sha256;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ContentStore contentStore = new ContentStore(root);
+        sha256 = contentStore.put("markdown/report.md", REPORT.getBytes(StandardCharsets.UTF_8)).sha256();
+        fileService = new FileServiceImpl(root.resolve("markdown"), contentStore);
+        FileController fileController = new FileController();
+        ReflectionTestUtils.setField(fileController, "fileService", fileService);
+        mockMvc = MockMvcBuilders.standaloneSetup(fileController).build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        fileService.close();
+    }
+
+    @Test
+    void servesFileWithValidators() throws Exception {
+        MvcResult result = mockMvc.perform(get("/files/markdown/report.md"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + sha256 + "\""))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andReturn();
+        Assertions.assertEquals(REPORT, result.getResponse().getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void returnsNotModifiedForMatchingValidators() throws Exception {
+        mockMvc.perform(get("/files/markdown/report.md").header(HttpHeaders.IF_NONE_MATCH, "\"" + sha256 + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        String lastModified = mockMvc.perform(get("/files/markdown/report.md"))
+                .andReturn().getResponse().getHeader(HttpHeaders.LAST_MODIFIED);
+        mockMvc.perform(get("/files/markdown/report.md").header(HttpHeaders.IF_MODIFIED_SINCE, lastModified))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(get("/files/markdown/report.md").header(HttpHeaders.IF_NONE_MATCH, "\"other\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void servesByteRanges() throws Exception {
+        byte[] bytes = REPORT.getBytes(StandardCharsets.UTF_8);
+        MvcResult result = mockMvc.perform(get("/files/markdown/report.md").header(HttpHeaders.RANGE, "bytes=0-9"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-9/" + bytes.length))
+                .andReturn();
+        Assertions.assertEquals(10, result.getResponse().getContentAsByteArray().length);
+
+        // If-Range 与当前版本不一致时返回完整文件
+        mockMvc.perform(get("/files/markdown/report.md")
+                        .header(HttpHeaders.RANGE, "bytes=0-9")
+                        .header(HttpHeaders.IF_RANGE, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, bytes.length));
+    }
+
+    @Test
+    void servesPrecompressedVariants() throws Exception {
+        MvcResult result = mockMvc.perform(get("/files/markdown/report.md")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + sha256 + "-gzip\""))
+                .andReturn();
+        byte[] compressed = result.getResponse().getContentAsByteArray();
+        Assertions.assertTrue(compressed.length < REPORT.getBytes(StandardCharsets.UTF_8).length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            Assertions.assertEquals(REPORT, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        Assertions.assertTrue(Files.exists(root.resolve("markdown/report.md.gz")));
+
+        // 外部生成的 brotli 文件（修改时间与原文件相同）优先
+        Path brotli = Files.write(root.resolve("markdown/report.md.br"), new byte[]{1, 2, 3});
+        Files.setLastModifiedTime(brotli, Files.getLastModifiedTime(root.resolve("markdown/report.md")));
+        mockMvc.perform(get("/files/markdown/report.md").header(HttpHeaders.ACCEPT_ENCODING, "gzip, br"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "br"));
+
+        // 过期的压缩文件不再使用
+        Files.setLastModifiedTime(brotli, FileTime.fromMillis(0));
+        mockMvc.perform(get("/files/markdown/report.md").header(HttpHeaders.ACCEPT_ENCODING, "br;q=1, gzip;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    void handsFullBodyToSendfileWhenSupported() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(get("/files/markdown/report.md")
+                        .requestAttr("org.apache.tomcat.sendfile.support", Boolean.TRUE))
+                .andExpect(status().isOk())
+                .andExpect(request -> Assertions.assertEquals(
+                        root.resolve("markdown/report.md").toAbsolutePath().toString(),
+                        request.getRequest().getAttribute("org.apache.tomcat.sendfile.filename")))
+                .andReturn().getResponse();
+        Assertions.assertEquals(REPORT.getBytes(StandardCharsets.UTF_8).length, response.getContentLengthLong());
+        Assertions.assertEquals("\"" + sha256 + "\"", response.getHeader(HttpHeaders.ETAG));
+        Assertions.assertEquals(1, response.getHeaders(HttpHeaders.ETAG).size());
+        Assertions.assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void returnsNotFoundForMissingFile() throws Exception {
+        mockMvc.perform(get("/files/markdown/missing.md")).andExpect(status().isNotFound());
+    }
+}
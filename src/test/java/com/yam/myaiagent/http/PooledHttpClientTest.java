@@ -0,0 +1,117 @@
+package com.yam.myaiagent.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class PooledHttpClientTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        // 前两次返回 503，之后成功
+        server.createContext("/flaky", exchange -> {
+            int count = requests.incrementAndGet();
+            respond(exchange, count <= 2 ? 503 : 200, "ok");
+        });
+        server.createContext("/missing", exchange -> {
+            requests.incrementAndGet();
+            respond(exchange, 404, "missing");
+        });
+        // 记录同时处理的请求数
+        server.createContext("/slow", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            respond(exchange, 200, "slow");
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, int status, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static PooledHttpClient client(int maxConcurrentPerHost) {
+        return new PooledHttpClient(Duration.ofSeconds(2), Duration.ofSeconds(5), maxConcurrentPerHost, 3,
+                Duration.ofMillis(10), Duration.ofMillis(50));
+    }
+
+    @Test
+    void retriesRetryableStatus() throws IOException {
+        Assertions.assertEquals("ok", client(4).getString(baseUrl + "/flaky"));
+        Assertions.assertEquals(3, requests.get());
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        HttpStatusException e = Assertions.assertThrows(HttpStatusException.class,
+                () -> client(4).getString(baseUrl + "/missing"));
+        Assertions.assertEquals(404, e.getStatusCode());
+        Assertions.assertEquals(1, requests.get());
+    }
+
+    @Test
+    void limitsConcurrencyPerHost() throws Exception {
+        PooledHttpClient client = client(2);
+        List<Future<HttpResponse<String>>> responses = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 6; i++) {
+                responses.add(executor.submit(() -> client.get(baseUrl + "/slow")));
+            }
+            for (Future<HttpResponse<String>> response : responses) {
+                Assertions.assertEquals(200, response.get().statusCode());
+            }
+        }
+        Assertions.assertTrue(maxInFlight.get() <= 2);
+    }
+
+    @Test
+    void backoffIsJitteredAndBounded() {
+        PooledHttpClient client = client(1);
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            Duration backoff = client.backoff(attempt, Optional.empty());
+            Assertions.assertTrue(backoff.toMillis() <= 50);
+        }
+        Assertions.assertEquals(Duration.ofMillis(50), client.backoff(1, Optional.of("120")));
+        Assertions.assertEquals(Duration.ZERO, client.backoff(1, Optional.of("0")));
+    }
+}
@@ -0,0 +1,89 @@
+package com.yam.myaiagent.pdf;
+
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Paragraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDF 生成 JMH 基准测试：对比原来每次新建字体、整篇内容作为一个段落排版的方式与 {@link PdfRenderService}
+ * 生成单个文档的耗时和内存分配
+ * <p>
+ * 两种方式原本都直接写入文件，这里都写入空输出流，只比较字体创建和排版的开销。
+ * 内存分配看 GC 分析器输出的 gc.alloc.rate.norm（每个文档分配的字节数）。
+ * 运行方式：执行 main 方法（需先 mvn test-compile 生成 JMH 元数据）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfRenderBenchmark {
+
+    // 段落数：短回复和长报告
+    @Param({"5", "500"})
+    private int sections;
+
+    private final PdfRenderService renderService = new PdfRenderService();
+
+    private String content;
+
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder("# Java 并发报告\n\n");
+        for (int i = 0; i < sections; i++) {
+            builder.append("## 第 ").append(i + 1).append(" 节\n\n")
+                    .append("虚拟线程适合**大量阻塞 IO** 的任务，线程池大小不再需要按 CPU 核数估算。\n")
+                    .append("- 使用 `Executors.newVirtualThreadPerTaskExecutor()` 创建\n")
+                    .append("- 避免在 synchronized 块中阻塞\n\n");
+        }
+        content = builder.toString();
+    }
+
+    @Benchmark
+    public void legacy() throws IOException {
+        try (PdfWriter writer = new PdfWriter(OutputStream.nullOutputStream());
+             PdfDocument pdf = new PdfDocument(writer);
+             Document document = new Document(pdf)) {
+            PdfFont font = PdfFontFactory.createFont("STSongStd-Light", "UniGB-UCS2-H");
+            document.setFont(font);
+            document.add(new Paragraph(content));
+        }
+    }
+
+    @Benchmark
+    public void renderService() throws IOException {
+        renderService.render(content, OutputStream.nullOutputStream());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PdfRenderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
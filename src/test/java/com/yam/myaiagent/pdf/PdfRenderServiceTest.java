@@ -0,0 +1,139 @@
+package com.yam.myaiagent.pdf;
+
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.font.PdfType0Font;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfString;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.WriterProperties;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfTextExtractor;
+import com.yam.myaiagent.storage.ContentStore;
+import com.yam.myaiagent.storage.StoredFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+class PdfRenderServiceTest {
+
+    private static final String MARKDOWN = """
+            # 项目报告
+
+            虚拟线程适合**大量阻塞 IO** 的任务，使用 `Executors.newVirtualThreadPerTaskExecutor()` 创建。
+
+            - 第一项
+            - 第二项
+
+            1. 步骤一
+            2. 步骤二
+
+            > 引用的内容
+
+            ---
+
+            ```java
+            System.out.println("你好");
+            ```
+            """;
+
+    private static final Pattern DATE_PATTERN = Pattern.compile("(/(?:CreationDate|ModDate)\\(D:)\\d{14}");
+
+    private final PdfRenderService service = new PdfRenderService();
+
+    private static String text(byte[] pdf) throws IOException {
+        try (PdfDocument document = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 1; i <= document.getNumberOfPages(); i++) {
+                text.append(PdfTextExtractor.getTextFromPage(document.getPage(i))).append('\n');
+            }
+            return text.toString();
+        }
+    }
+
+    private static int pages(InputStream pdf) throws IOException {
+        try (PdfDocument document = new PdfDocument(new PdfReader(pdf))) {
+            return document.getNumberOfPages();
+        }
+    }
+
+    @Test
+    void rendersMarkdownBlocks() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        service.render(MARKDOWN, output);
+
+        String text = text(output.toByteArray());
+        Assertions.assertTrue(text.contains("项目报告"), text);
+        Assertions.assertFalse(text.contains("#"), text);
+        Assertions.assertFalse(text.contains("**"), text);
+        Assertions.assertTrue(text.contains("大量阻塞 IO"), text);
+        Assertions.assertTrue(text.contains("● 第二项"), text);
+        Assertions.assertTrue(text.contains("1. 步骤一"), text);
+        Assertions.assertTrue(text.contains("引用的内容"), text);
+        Assertions.assertTrue(text.contains("System.out.println(\"你好\");"), text);
+        Assertions.assertFalse(text.contains("```"), text);
+    }
+
+    @Test
+    void reusesParsedCMapAcrossDocuments() throws IOException {
+        PdfFont first = service.createFont();
+        PdfFont second = service.createFont();
+        Assertions.assertNotSame(first, second);
+        Assertions.assertSame(((PdfType0Font) first).getCmap(), ((PdfType0Font) second).getCmap());
+
+        // 与直接按编码创建的字体等价
+        PdfType0Font expected = (PdfType0Font) PdfFontFactory.createFont("STSongStd-Light", "UniGB-UCS2-H");
+        Assertions.assertEquals(expected.getCmap().getCmapName(), ((PdfType0Font) first).getCmap().getCmapName());
+        Assertions.assertArrayEquals(expected.convertToBytes("原创项目 PDF"), first.convertToBytes("原创项目 PDF"));
+    }
+
+    @Test
+    void reusedCMapProducesSameDocumentAsFactoryFont() throws IOException {
+        String markdown = MARKDOWN + "\n## 第 2 章\n\n" + "全角标点，English words 与数字 12345。\n\n".repeat(200);
+        byte[] reused = render(markdown, service.createFont());
+        byte[] factory = render(markdown, service.createFactoryFont());
+        Assertions.assertTrue(pages(new ByteArrayInputStream(reused)) > 1);
+        Assertions.assertArrayEquals(factory, reused);
+    }
+
+    /**
+     * 固定文档 ID，并把创建和修改时间替换为等长的固定值，相同内容的输出逐字节相同
+     */
+    private byte[] render(String markdown, PdfFont font) throws IOException {
+        PdfString id = new PdfString("pdf-render-service-test");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        service.render(markdown, new PdfWriter(output, new WriterProperties()
+                .setInitialDocumentId(id)
+                .setModifiedDocumentId(id)), font);
+        String pdf = output.toString(StandardCharsets.ISO_8859_1);
+        return DATE_PATTERN.matcher(pdf).replaceAll("$1" + "0".repeat(14))
+                .getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    void streamsLongContentIntoContentStore(@TempDir Path root) throws IOException {
+        ContentStore contentStore = new ContentStore(root);
+        String markdown = "## 第 1 章\n\n" + "虚拟线程适合大量阻塞 IO 的任务。\n\n".repeat(2_000);
+
+        StoredFile storedFile = service.render(markdown, contentStore, "pdf/long.pdf");
+
+        Assertions.assertEquals(root.resolve("pdf/long.pdf"), storedFile.path());
+        try (InputStream in = Files.newInputStream(storedFile.path())) {
+            Assertions.assertTrue(pages(in) > 10);
+        }
+        // 临时文件已经移入存储
+        try (Stream<Path> files = Files.list(root)) {
+            Assertions.assertTrue(files.noneMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.yam.myaiagent.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+import java.util.stream.Stream;
+
+class ContentStoreTest {
+
+    @TempDir
+    Path root;
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private long blobCount() throws IOException {
+        try (Stream<Path> files = Files.walk(root.resolve(".blobs"), 2)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().startsWith("refs."))
+                    .count();
+        }
+    }
+
+    @Test
+    void storesIdenticalContentOnce() throws IOException {
+        ContentStore store = new ContentStore(root);
+        StoredFile first = store.put("markdown/a.md", bytes("# 报告"));
+        StoredFile second = store.put("pdf/b.md", bytes("# 报告"));
+
+        Assertions.assertFalse(first.deduplicated());
+        Assertions.assertTrue(second.deduplicated());
+        Assertions.assertEquals(first.sha256(), second.sha256());
+        Assertions.assertEquals("\"" + first.sha256() + "\"", first.etag());
+        Assertions.assertEquals("# 报告", Files.readString(root.resolve("markdown/a.md")));
+        Assertions.assertTrue(Files.isSameFile(root.resolve("markdown/a.md"), root.resolve("pdf/b.md")));
+        Assertions.assertEquals(2, store.refCount(first.sha256()));
+        Assertions.assertEquals(1, blobCount());
+    }
+
+    @Test
+    void releasesBlobWhenLastReferenceGoes() throws IOException {
+        ContentStore store = new ContentStore(root);
+        String v1 = store.put("file/a.txt", bytes("v1")).sha256();
+        store.put("file/b.txt", bytes("v1"));
+
+        // 覆盖一个引用后数据块仍被另一个文件引用
+        String v2 = store.put("file/a.txt", bytes("v2")).sha256();
+        Assertions.assertEquals(1, store.refCount(v1));
+        Assertions.assertEquals("v2", Files.readString(root.resolve("file/a.txt")));
+        Assertions.assertEquals("v1", Files.readString(root.resolve("file/b.txt")));
+
+        Assertions.assertTrue(store.delete("file/b.txt"));
+        Assertions.assertEquals(0, store.refCount(v1));
+        Assertions.assertFalse(Files.exists(root.resolve("file/b.txt")));
+        Assertions.assertEquals(1, blobCount());
+        Assertions.assertEquals(1, store.refCount(v2));
+    }
+
+    @Test
+    void movesSourceFileIntoStore() throws IOException {
+        ContentStore store = new ContentStore(root);
+        Path source = Files.writeString(root.resolve("download.part"), "data");
+        StoredFile file = store.put("download/data.bin", source);
+
+        Assertions.assertFalse(Files.exists(source));
+        Assertions.assertEquals("data", Files.readString(file.path()));
+        Assertions.assertEquals(4, file.size());
+
+        Path duplicate = Files.writeString(root.resolve("again.part"), "data");
+        Assertions.assertTrue(store.put("download/copy.bin", duplicate).deduplicated());
+        Assertions.assertFalse(Files.exists(duplicate));
+    }
+
+    @Test
+    void keepsReferencesAcrossRestarts() throws IOException {
+        String sha256 = new ContentStore(root).put("markdown/a.md", bytes("保存")).sha256();
+
+        ContentStore reopened = new ContentStore(root);
+        Assertions.assertEquals(sha256, reopened.hashOf("markdown/a.md").orElseThrow());
+        Assertions.assertEquals(1, reopened.refCount(sha256));
+        Assertions.assertTrue(reopened.put("markdown/a.md", bytes("保存")).deduplicated());
+    }
+
+    @Test
+    void appendsChangesToJournalAndCompactsIt() throws IOException {
+        ContentStore store = new ContentStore(root, null, 4);
+        String kept = store.put("pdf/kept.pdf", bytes("kept")).sha256();
+        store.put("pdf/removed.pdf", bytes("removed"));
+        store.delete("pdf/removed.pdf");
+        // 变更只追加到日志，没有重写快照
+        Assertions.assertFalse(Files.exists(root.resolve(".blobs/refs.json")));
+        Assertions.assertEquals(3, Files.readAllLines(root.resolve(".blobs/refs.log")).size());
+
+        for (int i = 0; i < 10; i++) {
+            store.put("pdf/" + i + ".pdf", bytes("content " + i));
+        }
+        Assertions.assertTrue(Files.exists(root.resolve(".blobs/refs.json")));
+        Assertions.assertTrue(Files.readAllLines(root.resolve(".blobs/refs.log")).size() <= 11);
+
+        // 日志末尾不完整的行被跳过，重新打开时日志合并为快照
+        Files.writeString(root.resolve(".blobs/refs.log"), "{\"sha256\":", StandardOpenOption.APPEND);
+        ContentStore reopened = new ContentStore(root, null, 4);
+        Assertions.assertFalse(Files.exists(root.resolve(".blobs/refs.log")));
+        Assertions.assertEquals(kept, reopened.hashOf("pdf/kept.pdf").orElseThrow());
+        Assertions.assertTrue(reopened.hashOf("pdf/removed.pdf").isEmpty());
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(reopened.hashOf("pdf/" + i + ".pdf").isPresent());
+        }
+        Assertions.assertEquals(1, reopened.refCount(kept));
+    }
+
+    @Test
+    void gcDropsReferencesToFilesRemovedOutsideTheStore() throws IOException {
+        ContentStore store = new ContentStore(root);
+        String sha256 = store.put("file/a.txt", bytes("temporary")).sha256();
+        Files.delete(root.resolve("file/a.txt"));
+
+        Assertions.assertTrue(store.hashOf("file/a.txt").isEmpty());
+        Assertions.assertEquals(1, store.gc());
+        Assertions.assertEquals(0, store.refCount(sha256));
+        Assertions.assertEquals(0, blobCount());
+    }
+
+    @Test
+    void collectsStaleReferencesWhenOpened() throws IOException {
+        String sha256 = new ContentStore(root).put("download/a.bin", bytes("old")).sha256();
+        Files.delete(root.resolve("download/a.bin"));
+
+        ContentStore reopened = new ContentStore(root);
+        Assertions.assertEquals(0, reopened.refCount(sha256));
+        Assertions.assertEquals(0, blobCount());
+    }
+
+    @Test
+    void writesUncountedCopiesWhenHardLinksFail() throws IOException {
+        ContentStore store = new ContentStore(root) {
+            @Override
+            void createLink(Path link, Path existing) throws IOException {
+                throw new FileSystemException(link.toString(), existing.toString(), "Operation not permitted");
+            }
+        };
+        StoredFile first = store.put("pdf/a.pdf", bytes("内容"));
+        StoredFile second = store.put("pdf/b.pdf", bytes("内容"));
+
+        // 副本占用独立的空间：不算去重，不计入引用数，也不保留数据块
+        Assertions.assertFalse(first.deduplicated());
+        Assertions.assertFalse(second.deduplicated());
+        Assertions.assertEquals(0, store.refCount(first.sha256()));
+        Assertions.assertEquals(0, blobCount());
+        Assertions.assertEquals("内容", Files.readString(root.resolve("pdf/b.pdf")));
+        Assertions.assertEquals(first.sha256(), store.hashOf("pdf/a.pdf").orElseThrow());
+
+        Assertions.assertTrue(store.delete("pdf/a.pdf"));
+        Assertions.assertEquals("内容", Files.readString(root.resolve("pdf/b.pdf")));
+    }
+
+    @Test
+    void rejectsNamesOutsideTheStore() {
+        ContentStore store = new ContentStore(root);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> store.put("../a.txt", bytes("x")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> store.put(".blobs/a.txt", bytes("x")));
+    }
+
+    @Test
+    void detectsInPlaceWritesToLinkedFiles() throws IOException {
+        ContentStore store = new ContentStore(root);
+        String sha256 = store.put("pdf/a.pdf", bytes("原始内容")).sha256();
+        store.put("pdf/b.pdf", bytes("原始内容"));
+        Path blob = root.resolve(".blobs").resolve(sha256.substring(0, 2)).resolve(sha256);
+        Assertions.assertFalse(Files.getPosixFilePermissions(blob).contains(PosixFilePermission.OWNER_WRITE));
+
+        try {
+            Files.writeString(root.resolve("pdf/a.pdf"), "追加", StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            // 普通用户无法写入只读的数据块，内容保持不变
+            Assertions.assertEquals("原始内容", Files.readString(root.resolve("pdf/b.pdf")));
+            return;
+        }
+        // root 用户可以写入只读文件：同一数据块的所有文件都不再被认为是原来的内容
+        Assertions.assertTrue(store.hashOf("pdf/a.pdf").isEmpty());
+        Assertions.assertTrue(store.hashOf("pdf/b.pdf").isEmpty());
+
+        // 被修改的数据块不会被复用
+        StoredFile again = store.put("pdf/c.pdf", bytes("原始内容"));
+        Assertions.assertFalse(again.deduplicated());
+        Assertions.assertEquals("原始内容", Files.readString(again.path()));
+        Assertions.assertEquals(sha256, store.hashOf("pdf/c.pdf").orElseThrow());
+    }
+
+    @Test
+    void writesIndependentCopiesOutsideLinkedDirs() throws IOException {
+        ContentStore store = new ContentStore(root, Set.of("pdf"));
+        String sha256 = store.put("markdown/a.md", bytes("# 报告")).sha256();
+        StoredFile second = store.put("markdown/b.md", bytes("# 报告"));
+
+        Assertions.assertFalse(second.deduplicated());
+        Assertions.assertFalse(Files.isSameFile(root.resolve("markdown/a.md"), root.resolve("markdown/b.md")));
+        Assertions.assertEquals(0, blobCount());
+        Assertions.assertTrue(store.put("markdown/a.md", bytes("# 报告")).deduplicated());
+
+        // 原地修改只影响被修改的文件
+        Files.writeString(root.resolve("markdown/a.md"), "\n追加", StandardOpenOption.APPEND);
+        Assertions.assertTrue(store.hashOf("markdown/a.md").isEmpty());
+        Assertions.assertEquals(sha256, store.hashOf("markdown/b.md").orElseThrow());
+        Assertions.assertEquals("# 报告", Files.readString(root.resolve("markdown/b.md")));
+
+        // 内容相同但文件已被修改时重新写入
+        Assertions.assertFalse(store.put("markdown/a.md", bytes("# 报告")).deduplicated());
+        Assertions.assertEquals(sha256, store.hashOf("markdown/a.md").orElseThrow());
+
+        // 链接目录仍然去重
+        store.put("pdf/x.pdf", bytes("pdf"));
+        Assertions.assertTrue(store.put("pdf/y.pdf", bytes("pdf")).deduplicated());
+        Assertions.assertEquals(1, blobCount());
+    }
+}
@@ -0,0 +1,156 @@
+package com.yam.myaiagent.storage;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+class MarkdownCatalogTest {
+
+    @TempDir
+    Path dir;
+
+    private MarkdownCatalog catalog;
+
+    @AfterEach
+    void close() throws IOException {
+        if (catalog != null) {
+            catalog.close();
+        }
+    }
+
+    private void write(String name, String content, long lastModified) throws IOException {
+        Path file = Files.writeString(dir.resolve(name), content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+    }
+
+    private static List<String> names(MarkdownFilePage page) {
+        return page.items().stream().map(MarkdownFileInfo::name).toList();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "catalog was not updated");
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    void pagesByNameWithCursor() throws IOException {
+        for (int i = 0; i < 7; i++) {
+            write("report-" + i + ".md", "# " + i, 1000L * i);
+        }
+        write("notes.txt", "not markdown", 0);
+        catalog = new MarkdownCatalog(dir);
+        catalog.start();
+
+        List<String> all = new ArrayList<>();
+        String cursor = null;
+        do {
+            MarkdownFilePage page = catalog.list(MarkdownCatalog.Sort.NAME, null, null, cursor, 3);
+            Assertions.assertTrue(page.items().size() <= 3);
+            Assertions.assertEquals(7, page.total());
+            all.addAll(names(page));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        Assertions.assertEquals(List.of("report-0.md", "report-1.md", "report-2.md", "report-3.md",
+                "report-4.md", "report-5.md", "report-6.md"), all);
+    }
+
+    @Test
+    void pagesByRecentAndFilters() throws IOException {
+        write("a-old.md", "old", 1_000);
+        write("b-new.md", "new", 3_000);
+        write("a-mid.md", "mid", 2_000);
+        catalog = new MarkdownCatalog(dir);
+        catalog.start();
+
+        MarkdownFilePage first = catalog.list(MarkdownCatalog.Sort.RECENT, null, null, null, 2);
+        Assertions.assertEquals(List.of("b-new.md", "a-mid.md"), names(first));
+        MarkdownFilePage second = catalog.list(MarkdownCatalog.Sort.RECENT, null, null, first.nextCursor(), 2);
+        Assertions.assertEquals(List.of("a-old.md"), names(second));
+        Assertions.assertNull(second.nextCursor());
+
+        Assertions.assertEquals(List.of("a-mid.md", "a-old.md"),
+                names(catalog.list(MarkdownCatalog.Sort.NAME, "a-", null, null, 10)));
+        Assertions.assertEquals(List.of("a-mid.md"),
+                names(catalog.list(MarkdownCatalog.Sort.RECENT, "a-", "MID", null, 10)));
+    }
+
+    @Test
+    void capsEntriesScannedPerPage() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            write("b-" + i + ".md", "# " + i, 10_000L - 1000L * i);
+        }
+        write("a-match.md", "match", 0);
+        catalog = new MarkdownCatalog(dir, 3);
+        catalog.start();
+
+        // 匹配的文件最旧，前几页只检查到不匹配的文件，返回空页和继续扫描的游标
+        MarkdownFilePage first = catalog.list(MarkdownCatalog.Sort.RECENT, "a-", null, null, 10);
+        Assertions.assertTrue(first.items().isEmpty());
+        Assertions.assertNotNull(first.nextCursor());
+
+        List<String> found = new ArrayList<>();
+        int pages = 1;
+        String cursor = first.nextCursor();
+        while (cursor != null) {
+            MarkdownFilePage page = catalog.list(MarkdownCatalog.Sort.RECENT, "a-", "MATCH", cursor, 10);
+            found.addAll(names(page));
+            cursor = page.nextCursor();
+            pages++;
+        }
+        Assertions.assertEquals(List.of("a-match.md"), found);
+        Assertions.assertEquals(4, pages);
+    }
+
+    @Test
+    void reportsSizeModifiedTimeAndHash() throws IOException {
+        write("a.md", "# 标题", 5_000);
+        catalog = new MarkdownCatalog(dir);
+        catalog.start();
+
+        MarkdownFileInfo info = catalog.list(MarkdownCatalog.Sort.NAME, null, null, null, 1).items().get(0);
+        Assertions.assertEquals(Files.size(dir.resolve("a.md")), info.size());
+        Assertions.assertEquals(5_000, info.lastModified());
+        Assertions.assertEquals(DigestUtil.sha256Hex("# 标题"), info.sha256());
+    }
+
+    @Test
+    void followsChangesInTheDirectory() throws Exception {
+        write("a.md", "a", 1_000);
+        catalog = new MarkdownCatalog(dir);
+        catalog.start();
+        Assertions.assertEquals(List.of("a.md"), catalog.names());
+
+        write("b.md", "b", 2_000);
+        await(() -> catalog.names().contains("b.md"));
+
+        Files.delete(dir.resolve("a.md"));
+        await(() -> !catalog.names().contains("a.md"));
+
+        write("b.md", "changed", 3_000);
+        await(() -> catalog.list(MarkdownCatalog.Sort.NAME, null, null, null, 1).items().get(0).size() == 7);
+        Assertions.assertEquals(DigestUtil.sha256Hex("changed"),
+                catalog.list(MarkdownCatalog.Sort.RECENT, null, null, null, 1).items().get(0).sha256());
+    }
+
+    @Test
+    void rejectsInvalidCursor() throws IOException {
+        catalog = new MarkdownCatalog(dir);
+        catalog.start();
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> catalog.list(MarkdownCatalog.Sort.RECENT, null, null, "not-a-cursor", 10));
+    }
+}
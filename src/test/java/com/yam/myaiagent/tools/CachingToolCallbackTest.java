@@ -0,0 +1,202 @@
+package com.yam.myaiagent.tools;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.model.function.FunctionCallback;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+class CachingToolCallbackTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private ToolCallback tool(String name, Function<String, String> body) {
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return ToolDefinition.builder().name(name).description(name).inputSchema("{}").build();
+            }
+
+            @Override
+            public String call(String arguments) {
+                calls.incrementAndGet();
+                return body.apply(arguments);
+            }
+        };
+    }
+
+    private static ToolCachePolicy policy(Duration ttl) {
+        return new ToolCachePolicy(ttl, 100, 1000, "Error");
+    }
+
+    @Test
+    void cachesByNormalizedArguments() {
+        CachingToolCallback cached = new CachingToolCallback(tool("search", args -> "result"),
+                policy(Duration.ofMinutes(1)));
+
+        Assertions.assertEquals("result", cached.call("{\"query\":\"java\",\"page\":1}"));
+        Assertions.assertEquals("result", cached.call("{ \"page\": 1, \"query\": \"java\" }"));
+        Assertions.assertEquals("result", cached.call("{\"query\":\"spring\",\"page\":1}"));
+
+        Assertions.assertEquals(2, calls.get());
+        ToolCacheStats stats = cached.getStats();
+        Assertions.assertEquals(1, stats.hitCount());
+        Assertions.assertEquals(2, stats.missCount());
+        Assertions.assertEquals(2, stats.entries());
+    }
+
+    @Test
+    void doesNotCacheErrorsOrOversizedResults() {
+        CachingToolCallback cached = new CachingToolCallback(
+                tool("search", args -> args.contains("big") ? "x".repeat(2000) : "\"Error searching: timeout\""),
+                policy(Duration.ofMinutes(1)));
+
+        cached.call("{\"query\":\"java\"}");
+        cached.call("{\"query\":\"java\"}");
+        cached.call("{\"query\":\"big\"}");
+        cached.call("{\"query\":\"big\"}");
+
+        Assertions.assertEquals(4, calls.get());
+        Assertions.assertEquals(4, cached.getStats().uncachedCount());
+    }
+
+    @Test
+    void expiresAfterTtl() throws Exception {
+        CachingToolCallback cached = new CachingToolCallback(tool("weather", args -> "sunny"),
+                policy(Duration.ofMillis(100)));
+
+        cached.call("{\"city\":\"北京\"}");
+        Thread.sleep(200);
+        cached.call("{\"city\":\"北京\"}");
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    void coalescesConcurrentIdenticalCalls() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CachingToolCallback cached = new CachingToolCallback(tool("scrape", args -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "page";
+        }), policy(Duration.ofMinutes(1)));
+
+        List<Future<String>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> cached.call("{\"url\":\"https://example.com\"}")));
+            }
+            // 等所有调用都进入等待后再放行
+            while (cached.getStats().coalescedCount() + cached.getStats().missCount() < 8) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                Assertions.assertEquals("page", result.get(5, TimeUnit.SECONDS));
+            }
+        }
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(7, cached.getStats().coalescedCount());
+    }
+
+    @Test
+    void releasesInFlightCallWhenToolThrowsError() {
+        AtomicInteger attempt = new AtomicInteger();
+        CachingToolCallback cached = new CachingToolCallback(tool("search", args -> {
+            if (attempt.incrementAndGet() == 1) {
+                throw new StackOverflowError();
+            }
+            return "result";
+        }), policy(Duration.ofMinutes(1)));
+
+        Assertions.assertThrows(StackOverflowError.class, () -> cached.call("{}"));
+        // 失败的调用已移出缓存，相同参数的调用重新执行而不是一直等待
+        Assertions.assertEquals("result", cached.call("{}"));
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    void coalescedWaiterCanBeInterrupted() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CachingToolCallback cached = new CachingToolCallback(tool("scrape", args -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "page";
+        }), policy(Duration.ofMinutes(1)));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> leader = executor.submit(() -> cached.call("{}"));
+            started.await(5, TimeUnit.SECONDS);
+            AtomicReference<Throwable> waiterError = new AtomicReference<>();
+            Thread waiter = Thread.ofVirtual().start(() -> {
+                try {
+                    cached.call("{}");
+                } catch (Throwable e) {
+                    waiterError.set(e);
+                }
+            });
+            while (cached.getStats().coalescedCount() < 1) {
+                Thread.sleep(10);
+            }
+            // 中断等待中的调用，不需要等进行中的调用结束
+            waiter.interrupt();
+            waiter.join(1000);
+            Assertions.assertFalse(waiter.isAlive());
+            Assertions.assertInstanceOf(IllegalStateException.class, waiterError.get());
+            release.countDown();
+            Assertions.assertEquals("page", leader.get(5, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(1, calls.get());
+    }
+
+    @Test
+    void registryDecoratesConfiguredToolsAndSharesCacheByName() {
+        ToolResultCache toolResultCache = new ToolResultCache(Map.of("search", policy(Duration.ofMinutes(1))));
+        ToolCallback other = tool("other", args -> "other");
+        Assertions.assertSame(other, toolResultCache.decorate(other));
+
+        // MCP 客户端每次获取工具都会得到新的实例
+        toolResultCache.decorate(tool("search", args -> "first")).call("{}");
+        String result = toolResultCache.decorate(tool("search", args -> "second")).call("{}");
+        Assertions.assertEquals("first", result);
+        Assertions.assertEquals(1, toolResultCache.getStats().get("search").hitCount());
+    }
+
+    @Test
+    void decoratesProviderToolsWithoutReplacingTheProvider() {
+        ToolResultCache toolResultCache = new ToolResultCache(Map.of("search", policy(Duration.ofMinutes(1))));
+        ToolCallback other = tool("other", args -> "other");
+        ToolCallbackProvider provider = () -> new FunctionCallback[]{tool("search", args -> "result"), other};
+
+        ToolCallbackProvider decorated = toolResultCache.decorate(provider);
+        FunctionCallback[] callbacks = decorated.getToolCallbacks();
+        Assertions.assertInstanceOf(CachingToolCallback.class, callbacks[0]);
+        Assertions.assertSame(other, callbacks[1]);
+        callbacks[0].call("{}");
+        decorated.getToolCallbacks()[0].call("{}");
+        Assertions.assertEquals(1, calls.get());
+        // 原提供者返回的工具不受影响
+        Assertions.assertFalse(provider.getToolCallbacks()[0] instanceof CachingToolCallback);
+    }
+}
@@ -1,11 +1,33 @@
 package com.yam.myaiagent.tools;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.yam.myaiagent.http.PooledHttpClient;
+import com.yam.myaiagent.storage.ContentStore;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ResourceDownloadToolTest {
 
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    @TempDir
+    Path storeDir;
+
     @Test
     public void testDownloadResource() {
         ResourceDownloadTool tool = new ResourceDownloadTool();
@@ -14,4 +36,184 @@ public class ResourceDownloadToolTest {
         String result = tool.downloadResource(url, fileName);
         assertNotNull(result);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void downloadsSmallResourceInOneRequest() throws Exception {
+        byte[] content = randomBytes(10_000);
+        AtomicInteger rangeRequests = new AtomicInteger();
+        HttpServer server = startServer(content, rangeRequests);
+        try {
+            String result = tool(1024 * 1024, Duration.ofMinutes(1))
+                    .downloadResource(url(server), "data.bin");
+            assertTrue(result.startsWith("Resource downloaded successfully"), result);
+            assertArrayEquals(content, Files.readAllBytes(storeDir.resolve("download/data.bin")));
+            assertEquals(0, rangeRequests.get());
+            assertFalse(Files.exists(storeDir.resolve("download/data.bin.part")));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void rejectsResourceOverSizeLimit() throws Exception {
+        HttpServer server = startServer(randomBytes(10_000), new AtomicInteger());
+        try {
+            ResourceDownloadTool tool = new ResourceDownloadTool(client(), new ContentStore(storeDir), 5_000,
+                    1024 * 1024, 4, Duration.ofMinutes(1));
+            String result = tool.downloadResource(url(server), "big.bin");
+            assertTrue(result.contains("exceeds the limit"), result);
+            assertFalse(Files.exists(storeDir.resolve("download/big.bin")));
+            assertFalse(Files.exists(storeDir.resolve("download/big.bin.part")));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void rejectsFileNameWithPath() {
+        String result = tool(1024 * 1024, Duration.ofMinutes(1)).downloadResource("http://127.0.0.1/x", "../x.bin");
+        assertTrue(result.contains("invalid file name"), result);
+    }
+
+    @Test
+    public void resumesPausedDownload() throws Exception {
+        byte[] content = randomBytes(3 * 1024 * 1024 + 123);
+        AtomicInteger rangeRequests = new AtomicInteger();
+        HttpServer server = startServer(content, rangeRequests);
+        try {
+            // 时间限制为 0：写入第一段后立即暂停
+            String paused = tool(Long.MAX_VALUE, Duration.ZERO).downloadResource(url(server), "resume.bin");
+            assertTrue(paused.startsWith("Download paused"), paused);
+            long saved = Files.size(storeDir.resolve("download/resume.bin.part"));
+            assertTrue(saved > 0 && saved < content.length);
+
+            String result = tool(Long.MAX_VALUE, Duration.ofMinutes(1)).downloadResource(url(server), "resume.bin");
+            assertTrue(result.startsWith("Resource downloaded successfully"), result);
+            assertEquals(1, rangeRequests.get());
+            assertArrayEquals(content, Files.readAllBytes(storeDir.resolve("download/resume.bin")));
+            assertFalse(Files.exists(storeDir.resolve("download/resume.bin.part")));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void downloadsLargeResourceInChunks() throws Exception {
+        byte[] content = randomBytes(100_001);
+        AtomicInteger rangeRequests = new AtomicInteger();
+        HttpServer server = startServer(content, rangeRequests);
+        try {
+            String result = tool(1024, Duration.ofMinutes(1)).downloadResource(url(server), "chunked.bin");
+            assertTrue(result.startsWith("Resource downloaded successfully"), result);
+            assertEquals(4, rangeRequests.get());
+            assertArrayEquals(content, Files.readAllBytes(storeDir.resolve("download/chunked.bin")));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void resumesPausedChunkedDownloadWithoutUsingThePartFile() throws Exception {
+        // 每个分块 2MB，时间限制为 0 时各分块写入第一段后暂停
+        byte[] content = randomBytes(8 * 1024 * 1024 + 17);
+        AtomicInteger rangeRequests = new AtomicInteger();
+        HttpServer server = startServer(content, rangeRequests);
+        try {
+            String paused = tool(1024, Duration.ZERO).downloadResource(url(server), "chunked.bin");
+            assertTrue(paused.startsWith("Download paused"), paused);
+            assertEquals(4, rangeRequests.get());
+            // 乱序写入的分块不会出现在 .part 中，进度和资源版本都已保存
+            assertFalse(Files.exists(storeDir.resolve("download/chunked.bin.part")));
+            assertTrue(Files.exists(storeDir.resolve("download/chunked.bin.chunks")));
+            assertTrue(Files.exists(storeDir.resolve("download/chunked.bin.chunks.state")));
+            assertEquals("\"v1\"", Files.readString(storeDir.resolve("download/chunked.bin.part.validator")));
+
+            String result = tool(1024, Duration.ofMinutes(1)).downloadResource(url(server), "chunked.bin");
+            assertTrue(result.startsWith("Resource downloaded successfully"), result);
+            assertEquals(8, rangeRequests.get());
+            assertArrayEquals(content, Files.readAllBytes(storeDir.resolve("download/chunked.bin")));
+            assertFalse(Files.exists(storeDir.resolve("download/chunked.bin.chunks")));
+            assertFalse(Files.exists(storeDir.resolve("download/chunked.bin.chunks.state")));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void storesDuplicateContentOnce() throws Exception {
+        byte[] content = randomBytes(10_000);
+        HttpServer server = startServer(content, new AtomicInteger());
+        try {
+            ResourceDownloadTool tool = tool(1024 * 1024, Duration.ofMinutes(1));
+            tool.downloadResource(url(server), "first.bin");
+            String result = tool.downloadResource(url(server), "second.bin");
+            assertTrue(result.contains("same content already stored"), result);
+            assertArrayEquals(content, Files.readAllBytes(storeDir.resolve("download/second.bin")));
+            assertTrue(Files.isSameFile(storeDir.resolve("download/first.bin"),
+                    storeDir.resolve("download/second.bin")));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private ResourceDownloadTool tool(long chunkThreshold, Duration maxDuration) {
+        return new ResourceDownloadTool(client(), new ContentStore(storeDir), Long.MAX_VALUE, chunkThreshold, 4,
+                maxDuration);
+    }
+
+    private static PooledHttpClient client() {
+        return new PooledHttpClient(Duration.ofSeconds(2), Duration.ofSeconds(5), 8, 1,
+                Duration.ofMillis(10), Duration.ofMillis(10));
+    }
+
+    private static String url(HttpServer server) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/file";
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * 支持 HEAD 和 Range 请求的文件服务
+     */
+    private static HttpServer startServer(byte[] content, AtomicInteger rangeRequests) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/file", exchange -> {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().set("ETag", "\"v1\"");
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(content.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Matcher matcher = range == null ? null : RANGE_PATTERN.matcher(range);
+            if (matcher == null || !matcher.matches()) {
+                send(exchange, 200, content, 0, content.length);
+                return;
+            }
+            rangeRequests.incrementAndGet();
+            int from = Integer.parseInt(matcher.group(1));
+            int to = matcher.group(2).isEmpty() ? content.length - 1 : Integer.parseInt(matcher.group(2));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + content.length);
+            send(exchange, 206, content, from, to - from + 1);
+        });
+        server.start();
+        return server;
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] content, int offset, int length)
+            throws IOException {
+        exchange.sendResponseHeaders(status, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, offset, length);
+        } catch (IOException ignored) {
+            // 客户端暂停下载时会提前关闭连接
+        }
+    }
+}
@@ -1,10 +1,35 @@
 package com.yam.myaiagent.tools;
 
+import com.sun.net.httpserver.HttpServer;
+import com.yam.myaiagent.http.PooledHttpClient;
+import org.jsoup.Jsoup;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
 class WebScrapingToolTest {
 
+    private static final String PAGE = """
+            <html><head><title>Java 21 新特性</title><style>body { color: red; }</style></head>
+            <body>
+              <header><nav><a href="/">首页</a> <a href="/blog">博客</a></nav></header>
+              <div class="sidebar"><p>热门文章推荐</p></div>
+              <div id="content">
+                <h1>虚拟线程</h1>
+                <p>虚拟线程是由 JDK 而不是操作系统调度的轻量级线程，可以用同步的写法获得很高的并发能力。</p>
+                <p>阻塞 IO 时虚拟线程会让出载体线程，因此适合大量等待网络响应的任务。</p>
+                <ul><li>创建成本低</li><li>无需线程池</li></ul>
+              </div>
+              <div class="ad-banner"><p>广告：购买课程</p></div>
+              <script>alert('x')</script>
+              <footer>版权所有</footer>
+            </body></html>
+            """;
+
     @Test
     void scrapeWebPage() {
         WebScrapingTool webScrapingTool = new WebScrapingTool();
@@ -12,4 +37,61 @@ class WebScrapingToolTest {
         String result = webScrapingTool.scrapeWebPage(url);
         Assertions.assertNotNull(result);
     }
+
+    @Test
+    void extractsMainContentWithoutBoilerplate() {
+        WebScrapingTool webScrapingTool = new WebScrapingTool();
+        String result = webScrapingTool.extract(Jsoup.parse(PAGE), null);
+
+        Assertions.assertTrue(result.startsWith("Title: Java 21 新特性"));
+        Assertions.assertTrue(result.contains("# 虚拟线程"));
+        Assertions.assertTrue(result.contains("- 创建成本低\n- 无需线程池"));
+        Assertions.assertFalse(result.contains("首页"));
+        Assertions.assertFalse(result.contains("热门文章推荐"));
+        Assertions.assertFalse(result.contains("广告"));
+        Assertions.assertFalse(result.contains("alert"));
+        Assertions.assertFalse(result.contains("color"));
+        Assertions.assertFalse(result.contains("版权所有"));
+    }
+
+    @Test
+    void extractsBySelectorAndLimitsOutput() {
+        WebScrapingTool webScrapingTool = new WebScrapingTool(PooledHttpClient.shared(), 1024, 30);
+        Assertions.assertEquals("Title: Java 21 新特性\n\n- 创建成本低",
+                webScrapingTool.extract(Jsoup.parse(PAGE), "li:first-child"));
+
+        String result = webScrapingTool.extract(Jsoup.parse(PAGE), "#content");
+        Assertions.assertTrue(result.startsWith("Title: Java 21 新特性\n\n# 虚拟线程"));
+        Assertions.assertTrue(result.contains("[内容已截断"));
+    }
+
+    @Test
+    void readsAtMostMaxBodyBytes() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // 正文后面跟着大量填充内容
+        byte[] page = ("<html><body><p>开头的正文</p>" + "<p>填充内容</p>".repeat(100_000) + "</body></html>")
+                .getBytes(StandardCharsets.UTF_8);
+        server.createContext("/page", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, page.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(page);
+            } catch (Exception ignored) {
+                // 客户端读够之后关闭连接
+            }
+        });
+        server.start();
+        try {
+            PooledHttpClient httpClient = new PooledHttpClient(Duration.ofSeconds(2), Duration.ofSeconds(5), 4, 1,
+                    Duration.ofMillis(10), Duration.ofMillis(10));
+            WebScrapingTool webScrapingTool = new WebScrapingTool(httpClient, 4096, 100_000);
+            String result = webScrapingTool.scrapeWebPage(
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/page");
+
+            Assertions.assertTrue(result.startsWith("开头的正文"));
+            Assertions.assertTrue(result.length() < 4096);
+        } finally {
+            server.stop(0);
+        }
+    }
 }